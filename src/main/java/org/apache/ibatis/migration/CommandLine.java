@@ -22,11 +22,15 @@ import java.io.File;
 import java.io.PrintStream;
 import java.util.Date;
 
+import org.apache.ibatis.migration.commands.BaseCommand;
 import org.apache.ibatis.migration.commands.Command;
+import org.apache.ibatis.migration.io.BufferedOutputSink;
+import org.apache.ibatis.migration.io.OutputLevel;
+import org.apache.ibatis.migration.io.SinkPrintStream;
 import org.apache.ibatis.migration.options.SelectedOptions;
 
 public class CommandLine {
-  private final PrintStream console = System.out;
+  private PrintStream console = System.out;
   private final String[] args;
 
   public CommandLine(String[] args) {
@@ -34,7 +38,20 @@ public class CommandLine {
   }
 
   public void execute() {
-    final SelectedOptions selectedOptions = parse(args);
+    final SelectedOptions selectedOptions;
+    try {
+      selectedOptions = parse(args);
+    } catch (MigrationException e) {
+      console.printf("%s%n", e.getMessage());
+      printUsage();
+      System.exit(1);
+      return;
+    }
+    if (selectedOptions.getOutputLevel() != null || selectedOptions.isJsonOutput()) {
+      console = new SinkPrintStream(
+          new BufferedOutputSink(System.out, selectedOptions.getOutputLevel(), selectedOptions.isJsonOutput()),
+          OutputLevel.SUMMARY);
+    }
     try {
       if (!validOptions(selectedOptions) || selectedOptions.needsHelp()) {
         printUsage();
@@ -42,12 +59,28 @@ public class CommandLine {
         runCommand(selectedOptions);
       }
     } catch (Exception e) {
-      console.printf("\nERROR: %s", e.getMessage());
+      PrintStream errorStream = SinkPrintStream.forLevel(console, OutputLevel.QUIET);
+      if (!(errorStream instanceof SinkPrintStream)) {
+        errorStream.println();
+      }
+      // A complete line, so that it reaches the sink before it is closed.
+      errorStream.println("ERROR: " + e.getMessage());
+      errorStream.flush();
       if (selectedOptions.isTrace()) {
         e.printStackTrace();
       }
+      closeConsole();
       System.exit(1); // Issue 730
     }
+    closeConsole();
+  }
+
+  private void closeConsole() {
+    if (console instanceof SinkPrintStream) {
+      SinkPrintStream sinkStream = (SinkPrintStream) console;
+      sinkStream.close();
+      sinkStream.getSink().close();
+    }
   }
 
   private void runCommand(SelectedOptions selectedOptions) {
@@ -62,6 +95,9 @@ public class CommandLine {
 
     try {
       final Command command = resolveCommand(commandString.toUpperCase(), selectedOptions);
+      if (command instanceof BaseCommand) {
+        ((BaseCommand) command).setPrintStream(console);
+      }
       command.execute(selectedOptions.getParams());
     } catch (Throwable t) {
       exceptionCaught = true;
@@ -73,7 +109,7 @@ public class CommandLine {
     } finally {
       console.printf("------------------------------------------------------------------------%n");
       console.printf("-- MyBatis Migrations %s%n", (exceptionCaught) ? "FAILURE" : "SUCCESS");
-      console.printf("-- Total time: %ss%n", ((System.currentTimeMillis() - start) / 1000));
+      console.printf("-- Total time: %.3fs%n", ((System.currentTimeMillis() - start) / 1000.0d));
       console.printf("-- Finished at: %s%n", new Date());
       printMemoryUsage();
       console.printf("------------------------------------------------------------------------%n");
@@ -117,11 +153,17 @@ public class CommandLine {
     console.printf("--force              Forces script to continue even if SQL errors are encountered.%n");
     console.printf("--help               Displays this usage message.%n");
     console.printf("--trace              Shows additional error details (if any).%n");
+    console.printf("--metrics=<file>     Prints the slowest migrations and writes per-migration metrics to the file.%n");
+    console.printf("--profile            Prints the slowest statements with their line numbers.%n");
+    console.printf("--threads=<n>        Number of threads used to read scripts (script and lint commands).%n");
+    console.printf("--output=<level>     quiet (errors only), summary (default) or verbose (echoes statements).%n");
+    console.printf("--json               Writes the output as JSON lines.%n");
     console.printf("%n");
     console.printf("Commands:%n");
     console.printf("  info               Display build version informations.%n");
     console.printf("  init               Creates (if necessary) and initializes a migration path.%n");
     console.printf("  bootstrap          Runs the bootstrap SQL script (see scripts/bootstrap.sql for more).%n");
+    console.printf("  baseline <id>      Consolidates migrations up to 'id' into scripts/baseline.sql.%n");
     console.printf("  new <description>  Creates a new migration with the provided description.%n");
     console.printf("  up [n]             Run unapplied migrations, ALL by default, or 'n' specified.%n");
     console
@@ -131,6 +173,9 @@ public class CommandLine {
     console.printf("  status             Prints the changelog from the database if the changelog table exists.%n");
     console
         .printf("  script <v1> <v2>   Generates a delta migration script from version v1 to v2 (undo if v1 > v2).%n");
+    console.printf("  plan <command>     Lists the migrations 'up [n]', 'down [n]', 'pending' or 'version <version>' would run.%n");
+    console.printf("  lint               Checks all the scripts for problems without connecting to the database.%n");
+    console.printf("  watch [redo]       Applies new migrations as they appear ('redo' also reapplies edits).%n");
     console.printf("%n");
     console.printf("  * Shortcuts are accepted by using the first few (unambiguous) letters of each command..%n");
     console.printf("%n");
@@ -32,7 +32,7 @@ public class Environment {
   public static final String CHANGELOG = "changelog";
 
   private enum SETTING_KEY {
-    time_zone, delimiter, script_char_set, full_line_delimiter, send_full_script, auto_commit, remove_crs, ignore_warnings, driver_path, driver, url, username, password, hook_before_up, hook_before_each_up, hook_after_each_up, hook_after_up, hook_before_down, hook_before_each_down, hook_after_each_down, hook_after_down
+    time_zone, delimiter, script_char_set, full_line_delimiter, send_full_script, auto_commit, remove_crs, ignore_warnings, prefetch_scripts, checkpoint, throttle_latency, throttle_rate, script_cache_dir, driver_path, driver, url, username, password, hook_before_up, hook_before_each_up, hook_after_each_up, hook_after_up, hook_before_down, hook_before_each_down, hook_after_each_down, hook_after_down, hook_after_each_up_async, hook_after_each_down_async, hook_async_threads
   }
 
   private static final List<String> SETTING_KEYS;
@@ -54,6 +54,11 @@ public class Environment {
   private final boolean autoCommit;
   private final boolean removeCrs;
   private final boolean ignoreWarnings;
+  private final int prefetchScripts;
+  private final boolean checkpoint;
+  private final long throttleLatency;
+  private final double throttleRate;
+  private final String scriptCacheDir;
   private final String driverPath;
   private final String driver;
   private final String url;
@@ -68,6 +73,9 @@ public class Environment {
   private final String hookBeforeEachDown;
   private final String hookAfterEachDown;
   private final String hookAfterDown;
+  private final boolean hookAfterEachUpAsync;
+  private final boolean hookAfterEachDownAsync;
+  private final int hookAsyncThreads;
 
   private final Properties variables = new Properties();
 
@@ -86,6 +94,11 @@ public class Environment {
       this.autoCommit = Boolean.valueOf(prop.getProperty(SETTING_KEY.auto_commit.name()));
       this.removeCrs = Boolean.valueOf(prop.getProperty(SETTING_KEY.remove_crs.name()));
       this.ignoreWarnings = Boolean.valueOf(prop.getProperty(SETTING_KEY.ignore_warnings.name(), "true"));
+      this.prefetchScripts = Integer.parseInt(prop.getProperty(SETTING_KEY.prefetch_scripts.name(), "0").trim());
+      this.checkpoint = Boolean.valueOf(prop.getProperty(SETTING_KEY.checkpoint.name()));
+      this.throttleLatency = Long.parseLong(prop.getProperty(SETTING_KEY.throttle_latency.name(), "0").trim());
+      this.throttleRate = Double.parseDouble(prop.getProperty(SETTING_KEY.throttle_rate.name(), "0").trim());
+      this.scriptCacheDir = prop.getProperty(SETTING_KEY.script_cache_dir.name());
 
       this.driverPath = prop.getProperty(SETTING_KEY.driver_path.name());
       this.driver = prop.getProperty(SETTING_KEY.driver.name());
@@ -101,6 +114,9 @@ public class Environment {
       this.hookBeforeEachDown = prop.getProperty(SETTING_KEY.hook_before_each_down.name());
       this.hookAfterEachDown = prop.getProperty(SETTING_KEY.hook_after_each_down.name());
       this.hookAfterDown = prop.getProperty(SETTING_KEY.hook_after_down.name());
+      this.hookAfterEachUpAsync = Boolean.valueOf(prop.getProperty(SETTING_KEY.hook_after_each_up_async.name()));
+      this.hookAfterEachDownAsync = Boolean.valueOf(prop.getProperty(SETTING_KEY.hook_after_each_down_async.name()));
+      this.hookAsyncThreads = Integer.parseInt(prop.getProperty(SETTING_KEY.hook_async_threads.name(), "1").trim());
 
       // User defined variables.
       Set<Entry<Object, Object>> entries = prop.entrySet();
@@ -112,6 +128,8 @@ public class Environment {
       }
     } catch (FileNotFoundException e) {
       throw new MigrationException("Environment file missing: " + file.getAbsolutePath());
+    } catch (NumberFormatException e) {
+      throw new MigrationException("Invalid number in environment properties.  Cause: " + e, e);
     } catch (IOException e) {
       throw new MigrationException("Error loading environment properties.  Cause: " + e, e);
     } finally {
@@ -157,6 +175,26 @@ public class Environment {
     return ignoreWarnings;
   }
 
+  public int getPrefetchScripts() {
+    return prefetchScripts;
+  }
+
+  public boolean isCheckpoint() {
+    return checkpoint;
+  }
+
+  public long getThrottleLatency() {
+    return throttleLatency;
+  }
+
+  public double getThrottleRate() {
+    return throttleRate;
+  }
+
+  public String getScriptCacheDir() {
+    return scriptCacheDir;
+  }
+
   public String getDriverPath() {
     return driverPath;
   }
@@ -209,6 +247,18 @@ public class Environment {
     return hookAfterDown;
   }
 
+  public boolean isHookAfterEachUpAsync() {
+    return hookAfterEachUpAsync;
+  }
+
+  public boolean isHookAfterEachDownAsync() {
+    return hookAfterEachDownAsync;
+  }
+
+  public int getHookAsyncThreads() {
+    return hookAsyncThreads;
+  }
+
   public Properties getVariables() {
     return variables;
   }
@@ -16,28 +16,56 @@
 package org.apache.ibatis.migration;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import org.apache.ibatis.migration.script.LoadDirective;
+import org.apache.ibatis.migration.script.LoadDirective.Format;
+import org.apache.ibatis.migration.script.ScriptCache;
 import org.apache.ibatis.migration.utils.Util;
 
 public class FileMigrationLoader implements MigrationLoader {
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
   private final File scriptsDir;
 
   private final String charset;
 
   private final Properties variables;
 
+  private final ScriptCache scriptCache;
+
+  private String delimiter = ";";
+
+  private boolean fullLineDelimiter;
+
   public FileMigrationLoader(File scriptsDir, String charset, Properties variables) {
+    this(scriptsDir, charset, variables, null);
+  }
+
+  /**
+   * @param scriptCache
+   *          If not <code>null</code>, rendered scripts are taken from this cache when the file content, charset and
+   *          variables are unchanged.
+   */
+  public FileMigrationLoader(File scriptsDir, String charset, Properties variables, ScriptCache scriptCache) {
     super();
     this.scriptsDir = scriptsDir;
     this.charset = charset;
     this.variables = variables;
+    this.scriptCache = scriptCache;
+  }
+
+  public File getScriptsDir() {
+    return scriptsDir;
   }
 
   @Override
@@ -50,7 +78,7 @@ public class FileMigrationLoader implements MigrationLoader {
       }
       Arrays.sort(filenames);
       for (String filename : filenames) {
-        if (filename.endsWith(".sql") && !isSpecialFile(filename)) {
+        if (isMigrationFile(filename)) {
           Change change = parseChangeFromFilename(filename);
           migrations.add(change);
         }
@@ -59,40 +87,151 @@ public class FileMigrationLoader implements MigrationLoader {
     return migrations;
   }
 
+  /**
+   * Builds the catalog from the file names without creating a {@link Change} per script.
+   */
+  public MigrationCatalog getCatalog() {
+    MigrationCatalog.Builder builder = new MigrationCatalog.Builder();
+    if (scriptsDir.isDirectory()) {
+      String[] filenames = scriptsDir.list();
+      if (filenames == null) {
+        throw new MigrationException(scriptsDir + " does not exist.");
+      }
+      for (String filename : filenames) {
+        if (isMigrationFile(filename)) {
+          String[] parts = splitFilename(filename);
+          builder.add(parseId(parts), parseDescription(parts), filename);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Sets the statement delimiter used in the scripts generated for data file migrations.
+   */
+  public void setDelimiter(String delimiter, boolean fullLineDelimiter) {
+    this.delimiter = delimiter;
+    this.fullLineDelimiter = fullLineDelimiter;
+  }
+
+  public boolean isMigrationFile(String filename) {
+    if (filename.endsWith(".sql")) {
+      return !isSpecialFile(filename);
+    }
+    return dataFormat(filename) != null && filename.indexOf('_') > 0;
+  }
+
+  /**
+   * @return <code>true</code> if the migration is a CSV or TSV data file rather than a script.
+   */
+  public boolean isDataFile(String filename) {
+    return dataFormat(filename) != null;
+  }
+
+  private Format dataFormat(String filename) {
+    if (filename.endsWith(".csv")) {
+      return Format.CSV;
+    } else if (filename.endsWith(".tsv")) {
+      return Format.TSV;
+    }
+    return null;
+  }
+
   private boolean isSpecialFile(String filename) {
-    return "bootstrap.sql".equals(filename) || "onabort.sql".equals(filename);
+    return "bootstrap.sql".equals(filename) || "onabort.sql".equals(filename) || "baseline.sql".equals(filename);
+  }
+
+  /**
+   * @throws MigrationException
+   *           If the file name does not start with a numeric id.
+   */
+  public Change parseChangeFromFilename(String filename) {
+    String[] parts = splitFilename(filename);
+    Change change = new Change();
+    change.setId(parseId(parts));
+    change.setDescription(parseDescription(parts));
+    change.setFilename(filename);
+    return change;
   }
 
-  private Change parseChangeFromFilename(String filename) {
+  private String[] splitFilename(String filename) {
+    int lastIndexOfDot = filename.lastIndexOf(".");
+    return filename.substring(0, lastIndexOfDot).split("_");
+  }
+
+  private BigDecimal parseId(String[] parts) {
     try {
-      Change change = new Change();
-      int lastIndexOfDot = filename.lastIndexOf(".");
-      String[] parts = filename.substring(0, lastIndexOfDot).split("_");
-      change.setId(new BigDecimal(parts[0]));
-      StringBuilder builder = new StringBuilder();
-      for (int i = 1; i < parts.length; i++) {
-        if (i > 1) {
-          builder.append(" ");
-        }
-        builder.append(parts[i]);
-      }
-      change.setDescription(builder.toString());
-      change.setFilename(filename);
-      return change;
+      return new BigDecimal(parts[0]);
     } catch (Exception e) {
       throw new MigrationException("Error parsing change from file.  Cause: " + e, e);
     }
   }
 
+  private String parseDescription(String[] parts) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 1; i < parts.length; i++) {
+      if (i > 1) {
+        builder.append(" ");
+      }
+      builder.append(parts[i]);
+    }
+    return builder.toString();
+  }
+
   @Override
   public Reader getScriptReader(Change change, boolean undo) {
     try {
-      return new MigrationReader(Util.file(scriptsDir, change.getFilename()), charset, undo, variables);
+      File file = Util.file(scriptsDir, change.getFilename());
+      Format format = dataFormat(change.getFilename());
+      if (format != null) {
+        return new StringReader(getDataFileScript(file, format, undo));
+      }
+      if (scriptCache != null) {
+        return new StringReader(scriptCache.render(Util.readBytes(file), charset, undo, variables));
+      }
+      return new MigrationReader(file, charset, undo, variables);
     } catch (IOException e) {
       throw new MigrationException("Error reading " + change.getFilename(), e);
     }
   }
 
+  /**
+   * @return The do or undo section of a script migration as written, i.e. before variables are replaced.
+   * @throws MigrationException
+   *           If the migration is a data file.
+   */
+  public String getScriptSection(Change change, boolean undo) {
+    if (isDataFile(change.getFilename())) {
+      throw new MigrationException(change.getFilename() + " is a data file, not a script.");
+    }
+    try {
+      FileInputStream in = new FileInputStream(Util.file(scriptsDir, change.getFilename()));
+      Reader reader = charset == null || charset.length() == 0 ? new InputStreamReader(in)
+          : new InputStreamReader(in, charset);
+      try {
+        return MigrationReader.readSection(reader, undo);
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new MigrationException("Error reading " + change.getFilename(), e);
+    }
+  }
+
+  /**
+   * A data file named <code>&lt;id&gt;_&lt;table&gt;.csv</code> (or <code>.tsv</code>) is loaded into the table by a
+   * single statement carrying a {@link LoadDirective}. Undoing it deletes the rows it loaded, matched by the first
+   * column of the file.
+   */
+  private String getDataFileScript(File file, Format format, boolean undo) {
+    String filename = file.getName();
+    String table = filename.substring(filename.indexOf('_') + 1, filename.lastIndexOf('.'));
+    String terminator = fullLineDelimiter ? LINE_SEPARATOR + delimiter : delimiter;
+    LoadDirective directive = new LoadDirective(table, format, charset, file.getAbsoluteFile(), undo);
+    return directive.toInlineComment() + "DELETE FROM " + table + " WHERE 1 = 0" + terminator + LINE_SEPARATOR;
+  }
+
   @Override
   public Reader getBootstrapReader() {
     String fileName = "bootstrap.sql";
@@ -105,6 +244,14 @@ public class FileMigrationLoader implements MigrationLoader {
     return getSoleScriptReader(fileName);
   }
 
+  /**
+   * @return A {@link Reader} of the baseline script, or <code>null</code> if there is none.
+   */
+  public Reader getBaselineReader() {
+    String fileName = "baseline.sql";
+    return getSoleScriptReader(fileName);
+  }
+
   private Reader getSoleScriptReader(String fileName) {
     try {
       File scriptFile = Util.file(scriptsDir, fileName);
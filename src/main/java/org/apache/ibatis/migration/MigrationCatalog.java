@@ -0,0 +1,305 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sorted, read-only list of migration scripts that takes a fraction of the memory of a
+ * <code>List&lt;Change&gt;</code>.<br>
+ * IDs are kept in a <code>long[]</code> unless one of them is not an integer or does not fit, in which case a
+ * <code>BigDecimal[]</code> is used. Descriptions are stored once in a shared string table and file names are only
+ * stored when they do not follow the <code>&lt;id&gt;_&lt;description&gt;.sql</code> pattern. {@link Change} objects
+ * are created on demand.
+ */
+public final class MigrationCatalog {
+
+  private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+  private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+  private final long[] longIds;
+  private final BigDecimal[] decimalIds;
+  private final int[] descriptions;
+  private final int[] filenames;
+  private final StringTable strings;
+
+  private MigrationCatalog(long[] longIds, BigDecimal[] decimalIds, int[] descriptions, int[] filenames,
+      StringTable strings) {
+    this.longIds = longIds;
+    this.decimalIds = decimalIds;
+    this.descriptions = descriptions;
+    this.filenames = filenames;
+    this.strings = strings;
+  }
+
+  /**
+   * Returns the catalog of the given loader. {@link FileMigrationLoader} builds it directly from the file names,
+   * other loaders are asked for their migrations.
+   */
+  public static MigrationCatalog of(MigrationLoader migrationsLoader) {
+    if (migrationsLoader instanceof FileMigrationLoader) {
+      return ((FileMigrationLoader) migrationsLoader).getCatalog();
+    }
+    return of(migrationsLoader.getMigrations());
+  }
+
+  public static MigrationCatalog of(List<Change> migrations) {
+    Builder builder = new Builder();
+    for (Change change : migrations) {
+      builder.add(change.getId(), change.getDescription(), change.getFilename());
+    }
+    return builder.build();
+  }
+
+  public int size() {
+    return descriptions.length;
+  }
+
+  public boolean isEmpty() {
+    return descriptions.length == 0;
+  }
+
+  public BigDecimal getId(int index) {
+    return longIds != null ? BigDecimal.valueOf(longIds[index]) : decimalIds[index];
+  }
+
+  public String getDescription(int index) {
+    return strings.get(descriptions[index]);
+  }
+
+  public String getFilename(int index) {
+    int filename = filenames[index];
+    if (filename >= 0) {
+      return strings.get(filename);
+    }
+    return defaultFilename(getId(index), getDescription(index));
+  }
+
+  public Change getChange(int index) {
+    Change change = new Change(getId(index));
+    change.setDescription(getDescription(index));
+    change.setFilename(getFilename(index));
+    return change;
+  }
+
+  /**
+   * Returns the changes from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive). If
+   * <code>toIndex</code> is less than <code>fromIndex</code> the changes are returned in descending order, i.e. from
+   * <code>fromIndex - 1</code> down to <code>toIndex</code>.
+   */
+  public List<Change> getChanges(int fromIndex, int toIndex) {
+    List<Change> changes = new ArrayList<Change>(Math.abs(toIndex - fromIndex));
+    if (fromIndex <= toIndex) {
+      for (int i = fromIndex; i < toIndex; i++) {
+        changes.add(getChange(i));
+      }
+    } else {
+      for (int i = fromIndex - 1; i >= toIndex; i--) {
+        changes.add(getChange(i));
+      }
+    }
+    return changes;
+  }
+
+  public BigDecimal getLatestId() {
+    return isEmpty() ? null : getId(size() - 1);
+  }
+
+  public boolean contains(BigDecimal id) {
+    return indexOf(id) >= 0;
+  }
+
+  /**
+   * @return the index of the migration with the given ID or -1 if there is none.
+   */
+  public int indexOf(BigDecimal id) {
+    int index = indexAfter(id) - 1;
+    return index >= 0 && compareId(index, id) == 0 ? index : -1;
+  }
+
+  /**
+   * @return the index of the first migration with an ID greater than the given one, or {@link #size()} if there is
+   *         none. <code>null</code> is treated as lower than any ID.
+   */
+  public int indexAfter(BigDecimal id) {
+    if (id == null) {
+      return 0;
+    }
+    int low = 0;
+    int high = size();
+    if (longIds != null) {
+      if (id.compareTo(MIN_LONG) < 0) {
+        return 0;
+      }
+      if (id.compareTo(MAX_LONG) >= 0) {
+        return high;
+      }
+      // IDs are integers, so anything above floor(id) is above id.
+      long key = id.setScale(0, RoundingMode.FLOOR).longValue();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (longIds[mid] <= key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+    } else {
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (decimalIds[mid].compareTo(id) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+    }
+    return low;
+  }
+
+  private int compareId(int index, BigDecimal id) {
+    return getId(index).compareTo(id);
+  }
+
+  static String defaultFilename(BigDecimal id, String description) {
+    return id + "_" + description.replace(' ', '_') + ".sql";
+  }
+
+  /**
+   * Collects migrations in any order. IDs are sorted when the catalog is built.
+   */
+  public static final class Builder {
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final StringTable.Builder strings = new StringTable.Builder();
+
+    public Builder add(BigDecimal id, String description, String filename) {
+      if (id == null) {
+        throw new MigrationException("Migration ID must not be null.");
+      }
+      if (description == null) {
+        description = "";
+      }
+      int filenameIndex = filename == null || filename.equals(defaultFilename(id, description)) ? -1
+          : strings.add(filename);
+      entries.add(new Entry(id, strings.add(description), filenameIndex));
+      return this;
+    }
+
+    public MigrationCatalog build() {
+      Collections.sort(entries, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+          return o1.id.compareTo(o2.id);
+        }
+      });
+      int size = entries.size();
+      boolean fitsLong = true;
+      for (Entry entry : entries) {
+        if (!fitsLong(entry.id)) {
+          fitsLong = false;
+          break;
+        }
+      }
+      long[] longIds = fitsLong ? new long[size] : null;
+      BigDecimal[] decimalIds = fitsLong ? null : new BigDecimal[size];
+      int[] descriptions = new int[size];
+      int[] filenames = new int[size];
+      for (int i = 0; i < size; i++) {
+        Entry entry = entries.get(i);
+        if (fitsLong) {
+          longIds[i] = entry.id.longValue();
+        } else {
+          decimalIds[i] = entry.id;
+        }
+        descriptions[i] = entry.description;
+        filenames[i] = entry.filename;
+      }
+      return new MigrationCatalog(longIds, decimalIds, descriptions, filenames, strings.build());
+    }
+
+    private static boolean fitsLong(BigDecimal id) {
+      // The scale must be 0 so that the ID converted back equals the original one.
+      if (id.scale() != 0) {
+        return false;
+      }
+      BigInteger value = id.unscaledValue();
+      return value.bitLength() < 64;
+    }
+  }
+
+  private static final class Entry {
+    private final BigDecimal id;
+    private final int description;
+    private final int filename;
+
+    Entry(BigDecimal id, int description, int filename) {
+      this.id = id;
+      this.description = description;
+      this.filename = filename;
+    }
+  }
+
+  /**
+   * All strings concatenated into one, each one stored only once.
+   */
+  private static final class StringTable {
+    private final String data;
+    private final int[] offsets;
+
+    StringTable(String data, int[] offsets) {
+      this.data = data;
+      this.offsets = offsets;
+    }
+
+    String get(int index) {
+      return data.substring(offsets[index], offsets[index + 1]);
+    }
+
+    static final class Builder {
+      private final StringBuilder data = new StringBuilder();
+      private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+      private int[] offsets = new int[16];
+      private int count;
+
+      int add(String value) {
+        Integer index = indexes.get(value);
+        if (index != null) {
+          return index;
+        }
+        data.append(value);
+        if (count + 2 > offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++count] = data.length();
+        indexes.put(value, count - 1);
+        return count - 1;
+      }
+
+      StringTable build() {
+        return new StringTable(data.toString(), Arrays.copyOf(offsets, count + 1));
+      }
+    }
+  }
+}
@@ -26,13 +26,20 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
-import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.migration.script.ChunkDirective;
+import org.apache.ibatis.migration.utils.VariableTemplate;
 
 public class MigrationReader extends Reader {
 
   private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
 
+  /**
+   * Matches a trimmed <code>-- //</code> directive line such as <code>-- //@UNDO</code>.
+   */
+  public static final Pattern DIRECTIVE = Pattern.compile("^--\\s*//.*$");
+
   private Reader target;
 
   public MigrationReader(File file, String charset, boolean undo, Properties variables) throws IOException {
@@ -43,29 +50,43 @@ public class MigrationReader extends Reader {
       throws IOException {
     final Reader source = scriptFileReader(inputStream, charset);
     try {
-      BufferedReader reader = new BufferedReader(source);
-      StringBuilder doBuilder = new StringBuilder();
-      StringBuilder undoBuilder = new StringBuilder();
-      StringBuilder currentBuilder = doBuilder;
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.trim().matches("^--\\s*//.*$")) {
-          if (line.contains("@UNDO")) {
-            currentBuilder = undoBuilder;
-          }
-          line = line.replaceFirst("--\\s*//", "-- ");
+      target = new StringReader(VariableTemplate.compile(readSection(source, undo)).render(variables));
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Returns the do or undo section of a script before variables are replaced.
+   */
+  public static String readSection(Reader source, boolean undo) throws IOException {
+    BufferedReader reader = new BufferedReader(source);
+    StringBuilder builder = new StringBuilder();
+    boolean inUndo = false;
+    ChunkDirective chunk = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String trimmedLine = line.trim();
+      if (DIRECTIVE.matcher(trimmedLine).matches()) {
+        if (line.contains("@UNDO")) {
+          inUndo = true;
+          chunk = null;
+        } else if (line.contains("@CHUNK")) {
+          chunk = ChunkDirective.parseLine(line);
         }
-        currentBuilder.append(line);
-        currentBuilder.append(LINE_SEPARATOR);
+        line = line.replaceFirst("--\\s*//", "-- ");
+      } else if (chunk != null && trimmedLine.length() > 0 && !trimmedLine.startsWith("--")
+          && !trimmedLine.startsWith("//")) {
+        // Attach the directive to the first line of the statement so that it reaches the database operation.
+        line = chunk.toInlineComment() + line;
+        chunk = null;
       }
-      if (undo) {
-        target = new StringReader(PropertyParser.parse(undoBuilder.toString(), variables));
-      } else {
-        target = new StringReader(PropertyParser.parse(doBuilder.toString(), variables));
+      if (inUndo == undo) {
+        builder.append(line);
+        builder.append(LINE_SEPARATOR);
       }
-    } finally {
-      source.close();
     }
+    return builder.toString();
   }
 
   @Override
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.TimeZone;
 
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.migration.Change;
@@ -51,11 +52,16 @@ import org.apache.ibatis.migration.hook.FileMigrationHook;
 import org.apache.ibatis.migration.hook.HookScriptFactory;
 import org.apache.ibatis.migration.hook.MigrationHook;
 import org.apache.ibatis.migration.io.ExternalResources;
+import org.apache.ibatis.migration.jdbc.StatementThrottle;
+import org.apache.ibatis.migration.metrics.MetricsCollector;
+import org.apache.ibatis.migration.metrics.PrometheusExporter;
+import org.apache.ibatis.migration.metrics.StatementProfiler;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.options.Options;
 import org.apache.ibatis.migration.options.SelectedOptions;
 import org.apache.ibatis.migration.options.SelectedPaths;
-import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.migration.script.ScriptCache;
+import org.apache.ibatis.migration.utils.VariableTemplate;
 
 public abstract class BaseCommand implements Command {
   private static final String DATE_FORMAT = "yyyyMMddHHmmss";
@@ -69,10 +75,24 @@ public abstract class BaseCommand implements Command {
 
   private static final String MIGRATIONS_PROPERTIES = "migration.properties";
 
+  private static final int SLOWEST_MIGRATIONS_LIMIT = 10;
+
+  private static final int SLOWEST_STATEMENTS_LIMIT = 20;
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
   private ClassLoader driverClassLoader;
 
   private Environment environment;
 
+  private MetricsCollector metricsCollector;
+
+  private StatementProfiler statementProfiler;
+
+  private StatementThrottle throttle;
+
+  private ScriptCache scriptCache;
+
   protected PrintStream printStream = System.out;
 
   protected final SelectedOptions options;
@@ -189,13 +209,14 @@ public abstract class BaseCommand implements Command {
   protected static void copyTemplate(Reader templateReader, File toFile, Properties variables) throws IOException {
     LineNumberReader reader = new LineNumberReader(templateReader);
     try {
+      StringBuilder text = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        text.append(line).append(LINE_SEPARATOR);
+      }
       PrintWriter writer = new PrintWriter(new FileWriter(toFile));
       try {
-        String line;
-        while ((line = reader.readLine()) != null) {
-          line = PropertyParser.parse(line, variables);
-          writer.println(line);
-        }
+        VariableTemplate.compile(text.toString()).render(variables, writer);
       } finally {
         writer.close();
       }
@@ -255,6 +276,18 @@ public abstract class BaseCommand implements Command {
     }
   }
 
+  /**
+   * @return A data source that keeps its connections open, for commands that run many operations.
+   */
+  protected PooledDataSource getPooledDataSource() {
+    try {
+      return new PooledDataSource(getDriverClassLoader(), environment().getDriver(), environment().getUrl(),
+          environment().getUsername(), environment().getPassword());
+    } catch (Exception e) {
+      throw new MigrationException("Error creating the data source.  Cause: " + e, e);
+    }
+  }
+
   private ClassLoader getDriverClassLoader() {
     File localDriverPath = getCustomDriverPath();
     if (driverClassLoader != null) {
@@ -289,8 +322,22 @@ public abstract class BaseCommand implements Command {
   }
 
   protected MigrationLoader getMigrationLoader() {
-    return new FileMigrationLoader(paths.getScriptPath(), environment().getScriptCharset(),
-        environment().getVariables());
+    FileMigrationLoader loader = new FileMigrationLoader(paths.getScriptPath(), environment().getScriptCharset(),
+        environment().getVariables(), getScriptCache());
+    loader.setDelimiter(environment().getDelimiter(), environment().isFullLineDelimiter());
+    return loader;
+  }
+
+  private ScriptCache getScriptCache() {
+    String dir = environment().getScriptCacheDir();
+    if (scriptCache == null && dir != null && dir.trim().length() > 0) {
+      File directory = new File(dir.trim());
+      if (!directory.isAbsolute()) {
+        directory = new File(paths.getBasePath(), dir.trim());
+      }
+      scriptCache = new ScriptCache(ScriptCache.DEFAULT_MAX_ENTRIES, directory);
+    }
+    return scriptCache;
   }
 
   protected MigrationHook createUpHook() {
@@ -301,7 +348,7 @@ public abstract class BaseCommand implements Command {
     if (before == null && beforeEach == null && afterEach == null && after == null) {
       return null;
     }
-    return createFileMigrationHook(before, beforeEach, afterEach, after);
+    return createFileMigrationHook(before, beforeEach, afterEach, after, environment().isHookAfterEachUpAsync());
   }
 
   protected MigrationHook createDownHook() {
@@ -312,13 +359,18 @@ public abstract class BaseCommand implements Command {
     if (before == null && beforeEach == null && afterEach == null && after == null) {
       return null;
     }
-    return createFileMigrationHook(before, beforeEach, afterEach, after);
+    return createFileMigrationHook(before, beforeEach, afterEach, after, environment().isHookAfterEachDownAsync());
   }
 
   protected MigrationHook createFileMigrationHook(String before, String beforeEach, String afterEach, String after) {
+    return createFileMigrationHook(before, beforeEach, afterEach, after, false);
+  }
+
+  protected MigrationHook createFileMigrationHook(String before, String beforeEach, String afterEach, String after,
+      boolean afterEachAsync) {
     HookScriptFactory factory = new FileHookScriptFactory(options.getPaths(), environment(), printStream);
     return new FileMigrationHook(factory.create(before), factory.create(beforeEach), factory.create(afterEach),
-        factory.create(after));
+        factory.create(after), afterEachAsync ? Math.max(1, environment().getHookAsyncThreads()) : 0);
   }
 
   protected DatabaseOperationOption getDatabaseOperationOption() {
@@ -332,6 +384,43 @@ public abstract class BaseCommand implements Command {
     option.setSendFullScript(environment().isSendFullScript());
     option.setRemoveCRs(environment().isRemoveCrs());
     option.setDelimiter(environment().getDelimiter());
+    option.setPrefetchDepth(environment().getPrefetchScripts());
+    option.setCheckpoint(environment().isCheckpoint());
+    option.setScriptCache(getScriptCache());
+    if (environment().getThrottleLatency() > 0 || environment().getThrottleRate() > 0) {
+      if (throttle == null) {
+        throttle = new StatementThrottle(environment().getThrottleLatency(), environment().getThrottleRate());
+      }
+      option.setThrottle(throttle);
+    }
+    if (options.getMetricsFile() != null) {
+      if (metricsCollector == null) {
+        metricsCollector = new MetricsCollector();
+      }
+      option.addMigrationListener(metricsCollector);
+    }
+    if (options.isProfile()) {
+      if (statementProfiler == null) {
+        statementProfiler = new StatementProfiler(SLOWEST_STATEMENTS_LIMIT);
+      }
+      option.addMigrationListener(statementProfiler);
+    }
     return option;
   }
+
+  protected void reportMetrics() {
+    if (metricsCollector != null) {
+      metricsCollector.printSummary(printStream, SLOWEST_MIGRATIONS_LIMIT);
+      new PrometheusExporter(metricsCollector, throttle).export(options.getMetricsFile());
+    }
+    if (statementProfiler != null) {
+      statementProfiler.printReport(printStream);
+    }
+    if (throttle != null && throttle.getStatementCount() > 0) {
+      printStream.printf("Throttle: %d statement(s), %d slow, paused %.3fs, current rate %s%n",
+          throttle.getStatementCount(), throttle.getSlowStatementCount(), throttle.getPauseNanos() / 1000000000.0d,
+          Double.isInfinite(throttle.getCurrentRate()) ? "unlimited"
+              : String.format("%.1f statements/s", throttle.getCurrentRate()));
+    }
+  }
 }
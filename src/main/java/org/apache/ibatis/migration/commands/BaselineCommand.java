@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.commands;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationCatalog;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.operations.BaselineOperation;
+import org.apache.ibatis.migration.options.SelectedOptions;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Writes <code>scripts/baseline.sql</code>: the do sections of all migrations up to the given ID concatenated as
+ * written (variables are replaced when the baseline is applied), preceded by one {@link BaselineOperation#ENTRY_PREFIX}
+ * line per migration so that their changelog rows can be inserted when the baseline is applied.<br>
+ * Data file migrations cannot be included, as their rows are loaded from files on the machine that applies them.
+ */
+public final class BaselineCommand extends BaseCommand {
+
+  public BaselineCommand(SelectedOptions options) {
+    super(options);
+  }
+
+  @Override
+  public void execute(String... params) {
+    if (paramsEmpty(params)) {
+      throw new MigrationException("The baseline command requires the ID of the last migration to include.");
+    }
+    BigDecimal baselineId;
+    try {
+      baselineId = new BigDecimal(params[0].trim());
+    } catch (NumberFormatException e) {
+      throw new MigrationException("The baseline ID must be a numeric integer.  " + e, e);
+    }
+    FileMigrationLoader loader = new FileMigrationLoader(paths.getScriptPath(), environment().getScriptCharset(),
+        environment().getVariables());
+    MigrationCatalog catalog = MigrationCatalog.of(loader);
+    int to = catalog.indexAfter(baselineId);
+    if (to == 0 || catalog.getId(to - 1).compareTo(baselineId) != 0) {
+      throw new MigrationException("There is no migration with the ID " + baselineId + ".");
+    }
+    List<Change> changes = catalog.getChanges(0, to);
+    for (Change change : changes) {
+      if (loader.isDataFile(change.getFilename())) {
+        throw new MigrationException("The baseline cannot include the data file migration " + change.getFilename()
+            + ". Use the ID of a migration before it.");
+      }
+    }
+    File file = Util.file(paths.getScriptPath(), "baseline.sql");
+    try {
+      writeBaseline(loader, changes, file);
+    } catch (IOException e) {
+      throw new MigrationException("Error writing " + file + ".  Cause: " + e, e);
+    }
+    printStream.println("Created " + file.getName() + " with " + changes.size() + " migration(s) up to " + baselineId
+        + ". It is applied in their place when the changelog does not exist yet.");
+    printStream.println();
+  }
+
+  private void writeBaseline(FileMigrationLoader loader, List<Change> changes, File file) throws IOException {
+    String charset = environment().getScriptCharset();
+    FileOutputStream out = new FileOutputStream(file);
+    PrintWriter writer = new PrintWriter(charset == null || charset.length() == 0 ? new OutputStreamWriter(out)
+        : new OutputStreamWriter(out, charset));
+    try {
+      writer.println("-- // Baseline of the migrations up to " + changes.get(changes.size() - 1).getId() + ".");
+      writer.println("-- // Generated by the baseline command; regenerate it instead of editing it.");
+      for (Change change : changes) {
+        writer.println(BaselineOperation.entry(change));
+      }
+      for (Change change : changes) {
+        writer.println();
+        writer.println("-- " + change.getFilename());
+        writer.print(loader.getScriptSection(change, false));
+      }
+    } finally {
+      writer.close();
+    }
+    if (writer.checkError()) {
+      throw new IOException("Could not write " + file + ".");
+    }
+  }
+}
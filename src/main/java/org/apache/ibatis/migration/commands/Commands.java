@@ -19,7 +19,7 @@ import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.options.SelectedOptions;
 
 public enum Commands {
-  INFO, INIT, BOOTSTRAP, NEW, UP, DOWN, PENDING, SCRIPT, VERSION, STATUS;
+  INFO, INIT, BOOTSTRAP, BASELINE, NEW, UP, DOWN, PENDING, SCRIPT, VERSION, STATUS, PLAN, LINT, WATCH;
 
   public static Command resolveCommand(String commandString, SelectedOptions selectedOptions) {
     for (Commands command : values()) {
@@ -39,6 +39,8 @@ public enum Commands {
         return new InitializeCommand(selectedOptions);
       case BOOTSTRAP:
         return new BootstrapCommand(selectedOptions);
+      case BASELINE:
+        return new BaselineCommand(selectedOptions);
       case NEW:
         return new NewCommand(selectedOptions);
       case UP:
@@ -53,6 +55,12 @@ public enum Commands {
         return new VersionCommand(selectedOptions);
       case STATUS:
         return new StatusCommand(selectedOptions);
+      case PLAN:
+        return new PlanCommand(selectedOptions);
+      case LINT:
+        return new LintCommand(selectedOptions);
+      case WATCH:
+        return new WatchCommand(selectedOptions);
       default:
         return new Command() {
           @Override
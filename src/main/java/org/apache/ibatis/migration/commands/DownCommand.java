@@ -26,7 +26,11 @@ public final class DownCommand extends BaseCommand {
   @Override
   public void execute(String... params) {
     DownOperation operation = new DownOperation(getStepCountParameter(1, params));
-    operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
-        createDownHook());
+    try {
+      operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
+          createDownHook());
+    } finally {
+      reportMetrics();
+    }
   }
 }
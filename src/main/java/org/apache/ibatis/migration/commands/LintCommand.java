@@ -0,0 +1,50 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.commands;
+
+import java.util.List;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.options.SelectedOptions;
+import org.apache.ibatis.migration.script.LintProblem;
+import org.apache.ibatis.migration.script.ScriptLinter;
+import org.apache.ibatis.migration.script.StatementSplitter;
+
+public final class LintCommand extends BaseCommand {
+
+  public LintCommand(SelectedOptions options) {
+    super(options);
+  }
+
+  @Override
+  public void execute(String... params) {
+    // Unlike the script command, this one is CPU bound, so it uses all the cores unless told otherwise.
+    int threads = options.getThreads() == null ? Runtime.getRuntime().availableProcessors() : options.getThreads();
+    StatementSplitter splitter = new StatementSplitter(environment().getDelimiter(),
+        environment().isFullLineDelimiter(), environment().isSendFullScript());
+    ScriptLinter linter = new ScriptLinter(paths.getScriptPath(), environment().getScriptCharset(),
+        environment().getVariables(), splitter, threads);
+    List<LintProblem> problems = linter.lint();
+    if (problems.isEmpty()) {
+      printStream.println("No problems found.");
+      return;
+    }
+    for (LintProblem problem : problems) {
+      printStream.println(problem);
+    }
+    throw new MigrationException(problems.size() + " problem(s) found in the scripts.");
+  }
+}
@@ -26,7 +26,11 @@ public final class PendingCommand extends BaseCommand {
   @Override
   public void execute(String... params) {
     PendingOperation operation = new PendingOperation();
-    operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
-        createUpHook());
+    try {
+      operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
+          createUpHook());
+    } finally {
+      reportMetrics();
+    }
   }
 }
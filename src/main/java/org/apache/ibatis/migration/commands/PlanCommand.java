@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.commands;
+
+import java.math.BigDecimal;
+import java.util.StringTokenizer;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.operations.PlanOperation;
+import org.apache.ibatis.migration.operations.PlanOperation.Type;
+import org.apache.ibatis.migration.options.SelectedOptions;
+
+public final class PlanCommand extends BaseCommand {
+  private PlanOperation operation;
+
+  public PlanCommand(SelectedOptions options) {
+    super(options);
+  }
+
+  @Override
+  public void execute(String... params) {
+    String[] tokens = paramsEmpty(params) ? new String[] { "up" } : tokenize(params[0]);
+    String target = tokens[0];
+    String argument = tokens.length > 1 ? tokens[1] : null;
+    if ("up".equals(target)) {
+      operation = new PlanOperation(Type.UP, getStepCountParameter(Integer.MAX_VALUE, argument));
+    } else if ("down".equals(target)) {
+      operation = new PlanOperation(Type.DOWN, getStepCountParameter(1, argument));
+    } else if ("pending".equals(target)) {
+      operation = new PlanOperation(Type.PENDING, null);
+    } else if ("version".equals(target)) {
+      if (argument == null) {
+        throw new MigrationException("No target version specified for migration.");
+      }
+      try {
+        operation = new PlanOperation(new BigDecimal(argument));
+      } catch (NumberFormatException e) {
+        throw new MigrationException("The version number must be a numeric integer.  " + e, e);
+      }
+    } else {
+      throw new MigrationException("The plan command requires one of up [n], down [n], pending or version <version>.");
+    }
+    operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream);
+  }
+
+  public PlanOperation getOperation() {
+    return operation;
+  }
+
+  private String[] tokenize(String params) {
+    StringTokenizer tokenizer = new StringTokenizer(params);
+    String[] tokens = new String[tokenizer.countTokens()];
+    for (int i = 0; i < tokens.length; i++) {
+      tokens[i] = tokenizer.nextToken();
+    }
+    return tokens;
+  }
+}
@@ -16,20 +16,28 @@
 package org.apache.ibatis.migration.commands;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 
 import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.MigrationCatalog;
 import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.io.OutputLevel;
+import org.apache.ibatis.migration.io.SinkPrintStream;
 import org.apache.ibatis.migration.operations.DatabaseOperation;
+import org.apache.ibatis.migration.operations.ScriptPrefetcher;
 import org.apache.ibatis.migration.operations.StatusOperation;
 import org.apache.ibatis.migration.options.SelectedOptions;
 
 public final class ScriptCommand extends BaseCommand {
 
+  private static final int PREFETCH_PER_THREAD = 4;
+
   public ScriptCommand(SelectedOptions options) {
     super(options);
   }
@@ -69,30 +77,43 @@ public final class ScriptCommand extends BaseCommand {
         undo = comparison > 0;
       }
 
-      List<Change> migrations = (scriptPending || scriptPendingUndo) ? new StatusOperation()
-          .operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), null).getCurrentStatus()
-          : getMigrationLoader().getMigrations();
-      Collections.sort(migrations);
-      if (undo) {
-        Collections.reverse(migrations);
-      }
-      for (Change change : migrations) {
-        if (shouldRun(change, v1, v2, scriptPending || scriptPendingUndo)) {
-          printStream.println("-- " + change.getFilename());
-          Reader migrationReader = getMigrationLoader().getScriptReader(change, undo);
-          char[] cbuf = new char[1024];
-          int l;
-          while ((l = migrationReader.read(cbuf)) == cbuf.length) {
-            printStream.print(new String(cbuf, 0, l));
+      List<Change> selected;
+      if (scriptPending || scriptPendingUndo) {
+        List<Change> migrations = new StatusOperation()
+            .operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), null)
+            .getCurrentStatus();
+        Collections.sort(migrations);
+        if (undo) {
+          Collections.reverse(migrations);
+        }
+        selected = new ArrayList<Change>();
+        for (Change change : migrations) {
+          if (change.getAppliedTimestamp() == null) {
+            selected.add(change);
           }
-
-          if (l > 0) {
-            printStream.print(new String(cbuf, 0, l - 1));
+        }
+      } else {
+        // Both ends are looked up by binary search; only the changes in range are created.
+        MigrationCatalog catalog = MigrationCatalog.of(getMigrationLoader());
+        int from = catalog.indexAfter(v1);
+        int to = catalog.indexAfter(v2);
+        selected = catalog.getChanges(from, to);
+      }
+      int threads = options.getThreads() == null ? 1 : options.getThreads();
+      if (threads > 1 && selected.size() > 1) {
+        // Scripts are read concurrently but printed in order.
+        ScriptPrefetcher prefetcher = new ScriptPrefetcher(getMigrationLoader(), selected, undo,
+            threads * PREFETCH_PER_THREAD, threads);
+        try {
+          for (Change change : selected) {
+            printScript(change, prefetcher.next().getReader(), undo);
           }
-          printStream.println();
-          printStream.println();
-          printStream.println(undo ? generateVersionDelete(change) : generateVersionInsert(change));
-          printStream.println();
+        } finally {
+          prefetcher.close();
+        }
+      } else {
+        for (Change change : selected) {
+          printScript(change, getMigrationLoader().getScriptReader(change, undo), undo);
         }
       }
     } catch (IOException e) {
@@ -100,6 +121,29 @@ public final class ScriptCommand extends BaseCommand {
     }
   }
 
+  private void printScript(Change change, Reader migrationReader, boolean undo) throws IOException {
+    // The script is what this command is for, so it is printed even with --output=quiet.
+    PrintStream printStream = SinkPrintStream.forLevel(this.printStream, OutputLevel.QUIET);
+    printStream.println("-- " + change.getFilename());
+    try {
+      char[] cbuf = new char[1024];
+      int l;
+      while ((l = migrationReader.read(cbuf)) == cbuf.length) {
+        printStream.print(new String(cbuf, 0, l));
+      }
+
+      if (l > 0) {
+        printStream.print(new String(cbuf, 0, l - 1));
+      }
+    } finally {
+      migrationReader.close();
+    }
+    printStream.println();
+    printStream.println();
+    printStream.println(undo ? generateVersionDelete(change) : generateVersionInsert(change));
+    printStream.println();
+  }
+
   private String generateVersionInsert(Change change) {
     return "INSERT INTO " + changelogTable() + " (ID, APPLIED_AT, DESCRIPTION) " + "VALUES (" + change.getId() + ", '"
         + DatabaseOperation.generateAppliedTimeStampAsString() + "', '" + change.getDescription().replace('\'', ' ')
@@ -110,19 +154,6 @@ public final class ScriptCommand extends BaseCommand {
     return "DELETE FROM " + changelogTable() + " WHERE ID = " + change.getId() + getDelimiter();
   }
 
-  private boolean shouldRun(Change change, BigDecimal v1, BigDecimal v2, boolean pendingOnly) {
-    if (!pendingOnly) {
-      BigDecimal id = change.getId();
-      if (v1.compareTo(v2) > 0) {
-        return (id.compareTo(v2) > 0 && id.compareTo(v1) <= 0);
-      } else {
-        return (id.compareTo(v1) > 0 && id.compareTo(v2) <= 0);
-      }
-    } else {
-      return change.getAppliedTimestamp() == null;
-    }
-  }
-
   // Issue 699
   private String getDelimiter() {
     StringBuilder delimiter = new StringBuilder();
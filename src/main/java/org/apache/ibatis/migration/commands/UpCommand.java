@@ -34,7 +34,11 @@ public final class UpCommand extends BaseCommand {
   public void execute(String... params) {
     final int limit = getStepCountParameter(Integer.MAX_VALUE, params);
     UpOperation operation = new UpOperation(runOneStepOnly ? 1 : limit);
-    operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
-        createUpHook());
+    try {
+      operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
+          createUpHook());
+    } finally {
+      reportMetrics();
+    }
   }
 }
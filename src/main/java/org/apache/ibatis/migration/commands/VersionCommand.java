@@ -32,8 +32,12 @@ public final class VersionCommand extends BaseCommand {
     ensureNumericParam(params);
 
     VersionOperation operation = new VersionOperation(new BigDecimal(params[0]));
-    operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
-        createUpHook(), createDownHook());
+    try {
+      operation.operate(getConnectionProvider(), getMigrationLoader(), getDatabaseOperationOption(), printStream,
+          createUpHook(), createDownHook());
+    } finally {
+      reportMetrics();
+    }
   }
 
   private void ensureParamsPassed(String... params) {
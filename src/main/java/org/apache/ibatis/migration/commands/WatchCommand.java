@@ -0,0 +1,50 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.commands;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.migration.DataSourceConnectionProvider;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.operations.WatchOperation;
+import org.apache.ibatis.migration.options.SelectedOptions;
+
+public final class WatchCommand extends BaseCommand {
+
+  public WatchCommand(SelectedOptions options) {
+    super(options);
+  }
+
+  @Override
+  public void execute(String... params) {
+    boolean redo = false;
+    if (!paramsEmpty(params)) {
+      if (!"redo".equals(params[0].trim())) {
+        throw new MigrationException("Invalid parameter passed to command: " + params[0]);
+      }
+      redo = true;
+    }
+    // The connections are kept open between polls.
+    PooledDataSource dataSource = getPooledDataSource();
+    try {
+      new WatchOperation(redo).operate(new DataSourceConnectionProvider(dataSource),
+          (FileMigrationLoader) getMigrationLoader(), getDatabaseOperationOption(), printStream, createUpHook(),
+          createDownHook());
+    } finally {
+      dataSource.forceCloseAll();
+    }
+  }
+}
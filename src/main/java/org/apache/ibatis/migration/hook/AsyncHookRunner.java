@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.hook;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.MigrationException;
+
+/**
+ * Runs hook scripts on a bounded pool of threads, each execution on its own connection.<br>
+ * At most <code>threads + queueSize</code> executions are pending; further submissions wait. {@link #await()} waits
+ * for all submitted executions and reports every failure.
+ */
+class AsyncHookRunner {
+
+  private final int threads;
+
+  private final Semaphore permits;
+
+  private final List<String> failures = new ArrayList<String>();
+
+  private ExecutorService executor;
+
+  AsyncHookRunner(int threads, int queueSize) {
+    super();
+    this.threads = Math.max(1, threads);
+    this.permits = new Semaphore(this.threads + Math.max(0, queueSize));
+  }
+
+  void submit(final HookScript script, Map<String, Object> bindingMap) {
+    // The operation reuses the binding map, so each execution gets its own copy.
+    final Map<String, Object> bindings = new HashMap<String, Object>(bindingMap);
+    final HookContext context = (HookContext) bindings.get(MigrationHook.HOOK_CONTEXT);
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MigrationException("Interrupted while submitting an asynchronous hook.  Cause: " + e, e);
+    }
+    try {
+      executor().execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            execute(script, bindings, context);
+          } catch (Throwable t) {
+            failed(context == null ? null : context.getChange(), t);
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for the submitted executions and stops the threads.
+   *
+   * @throws MigrationException
+   *           If any execution failed, with one line per failure.
+   */
+  void await() {
+    ExecutorService current;
+    synchronized (this) {
+      current = executor;
+      executor = null;
+    }
+    if (current != null) {
+      current.shutdown();
+      try {
+        while (!current.awaitTermination(1, TimeUnit.SECONDS)) {
+          // keep waiting
+        }
+      } catch (InterruptedException e) {
+        current.shutdownNow();
+        Thread.currentThread().interrupt();
+        throw new MigrationException("Interrupted while waiting for asynchronous hooks.  Cause: " + e, e);
+      }
+    }
+    String report;
+    synchronized (failures) {
+      if (failures.isEmpty()) {
+        return;
+      }
+      StringBuilder builder = new StringBuilder();
+      builder.append(failures.size()).append(" asynchronous hook(s) failed:");
+      for (String failure : failures) {
+        builder.append(System.getProperty("line.separator", "\n")).append("  ").append(failure);
+      }
+      report = builder.toString();
+      failures.clear();
+    }
+    // No cause, so that operations report the whole list rather than the first failure.
+    throw new MigrationException(report);
+  }
+
+  private void execute(HookScript script, Map<String, Object> bindings, HookContext context) throws SQLException {
+    if (context == null) {
+      FileMigrationHook.execute(script, "afterEach", true, bindings);
+      return;
+    }
+    Connection connection = context.getConnection();
+    try {
+      bindings.put(MigrationHook.HOOK_CONTEXT, context.withConnection(connection));
+      FileMigrationHook.execute(script, "afterEach", true, bindings);
+    } finally {
+      connection.close();
+    }
+  }
+
+  private void failed(Change change, Throwable t) {
+    synchronized (failures) {
+      failures.add((change == null ? "" : change.getFilename() + ": ") + t);
+    }
+  }
+
+  private synchronized ExecutorService executor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "migrations-hook");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+}
@@ -17,46 +17,97 @@ package org.apache.ibatis.migration.hook;
 
 import java.util.Map;
 
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+
 public class FileMigrationHook implements MigrationHook {
 
+  private static final int ASYNC_QUEUE_SIZE = 100;
+
   protected final HookScript beforeScript;
   protected final HookScript beforeEachScript;
   protected final HookScript afterEachScript;
   protected final HookScript afterScript;
+  private final AsyncHookRunner afterEachRunner;
 
   public FileMigrationHook(HookScript beforeScript, HookScript beforeEachScript, HookScript afterEachScript,
       HookScript afterScript) {
+    this(beforeScript, beforeEachScript, afterEachScript, afterScript, 0);
+  }
+
+  /**
+   * @param afterEachThreads
+   *          If positive, the afterEach script runs on this many background threads, each execution on its own
+   *          connection, so that the next migration does not wait for it. The executions are awaited before the after
+   *          script runs (see {@link #awaitAfterEach()}).
+   */
+  public FileMigrationHook(HookScript beforeScript, HookScript beforeEachScript, HookScript afterEachScript,
+      HookScript afterScript, int afterEachThreads) {
     this.beforeScript = beforeScript;
     this.beforeEachScript = beforeEachScript;
     this.afterEachScript = afterEachScript;
     this.afterScript = afterScript;
+    this.afterEachRunner = afterEachThreads > 0 && afterEachScript != null
+        ? new AsyncHookRunner(afterEachThreads, ASYNC_QUEUE_SIZE) : null;
   }
 
   @Override
   public void before(Map<String, Object> bindingMap) {
     if (beforeScript != null) {
-      beforeScript.execute(bindingMap);
+      execute(beforeScript, "before", false, bindingMap);
     }
   }
 
   @Override
   public void beforeEach(Map<String, Object> bindingMap) {
     if (beforeEachScript != null) {
-      beforeEachScript.execute(bindingMap);
+      execute(beforeEachScript, "beforeEach", false, bindingMap);
     }
   }
 
   @Override
   public void afterEach(Map<String, Object> bindingMap) {
-    if (afterEachScript != null) {
-      afterEachScript.execute(bindingMap);
+    if (afterEachRunner != null) {
+      afterEachRunner.submit(afterEachScript, bindingMap);
+    } else if (afterEachScript != null) {
+      execute(afterEachScript, "afterEach", false, bindingMap);
     }
   }
 
   @Override
   public void after(Map<String, Object> bindingMap) {
+    awaitAfterEach();
     if (afterScript != null) {
-      afterScript.execute(bindingMap);
+      execute(afterScript, "after", false, bindingMap);
+    }
+  }
+
+  /**
+   * Waits for the asynchronous afterEach executions submitted so far. Does nothing if afterEach runs synchronously.
+   *
+   * @throws MigrationException
+   *           If any of them failed, listing every failure.
+   */
+  public void awaitAfterEach() {
+    if (afterEachRunner != null) {
+      afterEachRunner.await();
+    }
+  }
+
+  /**
+   * Runs the script and records a {@link FlightRecorder#HOOK} event.
+   */
+  static void execute(HookScript script, String hook, boolean async, Map<String, Object> bindingMap) {
+    FlightRecorder.Event event = FlightRecorder.HOOK.begin();
+    boolean succeeded = false;
+    try {
+      script.execute(bindingMap);
+      succeeded = true;
+    } finally {
+      Object context = bindingMap.get(MigrationHook.HOOK_CONTEXT);
+      Change change = context instanceof HookContext ? ((HookContext) context).getChange() : null;
+      event.commit(hook, change == null ? null : change.getFilename(), async, succeeded);
     }
   }
 }
@@ -23,17 +23,49 @@ import java.sql.SQLException;
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
 
 public class HookContext {
   private ConnectionProvider connectionProvider;
   private ScriptRunner scriptRunner;
   private Change change;
+  private DatabaseOperationOption option;
 
   public HookContext(ConnectionProvider connectionProvider, ScriptRunner scriptRunner, Change change) {
+    this(connectionProvider, scriptRunner, change, null);
+  }
+
+  /**
+   * @param option
+   *          The settings of the operation, used to configure the script runner of an asynchronous hook.
+   */
+  public HookContext(ConnectionProvider connectionProvider, ScriptRunner scriptRunner, Change change,
+      DatabaseOperationOption option) {
     super();
     this.connectionProvider = connectionProvider;
     this.scriptRunner = scriptRunner;
     this.change = change;
+    this.option = option;
+  }
+
+  /**
+   * Returns a context that executes SQL on the given connection instead of the one of the running migration.
+   */
+  HookContext withConnection(Connection connection) {
+    ScriptRunner runner = new ScriptRunner(connection);
+    runner.setLogWriter(null);
+    runner.setErrorLogWriter(null);
+    runner.setStopOnError(true);
+    runner.setEscapeProcessing(false);
+    if (option != null) {
+      runner.setThrowWarning(option.isThrowWarning());
+      runner.setAutoCommit(option.isAutoCommit());
+      runner.setDelimiter(option.getDelimiter());
+      runner.setFullLineDelimiter(option.isFullLineDelimiter());
+      runner.setSendFullScript(option.isSendFullScript());
+      runner.setRemoveCRs(option.isRemoveCRs());
+    }
+    return new HookContext(connectionProvider, runner, change, option);
   }
 
   /**
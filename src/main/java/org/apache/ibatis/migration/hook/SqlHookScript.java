@@ -26,7 +26,7 @@ import java.util.Properties;
 
 import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.utils.Util;
-import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.migration.utils.VariableTemplate;
 
 public class SqlHookScript implements HookScript {
 
@@ -35,6 +35,9 @@ public class SqlHookScript implements HookScript {
   protected final Properties variables;
   protected final PrintStream printStream;
 
+  // Hooks usually run once per script, so the file is read and compiled only the first time.
+  private volatile VariableTemplate template;
+
   public SqlHookScript(File scriptFile, String charset, String[] options, Properties variables,
       PrintStream printStream) {
     super();
@@ -55,7 +58,18 @@ public class SqlHookScript implements HookScript {
   public void execute(Map<String, Object> bindingMap) {
     HookContext context = (HookContext) bindingMap.get(MigrationHook.HOOK_CONTEXT);
     printStream.println(Util.horizontalLine("Applying SQL hook: " + scriptFile.getName(), 80));
+    try {
+      context.executeSql(new StringReader(getTemplate().render(variables)));
+    } catch (IOException e) {
+      throw new MigrationException("Error occurred while running SQL hook script.", e);
+    }
+  }
 
+  private VariableTemplate getTemplate() throws IOException {
+    VariableTemplate result = template;
+    if (result != null) {
+      return result;
+    }
     FileInputStream inputStream = null;
     try {
       inputStream = new FileInputStream(scriptFile);
@@ -65,9 +79,9 @@ public class SqlHookScript implements HookScript {
       while ((length = inputStream.read(buffer)) != -1) {
         outputStream.write(buffer, 0, length);
       }
-      context.executeSql(new StringReader(PropertyParser.parse(outputStream.toString(charset), variables)));
-    } catch (IOException e) {
-      throw new MigrationException("Error occurred while running SQL hook script.", e);
+      result = VariableTemplate.compile(outputStream.toString(charset));
+      template = result;
+      return result;
     } finally {
       try {
         if (inputStream != null) {
@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An {@link OutputSink} that writes lines to a stream from a background thread, so that callers do not wait for the
+ * console or the log file. The stream is flushed whenever the queue runs empty.<br>
+ * At most <code>capacity</code> lines wait in the queue; beyond that, writers wait. In JSON lines mode each line is
+ * written as an object with <code>time</code>, <code>level</code> and <code>message</code> fields.
+ */
+public class BufferedOutputSink implements OutputSink {
+
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+  private static final Entry CLOSE = new Entry(null, null, 0L, null);
+
+  private final OutputLevel level;
+
+  private final boolean jsonLines;
+
+  private final Writer writer;
+
+  private final BlockingQueue<Entry> queue;
+
+  private final Thread thread;
+
+  private volatile boolean closed;
+
+  public BufferedOutputSink(OutputStream out, OutputLevel level, boolean jsonLines) {
+    this(out, level, jsonLines, DEFAULT_CAPACITY);
+  }
+
+  public BufferedOutputSink(OutputStream out, OutputLevel level, boolean jsonLines, int capacity) {
+    super();
+    this.level = level == null ? OutputLevel.SUMMARY : level;
+    this.jsonLines = jsonLines;
+    this.writer = new BufferedWriter(jsonLines ? new OutputStreamWriter(out, Charset.forName("UTF-8"))
+        : new OutputStreamWriter(out), 64 * 1024);
+    this.queue = new LinkedBlockingQueue<Entry>(capacity);
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "migrations-output");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  @Override
+  public boolean isEnabled(OutputLevel level) {
+    return this.level.includes(level);
+  }
+
+  @Override
+  public void write(OutputLevel level, String line) {
+    if (isEnabled(level) && !closed) {
+      put(new Entry(level, line, System.currentTimeMillis(), null));
+    }
+  }
+
+  @Override
+  public void flush() {
+    if (closed) {
+      return;
+    }
+    CountDownLatch flushed = new CountDownLatch(1);
+    put(new Entry(null, null, 0L, flushed));
+    await(flushed);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    flush();
+    closed = true;
+    put(CLOSE);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void put(Entry entry) {
+    try {
+      queue.put(entry);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    boolean failed = false;
+    while (true) {
+      Entry entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (entry == CLOSE) {
+        return;
+      }
+      try {
+        if (entry.line != null && !failed) {
+          if (jsonLines) {
+            writer.write("{\"time\":\"");
+            writer.write(format.format(new Date(entry.time)));
+            writer.write("\",\"level\":\"");
+            writer.write(entry.level.name().toLowerCase());
+            writer.write("\",\"message\":");
+            writeJsonString(entry.line);
+            writer.write("}\n");
+          } else {
+            writer.write(entry.line);
+            writer.write(LINE_SEPARATOR);
+          }
+        }
+        if (queue.isEmpty() && !failed) {
+          writer.flush();
+        }
+      } catch (IOException e) {
+        // The destination is gone. Lines are still taken so that writers never block.
+        failed = true;
+      }
+      if (entry.flushed != null) {
+        entry.flushed.countDown();
+      }
+    }
+  }
+
+  private void writeJsonString(String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        case '\r':
+          writer.write("\\r");
+          break;
+        case '\t':
+          writer.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            writer.write(String.format("\\u%04x", (int) c));
+          } else {
+            writer.write(c);
+          }
+      }
+    }
+    writer.write('"');
+  }
+
+  private static class Entry {
+    final OutputLevel level;
+    final String line;
+    final long time;
+    final CountDownLatch flushed;
+
+    Entry(OutputLevel level, String line, long time, CountDownLatch flushed) {
+      this.level = level;
+      this.line = line;
+      this.time = time;
+      this.flushed = flushed;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.io;
+
+/**
+ * How much of the output of a command is written. Each line has the lowest level at which it is shown.
+ */
+public enum OutputLevel {
+  /** Errors and the output a command exists for (e.g. the script of the script command). */
+  QUIET,
+  /** Progress of the operations. This is the default. */
+  SUMMARY,
+  /** Also echoes every statement as it is executed. */
+  VERBOSE;
+
+  /**
+   * @return <code>true</code> if a line of the given level is shown at this level.
+   */
+  public boolean includes(OutputLevel level) {
+    return level.ordinal() <= ordinal();
+  }
+}
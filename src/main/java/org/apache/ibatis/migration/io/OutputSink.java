@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.io;
+
+/**
+ * Receives the output of commands and operations line by line (see {@link SinkPrintStream}).<br>
+ * Implementations must be thread safe.
+ */
+public interface OutputSink {
+
+  /**
+   * @return <code>false</code> if lines of this level are discarded, so that callers can skip formatting them.
+   */
+  boolean isEnabled(OutputLevel level);
+
+  /**
+   * @param line
+   *          A line without its line separator.
+   */
+  void write(OutputLevel level, String line);
+
+  /**
+   * Blocks until the lines written so far have reached their destination.
+   */
+  void flush();
+
+  /**
+   * Flushes the lines written so far and releases the resources of the sink. The underlying stream is not closed.
+   */
+  void close();
+}
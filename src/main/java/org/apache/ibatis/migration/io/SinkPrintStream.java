@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * A {@link PrintStream} that passes each complete line to an {@link OutputSink} with a fixed level, so that the
+ * operations, which print to a <code>PrintStream</code>, can write to any sink.<br>
+ * A line that is not terminated yet is passed on when the stream is closed.
+ */
+public class SinkPrintStream extends PrintStream {
+
+  private final OutputSink sink;
+
+  private final OutputLevel level;
+
+  public SinkPrintStream(OutputSink sink, OutputLevel level) {
+    super(new LineOutputStream(sink, level), false);
+    this.sink = sink;
+    this.level = level;
+  }
+
+  public OutputSink getSink() {
+    return sink;
+  }
+
+  public OutputLevel getLevel() {
+    return level;
+  }
+
+  /**
+   * @return <code>false</code> if the sink discards what is printed to this stream.
+   */
+  public boolean isEnabled() {
+    return sink.isEnabled(level);
+  }
+
+  /**
+   * @return A stream to the same sink with another level.
+   */
+  public SinkPrintStream forLevel(OutputLevel level) {
+    return level == this.level ? this : new SinkPrintStream(sink, level);
+  }
+
+  /**
+   * @return A stream of the given level if <code>printStream</code> writes to a sink, <code>printStream</code>
+   *         otherwise.
+   */
+  public static PrintStream forLevel(PrintStream printStream, OutputLevel level) {
+    return printStream instanceof SinkPrintStream ? ((SinkPrintStream) printStream).forLevel(level) : printStream;
+  }
+
+  private static class LineOutputStream extends OutputStream {
+
+    private final OutputSink sink;
+
+    private final OutputLevel level;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    LineOutputStream(OutputSink sink, OutputLevel level) {
+      super();
+      this.sink = sink;
+      this.level = level;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      if (b == '\n') {
+        emit();
+      } else {
+        line.write(b);
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      int start = off;
+      int end = off + len;
+      for (int i = off; i < end; i++) {
+        if (b[i] == '\n') {
+          line.write(b, start, i - start);
+          emit();
+          start = i + 1;
+        }
+      }
+      line.write(b, start, end - start);
+    }
+
+    @Override
+    public synchronized void close() {
+      if (line.size() > 0) {
+        emit();
+      }
+    }
+
+    private void emit() {
+      if (sink.isEnabled(level)) {
+        // PrintStream encodes with the default charset.
+        String text = line.toString();
+        if (text.endsWith("\r")) {
+          text = text.substring(0, text.length() - 1);
+        }
+        sink.write(level, text);
+      }
+      line.reset();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection proxy that routes <code>Statement#execute(String)</code> calls through a chain of
+ * {@link StatementInterceptor}s.
+ */
+public final class InterceptingConnection implements InvocationHandler {
+
+  private final Connection connection;
+
+  private final List<StatementInterceptor> interceptors;
+
+  private InterceptingConnection(Connection connection, List<StatementInterceptor> interceptors) {
+    super();
+    this.connection = connection;
+    this.interceptors = interceptors;
+  }
+
+  public static Connection wrap(Connection connection, List<StatementInterceptor> interceptors) {
+    if (connection == null || interceptors == null || interceptors.isEmpty()) {
+      return connection;
+    }
+    InvocationHandler handler = new InterceptingConnection(connection,
+        new ArrayList<StatementInterceptor>(interceptors));
+    ClassLoader cl = InterceptingConnection.class.getClassLoader();
+    return (Connection) Proxy.newProxyInstance(cl, new Class<?>[] { Connection.class }, handler);
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    Object result = invokeTarget(connection, method, args);
+    if ("createStatement".equals(method.getName()) && result instanceof Statement) {
+      ClassLoader cl = InterceptingConnection.class.getClassLoader();
+      return Proxy.newProxyInstance(cl, new Class<?>[] { Statement.class },
+          new StatementHandler((Statement) result));
+    }
+    return result;
+  }
+
+  private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  private class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+
+    StatementHandler(Statement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if ("execute".equals(method.getName()) && args != null && args.length == 1 && args[0] instanceof String) {
+        return new StatementInvocation(statement, (String) args[0], interceptors, 0).proceed();
+      }
+      if ("getConnection".equals(method.getName())) {
+        return connection;
+      }
+      return invokeTarget(statement, method, args);
+    }
+  }
+}
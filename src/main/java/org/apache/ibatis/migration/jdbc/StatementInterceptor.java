@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Intercepts the SQL statements executed by the script runner of an operation.<br>
+ * Implementations must call {@link StatementInvocation#proceed()} to execute the statement (or the next interceptor).
+ */
+public interface StatementInterceptor {
+
+  /**
+   * @param invocation
+   *          the statement being executed.
+   * @return <code>true</code> if the first result is a <code>ResultSet</code> (see
+   *         {@link java.sql.Statement#execute(String)}).
+   * @throws SQLException
+   *           If a database access error occurs.
+   */
+  boolean intercept(StatementInvocation invocation) throws SQLException;
+
+}
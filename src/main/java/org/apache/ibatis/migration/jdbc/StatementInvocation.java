@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+public class StatementInvocation {
+  private final Statement statement;
+  private final String sql;
+  private final List<StatementInterceptor> interceptors;
+  private final int index;
+
+  StatementInvocation(Statement statement, String sql, List<StatementInterceptor> interceptors, int index) {
+    super();
+    this.statement = statement;
+    this.sql = sql;
+    this.interceptors = interceptors;
+    this.index = index;
+  }
+
+  public Statement getStatement() {
+    return statement;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  public boolean proceed() throws SQLException {
+    return proceed(sql);
+  }
+
+  /**
+   * Proceeds with a different SQL string.
+   */
+  public boolean proceed(String sql) throws SQLException {
+    if (index < interceptors.size()) {
+      return interceptors.get(index).intercept(new StatementInvocation(statement, sql, interceptors, index + 1));
+    }
+    return statement.execute(sql);
+  }
+}
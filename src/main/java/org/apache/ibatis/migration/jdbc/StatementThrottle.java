@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Slows down script execution to protect the load of a live database.<br>
+ * The throttle allows a number of statements per second, which is capped by the maximum rate (if any). When a
+ * statement takes longer than the target latency, the rate is halved; otherwise it grows by one statement per second
+ * every second (AIMD). Pauses are inserted before statements to keep the allowed rate. Chunks of a
+ * <code>@CHUNK</code> statement are throttled like statements.<br>
+ * A throttle can be shared by several operations.
+ */
+public class StatementThrottle implements StatementInterceptor {
+
+  private static final double DECREASE_FACTOR = 0.5d;
+
+  private static final double ADDITIVE_INCREASE_PER_SECOND = 1.0d;
+
+  private static final double MIN_RATE = 0.1d;
+
+  private static final double NANOS_PER_SECOND = 1000000000.0d;
+
+  private final long targetLatencyNanos;
+
+  private final double maxRate;
+
+  private double rate;
+
+  private long lastStart;
+
+  private long statementCount;
+
+  private long slowStatementCount;
+
+  private long pauseNanos;
+
+  /**
+   * @param targetLatencyMillis
+   *          Statements slower than this reduce the rate. 0 disables the adaptive part.
+   * @param maxStatementsPerSecond
+   *          Upper limit of the rate. 0 means no limit.
+   */
+  public StatementThrottle(long targetLatencyMillis, double maxStatementsPerSecond) {
+    super();
+    if (targetLatencyMillis < 0 || maxStatementsPerSecond < 0) {
+      throw new IllegalArgumentException("Throttle settings must not be negative.");
+    }
+    this.targetLatencyNanos = targetLatencyMillis * 1000000L;
+    this.maxRate = maxStatementsPerSecond > 0 ? maxStatementsPerSecond : Double.POSITIVE_INFINITY;
+    this.rate = maxRate;
+  }
+
+  @Override
+  public boolean intercept(StatementInvocation invocation) throws SQLException {
+    long pause = nextPause();
+    if (pause > 0) {
+      try {
+        Thread.sleep(pause / 1000000L, (int) (pause % 1000000L));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while throttling.", e);
+      }
+    }
+    long start = System.nanoTime();
+    try {
+      return invocation.proceed();
+    } finally {
+      adjust(start, System.nanoTime() - start);
+    }
+  }
+
+  private synchronized long nextPause() {
+    if (Double.isInfinite(rate) || lastStart == 0L) {
+      return 0L;
+    }
+    long pause = (long) (NANOS_PER_SECOND / rate) - (System.nanoTime() - lastStart);
+    if (pause <= 0L) {
+      return 0L;
+    }
+    pauseNanos += pause;
+    return pause;
+  }
+
+  private synchronized void adjust(long start, long elapsed) {
+    long sinceLastStart = lastStart == 0L ? 0L : start - lastStart;
+    lastStart = start;
+    statementCount++;
+    if (targetLatencyNanos > 0L && elapsed > targetLatencyNanos) {
+      slowStatementCount++;
+      double current = Double.isInfinite(rate) ? NANOS_PER_SECOND / Math.max(1L, elapsed) : rate;
+      rate = Math.max(MIN_RATE, current * DECREASE_FACTOR);
+    } else if (!Double.isInfinite(rate)) {
+      rate = Math.min(maxRate, rate + ADDITIVE_INCREASE_PER_SECOND * sinceLastStart / NANOS_PER_SECOND);
+    }
+  }
+
+  /**
+   * @return The allowed number of statements per second, {@link Double#POSITIVE_INFINITY} if not throttled.
+   */
+  public synchronized double getCurrentRate() {
+    return rate;
+  }
+
+  public synchronized long getStatementCount() {
+    return statementCount;
+  }
+
+  /**
+   * @return The number of statements that took longer than the target latency.
+   */
+  public synchronized long getSlowStatementCount() {
+    return slowStatementCount;
+  }
+
+  public synchronized long getPauseNanos() {
+    return pauseNanos;
+  }
+}
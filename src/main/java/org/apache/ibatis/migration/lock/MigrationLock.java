@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.lock;
+
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * Ensures that only one process migrates a database at a time.<br>
+ * Register an implementation with {@link DatabaseOperationOption#setMigrationLock(MigrationLock)}.
+ */
+public interface MigrationLock {
+
+  /**
+   * @return <code>true</code> if the lock has been acquired (or is already held by this lock), <code>false</code> if
+   *         it is held by someone else. Must not block.
+   */
+  boolean tryLock(ConnectionProvider connectionProvider, DatabaseOperationOption option);
+
+  void unlock(ConnectionProvider connectionProvider, DatabaseOperationOption option);
+}
@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.lock;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.ibatis.jdbc.SqlRunner;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * A {@link MigrationLock} backed by a single row table named after the changelog table (e.g. CHANGELOG_LOCK), which is
+ * created on first use.<br>
+ * The lock is acquired by inserting the row and released by deleting it, so it works with any database that enforces
+ * primary keys.
+ */
+public class TableMigrationLock implements MigrationLock {
+
+  private static final String LOCK_TABLE_SUFFIX = "_LOCK";
+
+  private final String owner;
+
+  private final long staleAfterMillis;
+
+  public TableMigrationLock() {
+    this(0L);
+  }
+
+  /**
+   * @param staleAfterMillis
+   *          A lock older than this is considered abandoned (e.g. the process was killed) and is removed. 0 (the default)
+   *          keeps locks until they are released.
+   */
+  public TableMigrationLock(long staleAfterMillis) {
+    super();
+    this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    this.staleAfterMillis = staleAfterMillis;
+  }
+
+  @Override
+  public boolean tryLock(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    String table = getLockTable(option);
+    ensureLockTable(connectionProvider, table);
+    SqlRunner runner = getSqlRunner(connectionProvider);
+    try {
+      long now = System.currentTimeMillis();
+      if (staleAfterMillis > 0) {
+        runner.delete("delete from " + table + " where ID = 1 and LOCKED_AT < ?", now - staleAfterMillis);
+      }
+      String insert = "insert into " + table + " (ID, LOCKED_BY, LOCKED_AT) values (1, ?, ?)";
+      try {
+        runner.insert(insert, owner, now);
+        return true;
+      } catch (SQLException e) {
+        // Most likely a primary key violation. Make sure the row exists before reporting the lock as taken.
+        String lockedBy = getLockedBy(runner, table);
+        if (lockedBy != null) {
+          return owner.equals(lockedBy);
+        }
+      }
+      // The holder released the lock in the meantime; try once more and report a real error if it still fails.
+      try {
+        runner.insert(insert, owner, now);
+        return true;
+      } catch (SQLException e) {
+        if (getLockedBy(runner, table) != null) {
+          return false;
+        }
+        throw e;
+      }
+    } catch (SQLException e) {
+      throw new MigrationException("Error acquiring migration lock.  Cause: " + e, e);
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  @Override
+  public void unlock(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    SqlRunner runner = getSqlRunner(connectionProvider);
+    try {
+      runner.delete("delete from " + getLockTable(option) + " where ID = 1 and LOCKED_BY = ?", owner);
+    } catch (SQLException e) {
+      throw new MigrationException("Error releasing migration lock.  Cause: " + e, e);
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  protected String getLockTable(DatabaseOperationOption option) {
+    return option.getChangelogTable() + LOCK_TABLE_SUFFIX;
+  }
+
+  private void ensureLockTable(ConnectionProvider connectionProvider, String table) {
+    if (lockTableExists(connectionProvider, table)) {
+      return;
+    }
+    SqlRunner runner = getSqlRunner(connectionProvider);
+    SQLException error = null;
+    try {
+      runner.run("create table " + table
+          + " (ID NUMERIC(1,0) NOT NULL, LOCKED_BY VARCHAR(255) NOT NULL, LOCKED_AT NUMERIC(20,0) NOT NULL,"
+          + " PRIMARY KEY (ID))");
+    } catch (SQLException e) {
+      error = e;
+    } finally {
+      runner.closeConnection();
+    }
+    // Another process may have created it in the meantime. Checked once the connection is closed, so that waiting
+    // for the lock never holds more than one connection.
+    if (error != null && !lockTableExists(connectionProvider, table)) {
+      throw new MigrationException("Error creating migration lock table.  Cause: " + error, error);
+    }
+  }
+
+  private boolean lockTableExists(ConnectionProvider connectionProvider, String table) {
+    SqlRunner runner = getSqlRunner(connectionProvider);
+    try {
+      runner.selectAll("select ID from " + table + " where ID = 1");
+      return true;
+    } catch (SQLException e) {
+      return false;
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  private String getLockedBy(SqlRunner runner, String table) throws SQLException {
+    List<Map<String, Object>> rows = runner.selectAll("select LOCKED_BY from " + table + " where ID = 1");
+    if (rows.isEmpty()) {
+      return null;
+    }
+    Object lockedBy = rows.get(0).get("LOCKED_BY");
+    return lockedBy == null ? null : lockedBy.toString();
+  }
+
+  private SqlRunner getSqlRunner(ConnectionProvider connectionProvider) {
+    try {
+      Connection connection = connectionProvider.getConnection();
+      // Otherwise a pooled connection left in a transaction would roll back the lock row when it is closed.
+      if (!connection.getAutoCommit()) {
+        connection.setAutoCommit(true);
+      }
+      return new SqlRunner(connection);
+    } catch (SQLException e) {
+      throw new MigrationException("Could not create SqlRunner. Cause: " + e, e);
+    }
+  }
+}
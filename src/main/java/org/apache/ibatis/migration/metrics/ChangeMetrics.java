@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import org.apache.ibatis.migration.Change;
+
+public class ChangeMetrics {
+  private final Change change;
+  private final boolean undo;
+  private long readNanos;
+  private long parseNanos;
+  private long executeNanos;
+  private long changelogNanos;
+  private int statementCount;
+  private long rowsAffected;
+  private long charactersRead;
+
+  public ChangeMetrics(Change change, boolean undo) {
+    super();
+    this.change = change;
+    this.undo = undo;
+  }
+
+  public Change getChange() {
+    return change;
+  }
+
+  public boolean isUndo() {
+    return undo;
+  }
+
+  /**
+   * @return Time spent by the {@link org.apache.ibatis.migration.MigrationLoader} to read the script (including
+   *         decoding and variable substitution).
+   */
+  public long getReadNanos() {
+    return readNanos;
+  }
+
+  void setReadNanos(long readNanos) {
+    this.readNanos = readNanos;
+  }
+
+  /**
+   * @return Time spent by the script runner outside of the JDBC driver (i.e. splitting the script into statements).
+   */
+  public long getParseNanos() {
+    return parseNanos;
+  }
+
+  void setParseNanos(long parseNanos) {
+    this.parseNanos = parseNanos;
+  }
+
+  /**
+   * @return Time spent executing the statements of the script.
+   */
+  public long getExecuteNanos() {
+    return executeNanos;
+  }
+
+  void setExecuteNanos(long executeNanos) {
+    this.executeNanos = executeNanos;
+  }
+
+  /**
+   * @return Time spent inserting into (or deleting from) the changelog table.
+   */
+  public long getChangelogNanos() {
+    return changelogNanos;
+  }
+
+  void setChangelogNanos(long changelogNanos) {
+    this.changelogNanos = changelogNanos;
+  }
+
+  public long getTotalNanos() {
+    return readNanos + parseNanos + executeNanos + changelogNanos;
+  }
+
+  public int getStatementCount() {
+    return statementCount;
+  }
+
+  void setStatementCount(int statementCount) {
+    this.statementCount = statementCount;
+  }
+
+  /**
+   * @return The sum of the update counts reported by the driver.
+   */
+  public long getRowsAffected() {
+    return rowsAffected;
+  }
+
+  void setRowsAffected(long rowsAffected) {
+    this.rowsAffected = rowsAffected;
+  }
+
+  /**
+   * @return The length of the script passed to the script runner.
+   */
+  public long getCharactersRead() {
+    return charactersRead;
+  }
+
+  void setCharactersRead(long charactersRead) {
+    this.charactersRead = charactersRead;
+  }
+}
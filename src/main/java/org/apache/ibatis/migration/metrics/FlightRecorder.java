@@ -0,0 +1,232 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emits JDK Flight Recorder events for migrations, so that they show up on the same timeline as GC, I/O and lock
+ * contention.<br>
+ * The event types are defined at runtime with <code>jdk.jfr.EventFactory</code> (JDK 11 or later), so that this
+ * library still runs on older JVMs, where the events are never enabled. While no recording enables a type,
+ * {@link Type#begin()} returns an event that ignores all calls.
+ */
+public final class FlightRecorder {
+
+  private static final String CATEGORY = "MyBatis Migrations";
+
+  public static final Type OPERATION = new Type("Operation", "Migration Operation",
+      new Field(String.class, "operation", "Operation"), new Field(boolean.class, "succeeded", "Succeeded"));
+
+  public static final Type CHANGE = new Type("Change", "Migration Change", new Field(String.class, "id", "ID"),
+      new Field(String.class, "filename", "File Name"), new Field(boolean.class, "undo", "Undo"),
+      new Field(long.class, "characters", "Script Length"), new Field(int.class, "statements", "Statements"),
+      new Field(long.class, "rowsAffected", "Rows Affected"));
+
+  public static final Type STATEMENT = new Type("Statement", "Migration Statement",
+      new Field(String.class, "id", "Change ID"), new Field(int.class, "index", "Index"),
+      new Field(int.class, "startLine", "Start Line"), new Field(String.class, "sql", "SQL"),
+      new Field(int.class, "updateCount", "Update Count"));
+
+  public static final Type CHANGELOG = new Type("Changelog", "Migration Changelog",
+      new Field(String.class, "action", "Action"), new Field(String.class, "table", "Table"),
+      new Field(int.class, "rows", "Rows"));
+
+  public static final Type HOOK = new Type("Hook", "Migration Hook", new Field(String.class, "hook", "Hook"),
+      new Field(String.class, "filename", "Change File Name"), new Field(boolean.class, "async", "Asynchronous"),
+      new Field(boolean.class, "succeeded", "Succeeded"));
+
+  private FlightRecorder() {
+    super();
+  }
+
+  public static final class Type {
+    private final Class<?>[] fieldTypes;
+
+    private final Object factory;
+
+    private final Object eventType;
+
+    Type(String name, String label, Field... fields) {
+      super();
+      fieldTypes = new Class<?>[fields.length];
+      for (int i = 0; i < fields.length; i++) {
+        fieldTypes[i] = fields[i].type;
+      }
+      Object createdFactory = null;
+      Object createdType = null;
+      if (Jfr.AVAILABLE) {
+        try {
+          List<Object> annotations = new ArrayList<Object>();
+          annotations.add(Jfr.annotation("jdk.jfr.Name", "org.mybatis.migrations." + name));
+          annotations.add(Jfr.annotation("jdk.jfr.Label", label));
+          annotations.add(Jfr.annotation("jdk.jfr.Category", new String[] { CATEGORY }));
+          // The call sites are always the same few methods.
+          annotations.add(Jfr.annotation("jdk.jfr.StackTrace", Boolean.FALSE));
+          List<Object> values = new ArrayList<Object>();
+          for (Field field : fields) {
+            List<Object> fieldAnnotations = new ArrayList<Object>();
+            fieldAnnotations.add(Jfr.annotation("jdk.jfr.Label", field.label));
+            values.add(Jfr.valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+          }
+          createdFactory = Jfr.create.invoke(null, annotations, values);
+          createdType = Jfr.getEventType.invoke(createdFactory);
+        } catch (Exception e) {
+          createdFactory = null;
+        }
+      }
+      this.factory = createdFactory;
+      this.eventType = createdType;
+    }
+
+    /**
+     * @return <code>true</code> if a running recording records this type.
+     */
+    public boolean isEnabled() {
+      if (factory == null) {
+        return false;
+      }
+      try {
+        return (Boolean) Jfr.isEnabled.invoke(eventType);
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    /**
+     * Starts timing an event.
+     */
+    public Event begin() {
+      if (!isEnabled()) {
+        return Event.DISABLED;
+      }
+      try {
+        Object event = Jfr.newEvent.invoke(factory);
+        Jfr.begin.invoke(event);
+        return new Event(this, event);
+      } catch (Exception e) {
+        return Event.DISABLED;
+      }
+    }
+  }
+
+  public static final class Event {
+    static final Event DISABLED = new Event(null, null);
+
+    private final Type type;
+
+    private final Object event;
+
+    private Event(Type type, Object event) {
+      super();
+      this.type = type;
+      this.event = event;
+    }
+
+    /**
+     * Ends the event and records it with the given field values, in the order of the fields of its type. Failures
+     * are ignored so that recording never breaks a migration.
+     */
+    public void commit(Object... values) {
+      if (event == null) {
+        return;
+      }
+      try {
+        Jfr.end.invoke(event);
+        for (int i = 0; i < values.length && i < type.fieldTypes.length; i++) {
+          Jfr.set.invoke(event, i, convert(values[i], type.fieldTypes[i]));
+        }
+        Jfr.commit.invoke(event);
+      } catch (Exception e) {
+        // ignore
+      }
+    }
+
+    private static Object convert(Object value, Class<?> fieldType) {
+      if (value == null) {
+        return null;
+      } else if (fieldType == String.class) {
+        return String.valueOf(value);
+      } else if (fieldType == long.class && value instanceof Number) {
+        return Long.valueOf(((Number) value).longValue());
+      } else if (fieldType == int.class && value instanceof Number) {
+        return Integer.valueOf(((Number) value).intValue());
+      }
+      return value;
+    }
+  }
+
+  static final class Field {
+    private final Class<?> type;
+    private final String name;
+    private final String label;
+
+    Field(Class<?> type, String name, String label) {
+      super();
+      this.type = type;
+      this.name = name;
+      this.label = label;
+    }
+  }
+
+  /**
+   * The reflective handles on the <code>jdk.jfr</code> API.
+   */
+  private static final class Jfr {
+    static final boolean AVAILABLE;
+    static Constructor<?> annotationElement;
+    static Constructor<?> valueDescriptor;
+    static Method create;
+    static Method getEventType;
+    static Method isEnabled;
+    static Method newEvent;
+    static Method begin;
+    static Method end;
+    static Method set;
+    static Method commit;
+
+    static {
+      boolean available;
+      try {
+        Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+        valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+        create = factoryClass.getMethod("create", List.class, List.class);
+        getEventType = factoryClass.getMethod("getEventType");
+        isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+        newEvent = factoryClass.getMethod("newEvent");
+        begin = eventClass.getMethod("begin");
+        end = eventClass.getMethod("end");
+        set = eventClass.getMethod("set", int.class, Object.class);
+        commit = eventClass.getMethod("commit");
+        available = true;
+      } catch (Throwable t) {
+        available = false;
+      }
+      AVAILABLE = available;
+    }
+
+    static Object annotation(String className, Object value) throws Exception {
+      return annotationElement.newInstance(Class.forName(className), value);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.ibatis.migration.Change;
+
+/**
+ * Keeps the metrics of every migration applied or undone while it is registered.
+ */
+public class MetricsCollector implements MigrationListener {
+
+  private final List<ChangeMetrics> changes = new ArrayList<ChangeMetrics>();
+
+  @Override
+  public void changeStarted(Change change, boolean undo) {
+    // nothing to do
+  }
+
+  @Override
+  public void statementExecuted(StatementMetrics statement) {
+    // aggregated in ChangeMetrics
+  }
+
+  @Override
+  public synchronized void changeFinished(ChangeMetrics metrics) {
+    changes.add(metrics);
+  }
+
+  public synchronized List<ChangeMetrics> getChangeMetrics() {
+    return new ArrayList<ChangeMetrics>(changes);
+  }
+
+  public List<ChangeMetrics> getSlowest(int limit) {
+    List<ChangeMetrics> list = getChangeMetrics();
+    Collections.sort(list, new Comparator<ChangeMetrics>() {
+      @Override
+      public int compare(ChangeMetrics o1, ChangeMetrics o2) {
+        long t1 = o1.getTotalNanos();
+        long t2 = o2.getTotalNanos();
+        return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+      }
+    });
+    return list.size() > limit ? list.subList(0, limit) : list;
+  }
+
+  public void printSummary(PrintStream printStream, int limit) {
+    if (printStream == null) {
+      return;
+    }
+    List<ChangeMetrics> all = getChangeMetrics();
+    long total = 0L;
+    int statements = 0;
+    for (ChangeMetrics metrics : all) {
+      total += metrics.getTotalNanos();
+      statements += metrics.getStatementCount();
+    }
+    printStream.printf("%d migration(s), %d statement(s) in %s%n", all.size(), statements, seconds(total));
+    List<ChangeMetrics> slowest = getSlowest(limit);
+    if (!slowest.isEmpty()) {
+      printStream.printf("Slowest migrations:%n");
+      printStream.printf("  %10s %10s %10s %10s %10s  %s%n", "total", "read", "parse", "execute", "changelog",
+          "migration");
+      for (ChangeMetrics metrics : slowest) {
+        printStream.printf("  %10s %10s %10s %10s %10s  %s (%d statement(s), %d row(s))%n",
+            seconds(metrics.getTotalNanos()), seconds(metrics.getReadNanos()), seconds(metrics.getParseNanos()),
+            seconds(metrics.getExecuteNanos()), seconds(metrics.getChangelogNanos()),
+            metrics.getChange().getFilename(), metrics.getStatementCount(), metrics.getRowsAffected());
+      }
+    }
+    printStream.println();
+  }
+
+  static String seconds(long nanos) {
+    return String.format("%.3fs", nanos / 1000000000.0d);
+  }
+}
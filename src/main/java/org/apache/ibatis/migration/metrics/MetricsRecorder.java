@@ -0,0 +1,261 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementInvocation;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.script.ScriptCache;
+import org.apache.ibatis.migration.script.SqlStatement;
+import org.apache.ibatis.migration.script.StatementSplitter;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Measures the migrations of a single operation, notifies the registered {@link MigrationListener}s and emits the
+ * change and statement events of the {@link FlightRecorder}.<br>
+ * Statements executed outside of a change (e.g. by hooks) are not recorded.
+ */
+public class MetricsRecorder implements StatementInterceptor {
+
+  private final List<MigrationListener> listeners;
+
+  private final StatementSplitter splitter;
+
+  private final ScriptCache scriptCache;
+
+  private ChangeMetrics current;
+
+  private List<SqlStatement> statements = Collections.emptyList();
+
+  private int lineOffset;
+
+  private int statementCount;
+
+  private long rowsAffected;
+
+  private long executeNanos;
+
+  private long changelogStart;
+
+  private final boolean flightRecording;
+
+  private FlightRecorder.Event changeEvent = FlightRecorder.Event.DISABLED;
+
+  public MetricsRecorder(DatabaseOperationOption option) {
+    super();
+    this.listeners = new ArrayList<MigrationListener>(option.getMigrationListeners());
+    this.splitter = new StatementSplitter(option);
+    this.scriptCache = option.getScriptCache();
+    // Checked once per operation, so a recording started later sees the events of the next operation.
+    this.flightRecording = FlightRecorder.CHANGE.isEnabled() || FlightRecorder.STATEMENT.isEnabled();
+  }
+
+  /**
+   * @return <code>true</code> if there are listeners or a flight recording, so that statements must be measured.
+   */
+  public boolean hasListeners() {
+    return !listeners.isEmpty() || flightRecording;
+  }
+
+  public void startChange(Change change, boolean undo) {
+    current = new ChangeMetrics(change.clone(), undo);
+    statementCount = 0;
+    rowsAffected = 0L;
+    executeNanos = 0L;
+    lineOffset = 0;
+    changeEvent = FlightRecorder.CHANGE.begin();
+    for (MigrationListener listener : listeners) {
+      listener.changeStarted(current.getChange(), undo);
+    }
+  }
+
+  public Reader readScript(MigrationLoader migrationsLoader, Change change, boolean undo) {
+    long start = System.nanoTime();
+    Reader reader = migrationsLoader.getScriptReader(change, undo);
+    scriptRead(System.nanoTime() - start);
+    if (undo && current != null && hasListeners()) {
+      lineOffset = countDoLines(migrationsLoader, change);
+    }
+    return reader;
+  }
+
+  /**
+   * The undo section starts at the <code>@UNDO</code> line, so its line numbers are offset by the lines of the do
+   * section.
+   */
+  private static int countDoLines(MigrationLoader migrationsLoader, Change change) {
+    if (migrationsLoader instanceof FileMigrationLoader
+        && ((FileMigrationLoader) migrationsLoader).isDataFile(change.getFilename())) {
+      return 0;
+    }
+    BufferedReader reader = new BufferedReader(migrationsLoader.getScriptReader(change, false));
+    try {
+      int lines = 0;
+      while (reader.readLine() != null) {
+        lines++;
+      }
+      return lines;
+    } catch (IOException e) {
+      throw new MigrationException("Error reading script.  Cause: " + e, e);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * Records the read time of a script that has been read elsewhere (e.g. prefetched).
+   */
+  public void scriptRead(long readNanos) {
+    if (current != null) {
+      current.setReadNanos(readNanos);
+    }
+  }
+
+  public void runScript(ScriptRunner runner, Reader reader) {
+    long start = System.nanoTime();
+    CountingReader countingReader = new CountingReader(reader);
+    if (current != null && hasListeners()) {
+      // Locate the statements in the script so that they can be reported with their line numbers.
+      String script;
+      try {
+        script = Util.readFully(countingReader);
+      } catch (IOException e) {
+        throw new MigrationException("Error reading script.  Cause: " + e, e);
+      }
+      statements = (scriptCache == null ? splitter.parse(script) : scriptCache.parse(script, splitter))
+          .getStatements();
+      reader = new StringReader(script);
+    } else {
+      reader = countingReader;
+    }
+    try {
+      runner.runScript(reader);
+    } finally {
+      statements = Collections.emptyList();
+      if (current != null) {
+        current.setCharactersRead(countingReader.count);
+        current.setExecuteNanos(executeNanos);
+        current.setParseNanos(Math.max(0L, System.nanoTime() - start - executeNanos));
+        current.setStatementCount(statementCount);
+        current.setRowsAffected(rowsAffected);
+      }
+    }
+  }
+
+  public void startChangelog() {
+    changelogStart = System.nanoTime();
+  }
+
+  public void finishChange() {
+    if (current == null) {
+      return;
+    }
+    if (changelogStart > 0L) {
+      current.setChangelogNanos(System.nanoTime() - changelogStart);
+      changelogStart = 0L;
+    }
+    ChangeMetrics metrics = current;
+    current = null;
+    changeEvent.commit(metrics.getChange().getId(), metrics.getChange().getFilename(), metrics.isUndo(),
+        metrics.getCharactersRead(), metrics.getStatementCount(), metrics.getRowsAffected());
+    changeEvent = FlightRecorder.Event.DISABLED;
+    for (MigrationListener listener : listeners) {
+      listener.changeFinished(metrics);
+    }
+  }
+
+  @Override
+  public boolean intercept(StatementInvocation invocation) throws SQLException {
+    if (current == null) {
+      return invocation.proceed();
+    }
+    FlightRecorder.Event event = FlightRecorder.STATEMENT.begin();
+    long start = System.nanoTime();
+    boolean hasResults = invocation.proceed();
+    long elapsed = System.nanoTime() - start;
+    Statement statement = invocation.getStatement();
+    int updateCount = hasResults ? -1 : statement.getUpdateCount();
+    int warningCount = 0;
+    for (SQLWarning warning = statement.getWarnings(); warning != null; warning = warning.getNextWarning()) {
+      warningCount++;
+    }
+    executeNanos += elapsed;
+    if (updateCount > 0) {
+      rowsAffected += updateCount;
+    }
+    int index = statementCount++;
+    int startLine = 0;
+    int endLine = 0;
+    if (index < statements.size()) {
+      startLine = lineOffset + statements.get(index).getStartLine();
+      endLine = lineOffset + statements.get(index).getEndLine();
+    }
+    event.commit(current.getChange().getId(), index, startLine, invocation.getSql(), updateCount);
+    StatementMetrics metrics = new StatementMetrics(current.getChange(), index, invocation.getSql(), startLine,
+        endLine, elapsed, updateCount, warningCount);
+    for (MigrationListener listener : listeners) {
+      listener.statementExecuted(metrics);
+    }
+    return hasResults;
+  }
+
+  private static class CountingReader extends FilterReader {
+    private long count;
+
+    CountingReader(Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) {
+        count++;
+      }
+      return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      int n = super.read(cbuf, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+  }
+}
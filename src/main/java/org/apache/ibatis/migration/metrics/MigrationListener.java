@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import org.apache.ibatis.migration.Change;
+
+/**
+ * Receives the progress and the timings of the migrations applied or undone by an operation.
+ *
+ * @see org.apache.ibatis.migration.options.DatabaseOperationOption#addMigrationListener(MigrationListener)
+ */
+public interface MigrationListener {
+
+  void changeStarted(Change change, boolean undo);
+
+  void statementExecuted(StatementMetrics statement);
+
+  void changeFinished(ChangeMetrics metrics);
+
+}
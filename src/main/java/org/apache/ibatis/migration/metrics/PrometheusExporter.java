@@ -0,0 +1,142 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.jdbc.StatementThrottle;
+
+/**
+ * Writes collected metrics in the Prometheus text exposition format (e.g. for the node_exporter textfile
+ * collector).
+ */
+public class PrometheusExporter {
+
+  private static final String PREFIX = "mybatis_migrations_";
+
+  private final MetricsCollector collector;
+
+  private final StatementThrottle throttle;
+
+  public PrometheusExporter(MetricsCollector collector) {
+    this(collector, null);
+  }
+
+  public PrometheusExporter(MetricsCollector collector, StatementThrottle throttle) {
+    super();
+    this.collector = collector;
+    this.throttle = throttle;
+  }
+
+  public void export(File file) {
+    File tmp = new File(file.getAbsolutePath() + ".tmp");
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+      export(writer);
+      writer.close();
+      writer = null;
+      if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+        throw new MigrationException("Could not write metrics file " + file.getAbsolutePath());
+      }
+    } catch (IOException e) {
+      throw new MigrationException("Error writing metrics file " + file.getAbsolutePath() + ".  Cause: " + e, e);
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  public void export(Writer writer) {
+    PrintWriter out = new PrintWriter(writer);
+    List<ChangeMetrics> changes = collector.getChangeMetrics();
+    out.println("# HELP " + PREFIX + "change_seconds Time spent per migration and phase.");
+    out.println("# TYPE " + PREFIX + "change_seconds gauge");
+    for (ChangeMetrics metrics : changes) {
+      printSeconds(out, "change_seconds", metrics, "read", metrics.getReadNanos());
+      printSeconds(out, "change_seconds", metrics, "parse", metrics.getParseNanos());
+      printSeconds(out, "change_seconds", metrics, "execute", metrics.getExecuteNanos());
+      printSeconds(out, "change_seconds", metrics, "changelog", metrics.getChangelogNanos());
+    }
+    out.println("# HELP " + PREFIX + "change_statements Number of statements executed per migration.");
+    out.println("# TYPE " + PREFIX + "change_statements gauge");
+    for (ChangeMetrics metrics : changes) {
+      printSample(out, "change_statements", metrics, null, metrics.getStatementCount());
+    }
+    out.println("# HELP " + PREFIX + "change_rows_affected Sum of the update counts per migration.");
+    out.println("# TYPE " + PREFIX + "change_rows_affected gauge");
+    for (ChangeMetrics metrics : changes) {
+      printSample(out, "change_rows_affected", metrics, null, metrics.getRowsAffected());
+    }
+    out.println("# HELP " + PREFIX + "change_characters_read Length of the script per migration.");
+    out.println("# TYPE " + PREFIX + "change_characters_read gauge");
+    for (ChangeMetrics metrics : changes) {
+      printSample(out, "change_characters_read", metrics, null, metrics.getCharactersRead());
+    }
+    if (throttle != null) {
+      double rate = throttle.getCurrentRate();
+      out.println("# HELP " + PREFIX + "throttle_rate Statements per second currently allowed by the throttle.");
+      out.println("# TYPE " + PREFIX + "throttle_rate gauge");
+      out.println(
+          PREFIX + "throttle_rate " + (Double.isInfinite(rate) ? "+Inf" : String.format(Locale.ROOT, "%.3f", rate)));
+      out.println("# HELP " + PREFIX + "throttle_pause_seconds Time spent waiting for the throttle.");
+      out.println("# TYPE " + PREFIX + "throttle_pause_seconds gauge");
+      out.println(PREFIX + "throttle_pause_seconds "
+          + String.format(Locale.ROOT, "%.9f", throttle.getPauseNanos() / 1000000000.0d));
+      out.println("# HELP " + PREFIX + "throttle_slow_statements Statements slower than the target latency.");
+      out.println("# TYPE " + PREFIX + "throttle_slow_statements gauge");
+      out.println(PREFIX + "throttle_slow_statements " + throttle.getSlowStatementCount());
+    }
+    out.flush();
+  }
+
+  private void printSeconds(PrintWriter out, String name, ChangeMetrics metrics, String phase, long nanos) {
+    printSample(out, name, metrics, phase, String.format(Locale.ROOT, "%.9f", nanos / 1000000000.0d));
+  }
+
+  private void printSample(PrintWriter out, String name, ChangeMetrics metrics, String phase, Object value) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(PREFIX).append(name);
+    builder.append("{id=\"").append(metrics.getChange().getId()).append('"');
+    builder.append(",migration=\"").append(escape(metrics.getChange().getFilename())).append('"');
+    builder.append(",direction=\"").append(metrics.isUndo() ? "down" : "up").append('"');
+    if (phase != null) {
+      builder.append(",phase=\"").append(phase).append('"');
+    }
+    builder.append("} ").append(value);
+    out.println(builder.toString());
+  }
+
+  private static String escape(String value) {
+    if (value == null) {
+      return "";
+    }
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
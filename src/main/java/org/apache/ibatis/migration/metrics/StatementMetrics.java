@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import org.apache.ibatis.migration.Change;
+
+public class StatementMetrics {
+  private final Change change;
+  private final int index;
+  private final String sql;
+  private final int startLine;
+  private final int endLine;
+  private final long elapsedNanos;
+  private final int updateCount;
+  private final int warningCount;
+
+  public StatementMetrics(Change change, int index, String sql, int startLine, int endLine, long elapsedNanos,
+      int updateCount, int warningCount) {
+    super();
+    this.change = change;
+    this.index = index;
+    this.sql = sql;
+    this.startLine = startLine;
+    this.endLine = endLine;
+    this.elapsedNanos = elapsedNanos;
+    this.updateCount = updateCount;
+    this.warningCount = warningCount;
+  }
+
+  public Change getChange() {
+    return change;
+  }
+
+  /**
+   * @return Zero-based index of the statement in the script.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * @return One-based line number where the statement starts in the executed script (the undo section of a script
+   *         starts at the <code>@UNDO</code> line) or <code>0</code> if unknown.
+   */
+  public int getStartLine() {
+    return startLine;
+  }
+
+  /**
+   * @return One-based line number where the statement ends in the executed script or <code>0</code> if unknown.
+   */
+  public int getEndLine() {
+    return endLine;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return The update count reported by the driver or <code>-1</code> if the statement returned a result set.
+   */
+  public int getUpdateCount() {
+    return updateCount;
+  }
+
+  public int getWarningCount() {
+    return warningCount;
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.ibatis.migration.Change;
+
+/**
+ * Keeps the N slowest statements executed while it is registered.<br>
+ * Only N statements are retained regardless of the size of the scripts.
+ */
+public class StatementProfiler implements MigrationListener {
+
+  private static final int SQL_PREVIEW_LENGTH = 100;
+
+  private static final Comparator<StatementMetrics> FASTEST_FIRST = new Comparator<StatementMetrics>() {
+    @Override
+    public int compare(StatementMetrics o1, StatementMetrics o2) {
+      long t1 = o1.getElapsedNanos();
+      long t2 = o2.getElapsedNanos();
+      return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+  };
+
+  private final int limit;
+
+  private final PriorityQueue<StatementMetrics> slowest;
+
+  private long statementCount;
+
+  private long totalNanos;
+
+  public StatementProfiler(int limit) {
+    super();
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be a positive number.");
+    }
+    this.limit = limit;
+    this.slowest = new PriorityQueue<StatementMetrics>(limit + 1, FASTEST_FIRST);
+  }
+
+  @Override
+  public void changeStarted(Change change, boolean undo) {
+    // nothing to do
+  }
+
+  @Override
+  public synchronized void statementExecuted(StatementMetrics statement) {
+    statementCount++;
+    totalNanos += statement.getElapsedNanos();
+    if (slowest.size() < limit) {
+      slowest.add(statement);
+    } else if (FASTEST_FIRST.compare(statement, slowest.peek()) > 0) {
+      slowest.poll();
+      slowest.add(statement);
+    }
+  }
+
+  @Override
+  public void changeFinished(ChangeMetrics metrics) {
+    // nothing to do
+  }
+
+  public synchronized long getStatementCount() {
+    return statementCount;
+  }
+
+  public synchronized long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * @return The slowest statements, the slowest first.
+   */
+  public synchronized List<StatementMetrics> getSlowest() {
+    List<StatementMetrics> list = new ArrayList<StatementMetrics>(slowest);
+    Collections.sort(list, Collections.reverseOrder(FASTEST_FIRST));
+    return list;
+  }
+
+  public void printReport(PrintStream printStream) {
+    if (printStream == null) {
+      return;
+    }
+    printStream.printf("%d statement(s) executed in %s%n", getStatementCount(),
+        MetricsCollector.seconds(getTotalNanos()));
+    List<StatementMetrics> list = getSlowest();
+    if (!list.isEmpty()) {
+      printStream.printf("Slowest statements:%n");
+      for (StatementMetrics statement : list) {
+        printStream.printf("  %10s  %s:%d-%d (update count: %d, warnings: %d)%n",
+            MetricsCollector.seconds(statement.getElapsedNanos()), statement.getChange().getFilename(),
+            statement.getStartLine(), statement.getEndLine(), statement.getUpdateCount(),
+            statement.getWarningCount());
+        printStream.printf("              %s%n", preview(statement.getSql()));
+      }
+    }
+    printStream.println();
+  }
+
+  private static String preview(String sql) {
+    String text = sql.trim().replaceAll("\\s+", " ");
+    return text.length() > SQL_PREVIEW_LENGTH ? text.substring(0, SQL_PREVIEW_LENGTH) + "..." : text;
+  }
+}
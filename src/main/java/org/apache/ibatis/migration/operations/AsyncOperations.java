@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * Runs operations on the given {@link Executor} and returns a {@link MigrationTask} to follow their progress, wait for
+ * them or cancel them.<br>
+ * The option passed to each method is copied, so the same instance can be reused.
+ */
+public class AsyncOperations {
+
+  private final Executor executor;
+
+  public AsyncOperations(Executor executor) {
+    super();
+    if (executor == null) {
+      throw new IllegalArgumentException("executor must not be null.");
+    }
+    this.executor = executor;
+  }
+
+  public MigrationTask<UpOperation> up(final UpOperation operation, final ConnectionProvider connectionProvider,
+      final MigrationLoader migrationsLoader, DatabaseOperationOption option, final PrintStream printStream,
+      final MigrationHook hook) {
+    return submit(new MigrationTask<UpOperation>(option) {
+      @Override
+      protected UpOperation execute(DatabaseOperationOption option) {
+        return operation.operate(connectionProvider, migrationsLoader, option, printStream, hook);
+      }
+    });
+  }
+
+  public MigrationTask<DownOperation> down(final DownOperation operation, final ConnectionProvider connectionProvider,
+      final MigrationLoader migrationsLoader, DatabaseOperationOption option, final PrintStream printStream,
+      final MigrationHook hook) {
+    return submit(new MigrationTask<DownOperation>(option) {
+      @Override
+      protected DownOperation execute(DatabaseOperationOption option) {
+        return operation.operate(connectionProvider, migrationsLoader, option, printStream, hook);
+      }
+    });
+  }
+
+  public MigrationTask<PendingOperation> pending(final PendingOperation operation,
+      final ConnectionProvider connectionProvider, final MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, final PrintStream printStream, final MigrationHook hook) {
+    return submit(new MigrationTask<PendingOperation>(option) {
+      @Override
+      protected PendingOperation execute(DatabaseOperationOption option) {
+        return operation.operate(connectionProvider, migrationsLoader, option, printStream, hook);
+      }
+    });
+  }
+
+  public MigrationTask<VersionOperation> version(final VersionOperation operation,
+      final ConnectionProvider connectionProvider, final MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, final PrintStream printStream, final MigrationHook upHook,
+      final MigrationHook downHook) {
+    return submit(new MigrationTask<VersionOperation>(option) {
+      @Override
+      protected VersionOperation execute(DatabaseOperationOption option) {
+        return operation.operate(connectionProvider, migrationsLoader, option, printStream, upHook, downHook);
+      }
+    });
+  }
+
+  protected <T> MigrationTask<T> submit(MigrationTask<T> task) {
+    executor.execute(task);
+    return task;
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Applies the baseline script (<code>scripts/baseline.sql</code>, see
+ * {@link org.apache.ibatis.migration.commands.BaselineCommand}) to a database without a changelog. The consolidated
+ * script of the migrations up to the baseline runs in one step, then their changelog rows are inserted in batches.
+ * {@link UpOperation} does this before applying the later migrations.
+ */
+public final class BaselineOperation extends DatabaseOperation {
+
+  /**
+   * Starts the line of each migration included in the baseline, followed by its ID and description.
+   */
+  public static final String ENTRY_PREFIX = "-- //@BASELINE ";
+
+  private static final Pattern ENTRY = Pattern.compile("^--\\s*(//)?\\s*@BASELINE\\s+(\\S+)\\s*(.*)$");
+
+  private static final int BATCH_SIZE = 1000;
+
+  private BigDecimal baselineId;
+
+  private int appliedCount;
+
+  public BaselineOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
+      }
+      if (changelogExists(connectionProvider, option)) {
+        println(printStream,
+            "The baseline only applies before migrations are applied (i.e. before the changelog exists).");
+      } else if (apply(connectionProvider, migrationsLoader, option, printStream, null) == null) {
+        println(printStream, "Error, could not run baseline.sql.  The file does not exist.");
+      }
+      succeeded = true;
+      return this;
+    } catch (Exception e) {
+      throw new MigrationException("Error applying baseline.  Cause: " + e, e);
+    } finally {
+      event.commit("baseline", succeeded);
+    }
+  }
+
+  /**
+   * @return The ID of the last migration of the baseline, or <code>null</code> if the loader has no baseline.
+   */
+  public BigDecimal getBaselineId() {
+    return baselineId;
+  }
+
+  /**
+   * @return The number of migrations included in the applied baseline.
+   */
+  public int getAppliedCount() {
+    return appliedCount;
+  }
+
+  public static String entry(Change change) {
+    return ENTRY_PREFIX + change.getId() + " " + change.getDescription();
+  }
+
+  /**
+   * @param steps
+   *          The maximum number of migrations to apply, or <code>null</code>. The baseline is not applied if it
+   *          includes more migrations.
+   * @return The ID of the last migration of the baseline, or <code>null</code> if it has not been applied.
+   */
+  BigDecimal apply(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, Integer steps) throws IOException {
+    String script = readScript(migrationsLoader);
+    if (script == null) {
+      return null;
+    }
+    List<Change> changes = readEntries(script);
+    if (steps != null && changes.size() > steps) {
+      return null;
+    }
+    println(printStream, Util.horizontalLine("Applying: baseline.sql", 80));
+    ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream);
+    try {
+      runner.runScript(new StringReader(script));
+    } finally {
+      runner.closeConnection();
+    }
+    insertChangelog(changes, connectionProvider, option, BATCH_SIZE);
+    baselineId = changes.get(changes.size() - 1).getId();
+    appliedCount = changes.size();
+    println(printStream, "Applied the baseline of " + changes.size() + " migration(s) up to " + baselineId + ".");
+    println(printStream);
+    return baselineId;
+  }
+
+  /**
+   * @return The baseline script with its variables replaced, or <code>null</code> if the loader has none.
+   */
+  static String readScript(MigrationLoader migrationsLoader) throws IOException {
+    Reader baselineReader = migrationsLoader instanceof FileMigrationLoader
+        ? ((FileMigrationLoader) migrationsLoader).getBaselineReader() : null;
+    if (baselineReader == null) {
+      return null;
+    }
+    try {
+      return Util.readFully(baselineReader);
+    } finally {
+      baselineReader.close();
+    }
+  }
+
+  /**
+   * @return The migrations included in the baseline, in order.
+   */
+  static List<Change> readEntries(String script) throws IOException {
+    List<Change> changes = new ArrayList<Change>();
+    BufferedReader reader = new BufferedReader(new StringReader(script));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      Matcher matcher = ENTRY.matcher(line.trim());
+      if (matcher.matches()) {
+        try {
+          changes.add(new Change(new BigDecimal(matcher.group(2)), null, matcher.group(3)));
+        } catch (NumberFormatException e) {
+          throw new MigrationException("Invalid baseline entry: " + line);
+        }
+      }
+    }
+    if (changes.isEmpty()) {
+      throw new MigrationException("baseline.sql does not list the migrations it includes.");
+    }
+    Collections.sort(changes);
+    return changes;
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.migration.ConnectionProvider;
 import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.Util;
 
@@ -39,6 +40,8 @@ public final class BootstrapOperation extends DatabaseOperation {
 
   public BootstrapOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
     try {
       if (option == null) {
         option = new DatabaseOperationOption();
@@ -61,9 +64,12 @@ public final class BootstrapOperation extends DatabaseOperation {
           println(printStream, "Error, could not run bootstrap.sql.  The file does not exist.");
         }
       }
+      succeeded = true;
       return this;
     } catch (Exception e) {
       throw new MigrationException("Error running bootstrapper.  Cause: " + e, e);
+    } finally {
+      event.commit("bootstrap", succeeded);
     }
   }
 }
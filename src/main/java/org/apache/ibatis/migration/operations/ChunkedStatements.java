@@ -0,0 +1,213 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementInvocation;
+import org.apache.ibatis.migration.script.ChunkDirective;
+
+/**
+ * Executes statements annotated with a {@link ChunkDirective} in key ranges. Each range is committed on its own, so
+ * that large backfills do not hold locks or undo logs for the whole table.
+ */
+final class ChunkedStatements implements StatementInterceptor {
+
+  private static final Pattern TARGET_TABLE = Pattern.compile("^(?:update|delete\\s+from)\\s+([^\\s(]+)",
+      Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Clauses that may follow the <code>where</code> clause, so that the key range cannot simply be appended.
+   */
+  private static final Set<String> TRAILING_CLAUSES = new HashSet<String>(Arrays.asList("ORDER", "LIMIT", "OFFSET",
+      "FETCH", "RETURNING", "UNION", "INTERSECT", "EXCEPT", "MINUS"));
+
+  private static final long PROGRESS_INTERVAL_NANOS = 5000000000L;
+
+  private final PrintStream printStream;
+
+  ChunkedStatements(PrintStream printStream) {
+    super();
+    this.printStream = printStream;
+  }
+
+  @Override
+  public boolean intercept(StatementInvocation invocation) throws SQLException {
+    ChunkDirective directive = ChunkDirective.parseInline(invocation.getSql());
+    if (directive == null) {
+      return invocation.proceed();
+    }
+    String sql = ChunkDirective.removeInline(invocation.getSql()).trim();
+    Matcher matcher = TARGET_TABLE.matcher(sql);
+    if (!matcher.find()) {
+      throw new SQLException("@CHUNK only supports UPDATE and DELETE statements: " + sql);
+    }
+    String unsupported = findUnsupportedClause(sql);
+    if (unsupported != null) {
+      throw new SQLException("@CHUNK does not support statements with " + unsupported + ": " + sql);
+    }
+    String table = matcher.group(1);
+    String key = directive.getKey();
+    Statement statement = invocation.getStatement();
+    Connection connection = statement.getConnection();
+    long[] bounds = selectBounds(connection, table, key.substring(key.lastIndexOf('.') + 1));
+    if (bounds == null) {
+      println("-- @CHUNK " + table + ": no rows.");
+      return false;
+    }
+    long min = bounds[0];
+    long max = bounds[1];
+    int where = indexOfWhere(sql);
+    long rows = 0L;
+    long chunks = 0L;
+    long lastReport = System.nanoTime();
+    long from = min;
+    while (true) {
+      long to = from + directive.getSize();
+      boolean last = to > max || to < from;
+      invocation.proceed(restrict(sql, where, key, from, last ? null : to));
+      int updateCount = statement.getUpdateCount();
+      if (updateCount > 0) {
+        rows += updateCount;
+      }
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+      chunks++;
+      if (last) {
+        break;
+      }
+      if (System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+        lastReport = System.nanoTime();
+        double done = ((double) to - min) / ((double) max - min + 1);
+        println(String.format("-- @CHUNK %s: %d%% (%d rows in %d chunks)", table, (int) (done * 100), rows, chunks));
+      }
+      from = to;
+    }
+    println("-- @CHUNK " + table + ": " + rows + " rows in " + chunks + " chunks.");
+    return false;
+  }
+
+  private long[] selectBounds(Connection connection, String table, String column) throws SQLException {
+    Statement statement = connection.createStatement();
+    try {
+      ResultSet rs = statement.executeQuery("select min(" + column + "), max(" + column + ") from " + table);
+      try {
+        if (!rs.next()) {
+          return null;
+        }
+        long min = rs.getLong(1);
+        if (rs.wasNull()) {
+          return null;
+        }
+        return new long[] { min, rs.getLong(2) };
+      } finally {
+        rs.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  static String restrict(String sql, int where, String key, long from, Long to) {
+    String range = key + " >= " + from + (to == null ? "" : " and " + key + " < " + to);
+    if (where < 0) {
+      return sql + " where " + range;
+    }
+    return sql.substring(0, where) + "where (" + sql.substring(where + 5).trim() + ") and " + range;
+  }
+
+  /**
+   * @return the index of the <code>where</code> keyword of the statement (i.e. not in a sub-query or a literal), or -1.
+   */
+  static int indexOfWhere(String sql) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (depth == 0 && sql.regionMatches(true, i, "where", 0, 5)
+          && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))
+          && (i + 5 == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(i + 5)))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return a description of the first construct that prevents appending the key range to the statement, or
+   *         <code>null</code> if there is none.
+   */
+  static String findUnsupportedClause(String sql) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (Character.isJavaIdentifierStart(c) && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+        int end = i + 1;
+        while (end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {
+          end++;
+        }
+        String word = sql.substring(i, end).toUpperCase(Locale.ENGLISH);
+        if ("SELECT".equals(word)) {
+          return "a sub-query";
+        }
+        if (depth == 0 && TRAILING_CLAUSES.contains(word)) {
+          return word;
+        }
+        i = end - 1;
+      }
+    }
+    return null;
+  }
+
+  private void println(String text) {
+    if (printStream != null) {
+      printStream.println(text);
+    }
+  }
+}
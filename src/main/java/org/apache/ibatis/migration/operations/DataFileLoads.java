@@ -0,0 +1,282 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementInvocation;
+import org.apache.ibatis.migration.script.DelimitedReader;
+import org.apache.ibatis.migration.script.LoadDirective;
+import org.apache.ibatis.migration.script.LoadDirective.Format;
+
+/**
+ * Executes statements annotated with a {@link LoadDirective} by streaming the data file into the table: with
+ * <code>COPY</code> on PostgreSQL, with batched inserts otherwise. An undo directive deletes the rows by the key in the
+ * first column of the file, in batches. The rows are committed with the rest of the script.
+ */
+final class DataFileLoads implements StatementInterceptor {
+
+  static final int BATCH_SIZE = 1000;
+
+  private static final long PROGRESS_INTERVAL_NANOS = 5000000000L;
+
+  private final PrintStream printStream;
+
+  DataFileLoads(PrintStream printStream) {
+    super();
+    this.printStream = printStream;
+  }
+
+  @Override
+  public boolean intercept(StatementInvocation invocation) throws SQLException {
+    LoadDirective directive = LoadDirective.parseInline(invocation.getSql());
+    if (directive == null) {
+      return invocation.proceed();
+    }
+    Connection connection = invocation.getStatement().getConnection();
+    try {
+      Format format = directive.getFormat();
+      DelimitedReader records = new DelimitedReader(reader(directive), format.getSeparator(), format.isQuoted());
+      Long rows;
+      try {
+        String[] columns = records.readRecord();
+        if (columns == null) {
+          println("-- @LOAD " + directive.getTable() + ": " + directive.getFile().getName() + " is empty.");
+          return false;
+        }
+        for (String column : columns) {
+          if (column == null || !LoadDirective.isIdentifier(column.trim())) {
+            throw new SQLException("Invalid column name in the header of " + directive.getFile() + ": " + column);
+          }
+        }
+        if (directive.isUndo()) {
+          rows = delete(connection, directive, columns[0].trim(), records);
+        } else {
+          rows = copy(connection, directive, columns);
+          if (rows == null) {
+            rows = insert(connection, directive, columns, records);
+          }
+        }
+      } finally {
+        records.close();
+      }
+      String action = directive.isUndo() ? " rows deleted by " : " rows from ";
+      println("-- @LOAD " + directive.getTable() + ": " + rows + action + directive.getFile().getName() + ".");
+      return false;
+    } catch (IOException e) {
+      throw new SQLException("Error reading " + directive.getFile() + ".  Cause: " + e, e);
+    }
+  }
+
+  private long insert(Connection connection, LoadDirective directive, String[] columns, DelimitedReader records)
+      throws SQLException, IOException {
+    String columnList = columnList(columns);
+    int[] types = columnTypes(connection, directive.getTable(), columnList, columns.length);
+    StringBuilder sql = new StringBuilder("insert into ").append(directive.getTable()).append(" (").append(columnList)
+        .append(") values (");
+    for (int i = 0; i < columns.length; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(")");
+    PreparedStatement statement = connection.prepareStatement(sql.toString());
+    try {
+      long rows = 0L;
+      int batched = 0;
+      long lastReport = System.nanoTime();
+      String[] record;
+      long line = records.getLineNumber();
+      while ((record = records.readRecord()) != null) {
+        if (record.length != columns.length) {
+          throw new SQLException("Line " + line + " of " + directive.getFile() + " has " + record.length
+              + " value(s), expected " + columns.length + ".");
+        }
+        for (int i = 0; i < record.length; i++) {
+          if (record[i] == null) {
+            statement.setNull(i + 1, types[i]);
+          } else {
+            statement.setObject(i + 1, record[i], types[i]);
+          }
+        }
+        statement.addBatch();
+        rows++;
+        if (++batched == BATCH_SIZE) {
+          statement.executeBatch();
+          batched = 0;
+          if (System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+            lastReport = System.nanoTime();
+            println("-- @LOAD " + directive.getTable() + ": " + rows + " rows");
+          }
+        }
+        line = records.getLineNumber();
+      }
+      if (batched > 0) {
+        statement.executeBatch();
+      }
+      return rows;
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * Deletes the rows whose key (the first column of the file) is in the file, and only those.
+   */
+  private long delete(Connection connection, LoadDirective directive, String key, DelimitedReader records)
+      throws SQLException, IOException {
+    int type = columnTypes(connection, directive.getTable(), key, 1)[0];
+    PreparedStatement statement = connection
+        .prepareStatement("delete from " + directive.getTable() + " where " + key + " = ?");
+    try {
+      long rows = 0L;
+      int batched = 0;
+      String[] record;
+      long line = records.getLineNumber();
+      while ((record = records.readRecord()) != null) {
+        if (record.length == 0 || record[0] == null) {
+          throw new SQLException("Line " + line + " of " + directive.getFile() + " has no value for the key column "
+              + key + ".");
+        }
+        statement.setObject(1, record[0], type);
+        statement.addBatch();
+        if (++batched == BATCH_SIZE) {
+          rows += count(statement.executeBatch());
+          batched = 0;
+        }
+        line = records.getLineNumber();
+      }
+      if (batched > 0) {
+        rows += count(statement.executeBatch());
+      }
+      return rows;
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static long count(int[] updateCounts) {
+    long rows = 0L;
+    for (int updateCount : updateCounts) {
+      if (updateCount > 0) {
+        rows += updateCount;
+      }
+    }
+    return rows;
+  }
+
+  private int[] columnTypes(Connection connection, String table, String columnList, int count) throws SQLException {
+    Statement statement = connection.createStatement();
+    try {
+      ResultSet rs = statement.executeQuery("select " + columnList + " from " + table + " where 1 = 0");
+      try {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int[] types = new int[count];
+        for (int i = 0; i < count; i++) {
+          types[i] = metaData.getColumnType(i + 1);
+        }
+        return types;
+      } finally {
+        rs.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * Loads the file with the <code>COPY</code> API of the PostgreSQL driver, called by reflection so that the driver is
+   * not needed at compile time.
+   *
+   * @return The number of rows, or <code>null</code> if the connection is not a PostgreSQL one.
+   */
+  private Long copy(Connection connection, LoadDirective directive, String[] columns)
+      throws SQLException, IOException {
+    Class<?> pgConnectionType;
+    Object pgConnection;
+    try {
+      pgConnectionType = Class.forName("org.postgresql.PGConnection", false,
+          connection.getClass().getClassLoader());
+      if (!connection.isWrapperFor(pgConnectionType)) {
+        return null;
+      }
+      pgConnection = connection.unwrap(pgConnectionType);
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (AbstractMethodError e) {
+      // A pre JDBC 4 driver.
+      return null;
+    }
+    String sql = "COPY " + directive.getTable() + " (" + columnList(columns)
+        + ") FROM STDIN WITH (FORMAT csv, HEADER true"
+        + (directive.getFormat() == Format.TSV ? ", DELIMITER E'\\t', QUOTE E'\\b'" : "") + ")";
+    Reader reader = reader(directive);
+    try {
+      Object copyManager = pgConnectionType.getMethod("getCopyAPI").invoke(pgConnection);
+      Object rows = copyManager.getClass().getMethod("copyIn", String.class, Reader.class).invoke(copyManager, sql,
+          reader);
+      return (Long) rows;
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getTargetException();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new SQLException("Error loading " + directive.getFile() + " with COPY.  Cause: " + cause, cause);
+    } catch (Exception e) {
+      throw new SQLException("Error loading " + directive.getFile() + " with COPY.  Cause: " + e, e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static String columnList(String[] columns) {
+    StringBuilder builder = new StringBuilder();
+    for (String column : columns) {
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder.append(column.trim());
+    }
+    return builder.toString();
+  }
+
+  private static Reader reader(LoadDirective directive) throws IOException {
+    FileInputStream in = new FileInputStream(directive.getFile());
+    if (directive.getCharset().length() == 0) {
+      return new InputStreamReader(in);
+    }
+    return new InputStreamReader(in, directive.getCharset());
+  }
+
+  private void println(String text) {
+    if (printStream != null) {
+      printStream.println(text);
+    }
+  }
+}
@@ -18,7 +18,11 @@ package org.apache.ibatis.migration.operations;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,16 +33,25 @@ import org.apache.ibatis.jdbc.SqlRunner;
 import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
 import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.hook.FileMigrationHook;
+import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.io.OutputLevel;
+import org.apache.ibatis.migration.io.SinkPrintStream;
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.metrics.MetricsRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 
 public abstract class DatabaseOperation {
 
   protected void insertChangelog(Change change, ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
     SqlRunner runner = getSqlRunner(connectionProvider);
     change.setAppliedTimestamp(generateAppliedTimeStampAsString());
     try {
       runner.insert("insert into " + option.getChangelogTable() + " (ID, APPLIED_AT, DESCRIPTION) values (?,?,?)",
           change.getId(), change.getAppliedTimestamp(), change.getDescription());
+      event.commit("insert", option.getChangelogTable(), 1);
     } catch (SQLException e) {
       throw new MigrationException("Error querying last applied migration.  Cause: " + e, e);
     } finally {
@@ -46,24 +59,78 @@ public abstract class DatabaseOperation {
     }
   }
 
+  /**
+   * Inserts the changelog rows of many changes with JDBC batches of <code>batchSize</code> rows.
+   */
+  protected void insertChangelog(List<Change> changes, ConnectionProvider connectionProvider,
+      DatabaseOperationOption option, int batchSize) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
+    String appliedAt = generateAppliedTimeStampAsString();
+    Connection connection = null;
+    try {
+      connection = connectionProvider.getConnection();
+      PreparedStatement statement = connection.prepareStatement(
+          "insert into " + option.getChangelogTable() + " (ID, APPLIED_AT, DESCRIPTION) values (?,?,?)");
+      try {
+        int batched = 0;
+        for (Change change : changes) {
+          change.setAppliedTimestamp(appliedAt);
+          statement.setBigDecimal(1, change.getId());
+          statement.setString(2, appliedAt);
+          statement.setString(3, change.getDescription());
+          statement.addBatch();
+          if (++batched == batchSize) {
+            statement.executeBatch();
+            batched = 0;
+          }
+        }
+        if (batched > 0) {
+          statement.executeBatch();
+        }
+      } finally {
+        statement.close();
+      }
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+      event.commit("insert", option.getChangelogTable(), changes.size());
+    } catch (SQLException e) {
+      throw new MigrationException("Error inserting changelog rows.  Cause: " + e, e);
+    } finally {
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
   protected Change getLastAppliedChange(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
-    List<Change> changelog = getChangelog(connectionProvider, option);
-    return changelog.isEmpty() ? null : changelog.get(changelog.size() - 1);
+    final Change[] last = new Change[1];
+    readChangelog(connectionProvider, option, new ChangelogHandler() {
+      @Override
+      public boolean handle(Change change) {
+        last[0] = change;
+        return true;
+      }
+    });
+    return last[0];
   }
 
-  protected List<Change> getChangelog(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+  /**
+   * @return The ID of the last applied change or <code>null</code> if the changelog is empty. Unlike
+   *         {@link #getLastAppliedChange(ConnectionProvider, DatabaseOperationOption)}, the changelog is not read.
+   */
+  protected BigDecimal getLastAppliedId(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
     SqlRunner runner = getSqlRunner(connectionProvider);
     try {
-      List<Map<String, Object>> changelog = runner
-          .selectAll("select ID, APPLIED_AT, DESCRIPTION from " + option.getChangelogTable() + " order by ID");
-      List<Change> changes = new ArrayList<Change>();
-      for (Map<String, Object> change : changelog) {
-        String id = change.get("ID") == null ? null : change.get("ID").toString();
-        String appliedAt = change.get("APPLIED_AT") == null ? null : change.get("APPLIED_AT").toString();
-        String description = change.get("DESCRIPTION") == null ? null : change.get("DESCRIPTION").toString();
-        changes.add(new Change(new BigDecimal(id), appliedAt, description));
-      }
-      return changes;
+      List<Map<String, Object>> rows = runner.selectAll("select max(ID) as ID from " + option.getChangelogTable());
+      Object id = rows.isEmpty() ? null : rows.get(0).get("ID");
+      event.commit("read last", option.getChangelogTable(), rows.size());
+      return id == null ? null : new BigDecimal(id.toString());
     } catch (SQLException e) {
       throw new MigrationException("Error querying last applied migration.  Cause: " + e, e);
     } finally {
@@ -71,12 +138,84 @@ public abstract class DatabaseOperation {
     }
   }
 
+  protected List<Change> getChangelog(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    final List<Change> changes = new ArrayList<Change>();
+    readChangelog(connectionProvider, option, new ChangelogHandler() {
+      @Override
+      public boolean handle(Change change) {
+        changes.add(change);
+        return true;
+      }
+    });
+    return changes;
+  }
+
+  /**
+   * Streams the changelog in ID order over a forward-only result set, so that only one row is held in memory at a
+   * time (see {@link DatabaseOperationOption#setChangelogFetchSize(int)}).
+   */
+  protected void readChangelog(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      ChangelogHandler handler) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
+    int count = 0;
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet rs = null;
+    try {
+      connection = connectionProvider.getConnection();
+      statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      if (option.getChangelogFetchSize() > 0) {
+        statement.setFetchSize(option.getChangelogFetchSize());
+      }
+      rs = statement
+          .executeQuery("select ID, APPLIED_AT, DESCRIPTION from " + option.getChangelogTable() + " order by ID");
+      while (rs.next()) {
+        Object id = rs.getObject(1);
+        Change change = new Change(id instanceof BigDecimal ? (BigDecimal) id : new BigDecimal(String.valueOf(id)),
+            rs.getString(2), rs.getString(3));
+        count++;
+        if (!handler.handle(change)) {
+          break;
+        }
+      }
+      event.commit("read", option.getChangelogTable(), count);
+    } catch (SQLException e) {
+      throw new MigrationException("Error querying last applied migration.  Cause: " + e, e);
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
   protected boolean changelogExists(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
     SqlRunner runner = getSqlRunner(connectionProvider);
     try {
-      runner.selectAll("select ID, APPLIED_AT, DESCRIPTION from " + option.getChangelogTable());
+      // Only checks that the table and its columns exist; no rows are read.
+      runner.selectAll("select ID, APPLIED_AT, DESCRIPTION from " + option.getChangelogTable() + " where 1 = 0");
+      event.commit("exists", option.getChangelogTable(), 0);
       return true;
     } catch (SQLException e) {
+      event.commit("exists", option.getChangelogTable(), 0);
       return false;
     } finally {
       runner.closeConnection();
@@ -84,8 +223,21 @@ public abstract class DatabaseOperation {
   }
 
   protected SqlRunner getSqlRunner(ConnectionProvider connectionProvider) {
+    return openSqlRunner(connectionProvider);
+  }
+
+  /**
+   * SqlRunner never commits, so its connection is switched to auto commit in case a pool hands out one that a script
+   * runner left in a transaction (e.g. <code>PooledDataSource</code> rolls back such connections when they are
+   * returned).
+   */
+  static SqlRunner openSqlRunner(ConnectionProvider connectionProvider) {
     try {
-      return new SqlRunner(connectionProvider.getConnection());
+      Connection connection = connectionProvider.getConnection();
+      if (!connection.getAutoCommit()) {
+        connection.setAutoCommit(true);
+      }
+      return new SqlRunner(connection);
     } catch (SQLException e) {
       throw new MigrationException("Could not create SqlRunner. Cause: " + e, e);
     }
@@ -93,29 +245,73 @@ public abstract class DatabaseOperation {
 
   protected ScriptRunner getScriptRunner(ConnectionProvider connectionProvider, DatabaseOperationOption option,
       PrintStream printStream) {
+    return getScriptRunner(connectionProvider, option, printStream, null);
+  }
+
+  protected ScriptRunner getScriptRunner(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      PrintStream printStream, MetricsRecorder recorder) {
+    return openScriptRunner(connectionProvider, option, printStream, recorder);
+  }
+
+  DirectiveScriptRunner openScriptRunner(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      PrintStream printStream, MetricsRecorder recorder) {
     try {
-      PrintWriter outWriter = printStream == null ? null : new PrintWriter(printStream);
-      ScriptRunner scriptRunner = new ScriptRunner(connectionProvider.getConnection());
-      scriptRunner.setLogWriter(outWriter);
-      scriptRunner.setErrorLogWriter(outWriter);
-      scriptRunner.setStopOnError(option.isStopOnError());
-      scriptRunner.setThrowWarning(option.isThrowWarning());
-      scriptRunner.setEscapeProcessing(false);
-      scriptRunner.setAutoCommit(option.isAutoCommit());
-      scriptRunner.setDelimiter(option.getDelimiter());
-      scriptRunner.setFullLineDelimiter(option.isFullLineDelimiter());
-      scriptRunner.setSendFullScript(option.isSendFullScript());
-      scriptRunner.setRemoveCRs(option.isRemoveCRs());
-      return scriptRunner;
+      PrintWriter outWriter = printWriter(printStream, OutputLevel.VERBOSE);
+      PrintWriter errorWriter = printWriter(printStream, OutputLevel.QUIET);
+      List<StatementInterceptor> interceptors = new ArrayList<StatementInterceptor>(
+          option.getStatementInterceptors());
+      if (recorder != null && recorder.hasListeners()) {
+        interceptors.add(recorder);
+      }
+      List<StatementInterceptor> lastInterceptors = new ArrayList<StatementInterceptor>();
+      if (option.getThrottle() != null) {
+        lastInterceptors.add(option.getThrottle());
+      }
+      // @CHUNK and @LOAD statements are intercepted only in the scripts that contain them.
+      return new DirectiveScriptRunner(connectionProvider.getConnection(), interceptors, lastInterceptors, option,
+          outWriter, errorWriter, printStream);
     } catch (Exception e) {
       throw new MigrationException("Error creating ScriptRunner.  Cause: " + e, e);
     }
   }
 
+  protected MetricsRecorder createMetricsRecorder(DatabaseOperationOption option) {
+    return new MetricsRecorder(option);
+  }
+
   public static String generateAppliedTimeStampAsString() {
     return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.sql.Date(System.currentTimeMillis()));
   }
 
+  /**
+   * @return A writer for the lines of the given level, or <code>null</code> if the sink of the stream discards them so
+   *         that the script runner does not even format them.
+   */
+  private PrintWriter printWriter(PrintStream printStream, OutputLevel level) {
+    if (printStream == null) {
+      return null;
+    }
+    PrintStream stream = SinkPrintStream.forLevel(printStream, level);
+    if (stream instanceof SinkPrintStream && !((SinkPrintStream) stream).isEnabled()) {
+      return null;
+    }
+    return new PrintWriter(stream);
+  }
+
+  /**
+   * Waits for the asynchronous hooks of an operation that did not reach the after hook, printing their failures so
+   * that they do not hide the error of the operation.
+   */
+  protected void awaitHooks(MigrationHook hook, PrintStream printStream) {
+    if (hook instanceof FileMigrationHook) {
+      try {
+        ((FileMigrationHook) hook).awaitAfterEach();
+      } catch (MigrationException e) {
+        println(printStream, e.getMessage());
+      }
+    }
+  }
+
   protected void println(PrintStream printStream) {
     if (printStream != null) {
       printStream.println();
@@ -0,0 +1,287 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.jdbc.RuntimeSqlException;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.migration.jdbc.InterceptingConnection;
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.script.ChunkDirective;
+import org.apache.ibatis.migration.script.LoadDirective;
+
+/**
+ * A {@link ScriptRunner} that only routes statements through {@link ChunkedStatements} and {@link DataFileLoads} for
+ * the scripts that contain their directives. The lines of each script are checked for the inline comments attached by
+ * {@link ChunkDirective#toInlineComment()} and {@link LoadDirective#toInlineComment()} as the script runner reads
+ * them. Other scripts create their statements with the registered interceptors only (none by default).
+ */
+final class DirectiveScriptRunner extends ScriptRunner {
+
+  private final ScriptConnection scriptConnection;
+
+  /**
+   * @param interceptors
+   *          The interceptors that see the statements as written in the script.
+   * @param lastInterceptors
+   *          The interceptors that see the statements run by the directives (e.g. each chunk).
+   */
+  DirectiveScriptRunner(Connection connection, List<StatementInterceptor> interceptors,
+      List<StatementInterceptor> lastInterceptors, DatabaseOperationOption option, PrintWriter logWriter,
+      PrintWriter errorLogWriter, PrintStream printStream) throws SQLException {
+    this(new ScriptConnection(connection, interceptors, lastInterceptors, option, printStream), option, logWriter,
+        errorLogWriter);
+  }
+
+  private DirectiveScriptRunner(ScriptConnection scriptConnection, DatabaseOperationOption option,
+      PrintWriter logWriter, PrintWriter errorLogWriter) {
+    super(scriptConnection.proxy());
+    this.scriptConnection = scriptConnection;
+    setLogWriter(logWriter);
+    setErrorLogWriter(errorLogWriter);
+    setStopOnError(option.isStopOnError());
+    setThrowWarning(option.isThrowWarning());
+    setEscapeProcessing(false);
+    setAutoCommit(option.isAutoCommit());
+    setDelimiter(option.getDelimiter());
+    setFullLineDelimiter(option.isFullLineDelimiter());
+    setSendFullScript(option.isSendFullScript());
+    setRemoveCRs(option.isRemoveCRs());
+  }
+
+  /**
+   * Deletes the change from the changelog right before the next script is committed, on the connection of the script,
+   * so that an undo script and the removal of its changelog row are committed together. With auto commit, the row is
+   * deleted right after the script. The row is not deleted if the script drops the changelog.
+   */
+  void deleteOnCommit(BigDecimal id) {
+    scriptConnection.deleteId = id;
+  }
+
+  /**
+   * @return <code>true</code> if the last script dropped the changelog table.
+   */
+  boolean isChangelogDropped() {
+    return scriptConnection.changelogDropped;
+  }
+
+  @Override
+  public void runScript(Reader reader) {
+    scriptConnection.directives = false;
+    scriptConnection.changelogDropped = false;
+    try {
+      super.runScript(new ScanningReader(reader, scriptConnection));
+      // The script runner does not commit with auto commit.
+      scriptConnection.deleteChange();
+    } catch (SQLException e) {
+      throw new RuntimeSqlException("Error deleting undone migration from the changelog.  Cause: " + e, e);
+    } finally {
+      scriptConnection.deleteId = null;
+    }
+  }
+
+  /**
+   * Restores the auto commit mode the connection had, so that a pool does not hand it out in a transaction.
+   */
+  @Override
+  public void closeConnection() {
+    Connection connection = scriptConnection.connection;
+    try {
+      if (connection.getAutoCommit() != scriptConnection.originalAutoCommit) {
+        if (!connection.getAutoCommit()) {
+          // The scripts are committed or rolled back already; never commit leftovers by switching modes.
+          connection.rollback();
+        }
+        connection.setAutoCommit(scriptConnection.originalAutoCommit);
+      }
+    } catch (SQLException e) {
+      // ignore
+    }
+    super.closeConnection();
+  }
+
+  /**
+   * The connection of the script runner. Statements are created with the directive interceptors once the script has
+   * shown a directive, and the pending changelog delete runs before the script runner commits. The commits of the
+   * directives themselves (e.g. each chunk) go to the underlying connection and do not run it.
+   */
+  private static final class ScriptConnection implements InvocationHandler {
+
+    private final Connection connection;
+
+    private final boolean originalAutoCommit;
+
+    private final Connection plainConnection;
+
+    private final List<StatementInterceptor> directiveInterceptors;
+
+    private final String changelogTable;
+
+    private final Pattern dropChangelog;
+
+    private Connection directiveConnection;
+
+    private boolean directives;
+
+    private BigDecimal deleteId;
+
+    private boolean changelogDropped;
+
+    ScriptConnection(Connection connection, List<StatementInterceptor> interceptors,
+        List<StatementInterceptor> lastInterceptors, DatabaseOperationOption option, PrintStream printStream)
+        throws SQLException {
+      super();
+      this.connection = connection;
+      this.originalAutoCommit = connection.getAutoCommit();
+      List<StatementInterceptor> plain = new ArrayList<StatementInterceptor>(interceptors);
+      plain.addAll(lastInterceptors);
+      this.plainConnection = InterceptingConnection.wrap(connection, plain);
+      this.directiveInterceptors = new ArrayList<StatementInterceptor>(interceptors);
+      this.directiveInterceptors.add(new ChunkedStatements(printStream));
+      this.directiveInterceptors.add(new DataFileLoads(printStream));
+      this.directiveInterceptors.addAll(lastInterceptors);
+      this.changelogTable = option.getChangelogTable();
+      this.dropChangelog = Pattern.compile("\\bdrop\\s+table\\s+(?:if\\s+exists\\s+)?(?:[\\w\"]+\\.)?\"?"
+          + Pattern.quote(changelogTable) + "\"?(?:[\\s;]|$)", Pattern.CASE_INSENSITIVE);
+    }
+
+    Connection proxy() {
+      ClassLoader cl = ScriptConnection.class.getClassLoader();
+      return (Connection) Proxy.newProxyInstance(cl, new Class<?>[] { Connection.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Connection target = connection;
+      if ("createStatement".equals(method.getName())) {
+        target = directives ? directiveConnection() : plainConnection;
+      } else if ("commit".equals(method.getName())) {
+        deleteChange();
+      }
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+    }
+
+    void scanLine(String line) {
+      if (!directives && (ChunkDirective.startsWithInline(line) || LoadDirective.startsWithInline(line))) {
+        directives = true;
+      }
+      if (deleteId != null && !changelogDropped && dropChangelog.matcher(line).find()) {
+        changelogDropped = true;
+      }
+    }
+
+    void deleteChange() throws SQLException {
+      if (deleteId == null || changelogDropped) {
+        deleteId = null;
+        return;
+      }
+      FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
+      PreparedStatement statement = connection.prepareStatement("delete from " + changelogTable + " where ID = ?");
+      try {
+        statement.setBigDecimal(1, deleteId);
+        statement.executeUpdate();
+        deleteId = null;
+        event.commit("delete", changelogTable, 1);
+      } finally {
+        statement.close();
+      }
+    }
+
+    private Connection directiveConnection() {
+      if (directiveConnection == null) {
+        // Same connection, so the statements run in the same session and transaction.
+        directiveConnection = InterceptingConnection.wrap(connection, directiveInterceptors);
+      }
+      return directiveConnection;
+    }
+  }
+
+  /**
+   * Hands each line of the script to the connection as the script runner reads it, so that the script is not held in
+   * memory.
+   */
+  private static final class ScanningReader extends FilterReader {
+
+    private final ScriptConnection scriptConnection;
+
+    private final StringBuilder line = new StringBuilder();
+
+    ScanningReader(Reader in, ScriptConnection scriptConnection) {
+      super(in);
+      this.scriptConnection = scriptConnection;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c == -1) {
+        endLine();
+      } else {
+        scan((char) c);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      int n = super.read(cbuf, off, len);
+      if (n == -1) {
+        endLine();
+      }
+      for (int i = 0; i < n; i++) {
+        scan(cbuf[off + i]);
+      }
+      return n;
+    }
+
+    private void scan(char c) {
+      if (c == '\n' || c == '\r') {
+        endLine();
+      } else {
+        line.append(c);
+      }
+    }
+
+    private void endLine() {
+      if (line.length() > 0) {
+        scriptConnection.scanLine(line.toString());
+        line.setLength(0);
+      }
+    }
+  }
+}
@@ -15,21 +15,26 @@
  */
 package org.apache.ibatis.migration.operations;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.math.BigDecimal;
 import java.sql.SQLException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.jdbc.SqlRunner;
 import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationCatalog;
 import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
 import org.apache.ibatis.migration.hook.HookContext;
 import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.metrics.MetricsRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.Util;
 
@@ -52,79 +57,134 @@ public final class DownOperation extends DatabaseOperation {
 
   public DownOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream, MigrationHook hook) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
     try {
       if (option == null) {
         option = new DatabaseOperationOption();
       }
-      Change lastChange = getLastAppliedChange(connectionProvider, option);
-      if (lastChange == null) {
+      List<Change> targets = getTargets(connectionProvider, migrationsLoader, option);
+      if (targets == null) {
         println(printStream, "Changelog exist, but no migration found.");
       } else {
-        List<Change> migrations = migrationsLoader.getMigrations();
-        Collections.sort(migrations);
-        Collections.reverse(migrations);
-        int stepCount = 0;
-        ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream);
-
-        Map<String, Object> hookBindings = new HashMap<String, Object>();
-
-        try {
-          for (Change change : migrations) {
-            if (change.getId().equals(lastChange.getId())) {
-              if (stepCount == 0 && hook != null) {
-                hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
-                hook.before(hookBindings);
-              }
-              if (hook != null) {
-                hookBindings.put(MigrationHook.HOOK_CONTEXT,
-                    new HookContext(connectionProvider, runner, change.clone()));
-                hook.beforeEach(hookBindings);
-              }
-              println(printStream, Util.horizontalLine("Undoing: " + change.getFilename(), 80));
-              runner.runScript(migrationsLoader.getScriptReader(change, true));
-              if (changelogExists(connectionProvider, option)) {
-                deleteChange(connectionProvider, change, option);
-              } else {
-                println(printStream,
-                    "Changelog doesn't exist. No further migrations will be undone (normal for the last migration).");
-                stepCount = steps;
-              }
-              println(printStream);
-              if (hook != null) {
-                hookBindings.put(MigrationHook.HOOK_CONTEXT,
-                    new HookContext(connectionProvider, runner, change.clone()));
-                hook.afterEach(hookBindings);
-              }
-              stepCount++;
-              if (steps == null || stepCount >= steps) {
-                break;
-              }
-              lastChange = getLastAppliedChange(connectionProvider, option);
-            }
-          }
-          if (stepCount > 0 && hook != null) {
-            hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
-            hook.after(hookBindings);
-          }
-        } finally {
-          runner.closeConnection();
-        }
+        undo(connectionProvider, migrationsLoader, option, printStream, hook, targets);
       }
+      succeeded = true;
       return this;
     } catch (Throwable e) {
-      while (e instanceof MigrationException) {
+      while (e instanceof MigrationException && e.getCause() != null) {
         e = e.getCause();
       }
       throw new MigrationException("Error undoing last migration.  Cause: " + e, e);
+    } finally {
+      event.commit("down", succeeded);
+    }
+  }
+
+  /**
+   * Reads the changelog once and returns the migrations to undo, latest first. Stops at the first applied migration
+   * that has no script.
+   *
+   * @return <code>null</code> if no migration has been applied.
+   */
+  private List<Change> getTargets(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option) {
+    final int limit = steps == null ? 1 : steps;
+    final LinkedList<BigDecimal> lastApplied = new LinkedList<BigDecimal>();
+    readChangelog(connectionProvider, option, new ChangelogHandler() {
+      @Override
+      public boolean handle(Change change) {
+        lastApplied.addFirst(change.getId());
+        if (lastApplied.size() > limit) {
+          lastApplied.removeLast();
+        }
+        return true;
+      }
+    });
+    if (lastApplied.isEmpty()) {
+      return null;
+    }
+    MigrationCatalog catalog = MigrationCatalog.of(migrationsLoader);
+    List<Change> targets = new ArrayList<Change>(lastApplied.size());
+    for (BigDecimal id : lastApplied) {
+      int index = catalog.indexOf(id);
+      if (index < 0) {
+        break;
+      }
+      targets.add(catalog.getChange(index));
+    }
+    return targets;
+  }
+
+  private void undo(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook hook, List<Change> targets)
+      throws IOException {
+    MetricsRecorder recorder = createMetricsRecorder(option);
+    DirectiveScriptRunner runner = openScriptRunner(connectionProvider, option, printStream, recorder);
+    Map<String, Object> hookBindings = new HashMap<String, Object>();
+    boolean first = true;
+    boolean changelogExists = true;
+    try {
+      for (Change change : targets) {
+        if (first && hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
+          hook.before(hookBindings);
+        }
+        if (hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT,
+              new HookContext(connectionProvider, runner, change.clone(), option));
+          hook.beforeEach(hookBindings);
+        }
+        println(printStream, Util.horizontalLine("Undoing: " + change.getFilename(), 80));
+        recorder.startChange(change, true);
+        // The changelog row is deleted in the transaction of the undo script (see DirectiveScriptRunner).
+        runner.deleteOnCommit(change.getId());
+        recorder.runScript(runner, recorder.readScript(migrationsLoader, change, true));
+        // getTargets() has just read the changelog, so it is checked again only after a script that dropped it.
+        if (runner.isChangelogDropped()) {
+          changelogExists = changelogExists(connectionProvider, option);
+          if (changelogExists) {
+            recorder.startChangelog();
+            deleteChange(connectionProvider, change, option);
+          }
+        }
+        first = false;
+        recorder.finishChange();
+        if (!changelogExists) {
+          println(printStream,
+              "Changelog doesn't exist. No further migrations will be undone (normal for the last migration).");
+        }
+        println(printStream);
+        if (hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT,
+              new HookContext(connectionProvider, runner, change.clone(), option));
+          hook.afterEach(hookBindings);
+        }
+        if (!changelogExists) {
+          break;
+        }
+      }
+      if (!first && hook != null) {
+        hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
+        hook.after(hookBindings);
+      }
+    } finally {
+      awaitHooks(hook, printStream);
+      runner.closeConnection();
     }
   }
 
-  protected void deleteChange(ConnectionProvider connectionProvider, Change change, DatabaseOperationOption option) {
+  /**
+   * Deletes the row of a change whose undo script looked like it dropped the changelog but did not.
+   */
+  private void deleteChange(ConnectionProvider connectionProvider, Change change, DatabaseOperationOption option) {
+    FlightRecorder.Event event = FlightRecorder.CHANGELOG.begin();
     SqlRunner runner = getSqlRunner(connectionProvider);
     try {
       runner.delete("delete from " + option.getChangelogTable() + " where ID = ?", change.getId());
+      event.commit("delete", option.getChangelogTable(), 1);
     } catch (SQLException e) {
-      throw new MigrationException("Error querying last applied migration.  Cause: " + e, e);
+      throw new MigrationException("Error deleting undone migration from the changelog.  Cause: " + e, e);
     } finally {
       runner.closeConnection();
     }
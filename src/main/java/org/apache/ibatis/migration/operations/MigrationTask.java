@@ -0,0 +1,254 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.MigrationCancelledException;
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementInvocation;
+import org.apache.ibatis.migration.metrics.ChangeMetrics;
+import org.apache.ibatis.migration.metrics.MigrationListener;
+import org.apache.ibatis.migration.metrics.StatementMetrics;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * A handle to an operation running asynchronously, returned by {@link AsyncOperations}.<br>
+ * Cancellation is cooperative: a running operation stops before its next statement (the current script is rolled back
+ * unless auto commit is enabled and, for up, onabort.sql is executed). The task is done only when the operation has
+ * actually stopped.
+ */
+public abstract class MigrationTask<T> implements Runnable {
+
+  private enum State {
+    NEW, RUNNING, COMPLETED, FAILED, CANCELLED
+  }
+
+  private final DatabaseOperationOption option;
+
+  private final Interceptor interceptor = new Interceptor();
+
+  private final List<MigrationListener> listeners = new CopyOnWriteArrayList<MigrationListener>();
+
+  private final List<MigrationTaskCallback<T>> callbacks = new CopyOnWriteArrayList<MigrationTaskCallback<T>>();
+
+  private volatile boolean cancelRequested;
+
+  private final AtomicBoolean cancelSignalled = new AtomicBoolean();
+
+  private State state = State.NEW;
+
+  private T result;
+
+  private Throwable failure;
+
+  protected MigrationTask(DatabaseOperationOption option) {
+    super();
+    this.option = new DatabaseOperationOption(option == null ? new DatabaseOperationOption() : option);
+    this.option.addStatementInterceptor(interceptor);
+  }
+
+  /**
+   * Runs the operation with a copy of the option that publishes progress to this task.
+   */
+  protected abstract T execute(DatabaseOperationOption option);
+
+  @Override
+  public void run() {
+    synchronized (this) {
+      if (state != State.NEW) {
+        return;
+      }
+      state = State.RUNNING;
+    }
+    try {
+      DatabaseOperationOption effectiveOption = option;
+      if (!listeners.isEmpty()) {
+        // Statements are measured only when someone is listening.
+        effectiveOption = new DatabaseOperationOption(option);
+        effectiveOption.addMigrationListener(interceptor);
+      }
+      T value = execute(effectiveOption);
+      finish(cancelRequested ? State.CANCELLED : State.COMPLETED, value, null);
+    } catch (Throwable e) {
+      finish(cancelRequested ? State.CANCELLED : State.FAILED, null, e);
+    }
+  }
+
+  /**
+   * Subscribes to the progress events. Listeners must be added before the task starts running.
+   */
+  public void addListener(MigrationListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(MigrationListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Registers a callback that is called when the task is done, immediately if it is already done.
+   */
+  public void whenDone(MigrationTaskCallback<T> callback) {
+    synchronized (this) {
+      if (!isDone()) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+    notify(callback);
+  }
+
+  /**
+   * Requests cancellation. A task that has not started yet will never run.
+   *
+   * @return <code>false</code> if the task is already done.
+   */
+  public boolean cancel() {
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+      cancelRequested = true;
+      if (state != State.NEW) {
+        return true;
+      }
+    }
+    finish(State.CANCELLED, null, null);
+    return true;
+  }
+
+  public synchronized boolean isCancelled() {
+    return state == State.CANCELLED;
+  }
+
+  public synchronized boolean isDone() {
+    return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+  }
+
+  /**
+   * Waits until the operation has stopped.
+   *
+   * @throws CancellationException
+   *           If the task has been cancelled.
+   * @throws ExecutionException
+   *           If the operation failed.
+   */
+  public synchronized T get() throws InterruptedException, ExecutionException {
+    while (!isDone()) {
+      wait();
+    }
+    return report();
+  }
+
+  public synchronized T get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!isDone()) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return report();
+  }
+
+  private T report() throws ExecutionException {
+    if (state == State.CANCELLED) {
+      CancellationException exception = new CancellationException("Migration cancelled.");
+      exception.initCause(failure);
+      throw exception;
+    }
+    if (state == State.FAILED) {
+      throw new ExecutionException(failure);
+    }
+    return result;
+  }
+
+  private void finish(State finalState, T value, Throwable cause) {
+    synchronized (this) {
+      state = finalState;
+      result = value;
+      failure = cause;
+      notifyAll();
+    }
+    for (MigrationTaskCallback<T> callback : callbacks) {
+      notify(callback);
+    }
+    callbacks.clear();
+  }
+
+  private void notify(MigrationTaskCallback<T> callback) {
+    State finalState;
+    synchronized (this) {
+      finalState = state;
+    }
+    if (finalState == State.COMPLETED) {
+      callback.completed(result);
+    } else if (finalState == State.CANCELLED) {
+      CancellationException exception = new CancellationException("Migration cancelled.");
+      exception.initCause(failure);
+      callback.failed(exception);
+    } else {
+      callback.failed(failure);
+    }
+  }
+
+  private void checkCancelled() {
+    // Signalled only once so that onabort.sql can still be executed.
+    if (cancelRequested && cancelSignalled.compareAndSet(false, true)) {
+      throw new MigrationCancelledException("Migration cancelled.");
+    }
+  }
+
+  private class Interceptor implements StatementInterceptor, MigrationListener {
+    @Override
+    public boolean intercept(StatementInvocation invocation) throws SQLException {
+      checkCancelled();
+      return invocation.proceed();
+    }
+
+    @Override
+    public void changeStarted(Change change, boolean undo) {
+      for (MigrationListener listener : listeners) {
+        listener.changeStarted(change, undo);
+      }
+    }
+
+    @Override
+    public void statementExecuted(StatementMetrics statement) {
+      for (MigrationListener listener : listeners) {
+        listener.statementExecuted(statement);
+      }
+    }
+
+    @Override
+    public void changeFinished(ChangeMetrics metrics) {
+      for (MigrationListener listener : listeners) {
+        listener.changeFinished(metrics);
+      }
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+/**
+ * Notified once when a {@link MigrationTask} is done. Called on the thread that ran the task (or the thread that
+ * cancelled it before it started).
+ */
+public interface MigrationTaskCallback<T> {
+
+  void completed(T result);
+
+  /**
+   * @param cause
+   *          The exception thrown by the operation, or a {@link java.util.concurrent.CancellationException} if the
+   *          task has been cancelled.
+   */
+  void failed(Throwable cause);
+}
@@ -17,11 +17,12 @@ package org.apache.ibatis.migration.operations;
 
 import java.io.PrintStream;
 import java.io.Reader;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.migration.Change;
@@ -30,6 +31,8 @@ import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
 import org.apache.ibatis.migration.hook.HookContext;
 import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.metrics.MetricsRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.Util;
 
@@ -42,6 +45,8 @@ public final class PendingOperation extends DatabaseOperation {
 
   public PendingOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream, MigrationHook hook) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
     try {
       if (option == null) {
         option = new DatabaseOperationOption();
@@ -53,33 +58,40 @@ public final class PendingOperation extends DatabaseOperation {
       int stepCount = 0;
       Map<String, Object> hookBindings = new HashMap<String, Object>();
       println(printStream, "WARNING: Running pending migrations out of order can create unexpected results.");
-      ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream);
+      MetricsRecorder recorder = createMetricsRecorder(option);
+      ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream, recorder);
       Reader scriptReader = null;
       try {
         for (Change change : pending) {
           if (stepCount == 0 && hook != null) {
-            hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
+            hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
             hook.before(hookBindings);
           }
           if (hook != null) {
-            hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, change.clone()));
+            hookBindings.put(MigrationHook.HOOK_CONTEXT,
+                new HookContext(connectionProvider, runner, change.clone(), option));
             hook.beforeEach(hookBindings);
           }
           println(printStream, Util.horizontalLine("Applying: " + change.getFilename(), 80));
-          scriptReader = migrationsLoader.getScriptReader(change, false);
-          runner.runScript(scriptReader);
+          recorder.startChange(change, false);
+          scriptReader = recorder.readScript(migrationsLoader, change, false);
+          recorder.runScript(runner, scriptReader);
+          recorder.startChangelog();
           insertChangelog(change, connectionProvider, option);
+          recorder.finishChange();
           println(printStream);
           if (hook != null) {
-            hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, change.clone()));
+            hookBindings.put(MigrationHook.HOOK_CONTEXT,
+                new HookContext(connectionProvider, runner, change.clone(), option));
             hook.afterEach(hookBindings);
           }
           stepCount++;
         }
         if (stepCount > 0 && hook != null) {
-          hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
+          hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
           hook.after(hookBindings);
         }
+        succeeded = true;
         return this;
       } catch (Exception e) {
         throw new MigrationException("Error executing command.  Cause: " + e, e);
@@ -87,28 +99,32 @@ public final class PendingOperation extends DatabaseOperation {
         if (scriptReader != null) {
           scriptReader.close();
         }
+        awaitHooks(hook, printStream);
         runner.closeConnection();
       }
     } catch (Throwable e) {
-      while (e instanceof MigrationException) {
+      while (e instanceof MigrationException && e.getCause() != null) {
         e = e.getCause();
       }
       throw new MigrationException("Error executing command.  Cause: " + e, e);
+    } finally {
+      event.commit("pending", succeeded);
     }
   }
 
   private List<Change> getPendingChanges(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option) {
-    List<Change> pending = new ArrayList<Change>();
-    List<Change> migrations = migrationsLoader.getMigrations();
-    List<Change> changelog = getChangelog(connectionProvider, option);
-    for (Change change : migrations) {
-      int index = changelog.indexOf(change);
-      if (index < 0) {
-        pending.add(change);
-      }
+    final Map<BigDecimal, Change> pending = new TreeMap<BigDecimal, Change>();
+    for (Change change : migrationsLoader.getMigrations()) {
+      pending.put(change.getId(), change);
     }
-    Collections.sort(pending);
-    return pending;
+    readChangelog(connectionProvider, option, new ChangelogHandler() {
+      @Override
+      public boolean handle(Change change) {
+        pending.remove(change.getId());
+        return true;
+      }
+    });
+    return new ArrayList<Change>(pending.values());
   }
 }
@@ -0,0 +1,264 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.script.ParsedScript;
+import org.apache.ibatis.migration.script.ScriptCache;
+import org.apache.ibatis.migration.script.StatementSplitter;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Lists the migrations that {@link UpOperation}, {@link DownOperation}, {@link PendingOperation} or
+ * {@link VersionOperation} would run, without executing anything.<br>
+ * The changelog is read once and the scripts are only read to count their statements.
+ */
+public final class PlanOperation extends DatabaseOperation {
+
+  public enum Type {
+    UP, DOWN, PENDING, VERSION
+  }
+
+  private final Type type;
+
+  private final Integer steps;
+
+  private final BigDecimal version;
+
+  private final List<PlannedChange> plannedChanges = new ArrayList<PlannedChange>();
+
+  /**
+   * @param type
+   *          {@link Type#UP}, {@link Type#DOWN} or {@link Type#PENDING}.
+   * @param steps
+   *          Same as the steps of the corresponding operation. Ignored for {@link Type#PENDING}.
+   */
+  public PlanOperation(Type type, Integer steps) {
+    super();
+    if (type == null || type == Type.VERSION) {
+      throw new IllegalArgumentException("Use PlanOperation(BigDecimal) to plan a version operation.");
+    }
+    if (steps != null && steps.intValue() < 1) {
+      throw new IllegalArgumentException("step must be positive number or null.");
+    }
+    this.type = type;
+    this.steps = steps;
+    this.version = null;
+  }
+
+  public PlanOperation(BigDecimal version) {
+    super();
+    if (version == null) {
+      throw new IllegalArgumentException("The version must not be null.");
+    }
+    this.type = Type.VERSION;
+    this.steps = null;
+    this.version = version;
+  }
+
+  public PlanOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
+      }
+      boolean changelogExists = changelogExists(connectionProvider, option);
+      List<Change> changelog = changelogExists ? getChangelog(connectionProvider, option)
+          : Collections.<Change> emptyList();
+      List<Change> migrations = migrationsLoader.getMigrations();
+      Collections.sort(migrations);
+
+      StatementSplitter splitter = new StatementSplitter(option);
+      plannedChanges.clear();
+      List<Change> changes;
+      boolean undo = false;
+      switch (type) {
+        case UP:
+          if (changelogExists) {
+            changes = planUp(migrations, changelog, null, steps);
+          } else {
+            changes = planUpWithBaseline(migrationsLoader, splitter, option.getScriptCache(), migrations);
+          }
+          break;
+        case DOWN:
+          changes = planDown(migrations, changelog, null);
+          undo = true;
+          break;
+        case PENDING:
+          if (!changelogExists) {
+            throw new MigrationException("Change log doesn't exist, no migrations applied.  Try running 'up' instead.");
+          }
+          changes = planPending(migrations, changelog);
+          break;
+        default:
+          if (!migrations.contains(new Change(version))) {
+            throw new MigrationException("A migration for the specified version number does not exist.");
+          }
+          Change last = changelog.isEmpty() ? null : changelog.get(changelog.size() - 1);
+          if (last == null || version.compareTo(last.getId()) > 0) {
+            changes = planUp(migrations, changelog, version, steps);
+          } else {
+            changes = planDown(migrations, changelog, version);
+            undo = true;
+          }
+          break;
+      }
+
+      for (Change change : changes) {
+        plannedChanges.add(plan(migrationsLoader, splitter, option.getScriptCache(), change, undo));
+      }
+      print(printStream);
+      succeeded = true;
+      return this;
+    } finally {
+      event.commit("plan", succeeded);
+    }
+  }
+
+  public List<PlannedChange> getPlannedChanges() {
+    return Collections.unmodifiableList(plannedChanges);
+  }
+
+  /**
+   * Same as {@link UpOperation} on a database without changelog: the baseline, if any, is applied in place of the
+   * migrations it includes unless they are more than the steps.
+   */
+  private List<Change> planUpWithBaseline(MigrationLoader migrationsLoader, StatementSplitter splitter,
+      ScriptCache scriptCache, List<Change> migrations) {
+    List<Change> included = Collections.emptyList();
+    try {
+      String script = BaselineOperation.readScript(migrationsLoader);
+      if (script != null) {
+        included = BaselineOperation.readEntries(script);
+        if (steps != null && included.size() > steps) {
+          included = Collections.emptyList();
+        } else {
+          Change last = included.get(included.size() - 1);
+          Change baseline = new Change(last.getId(), null, "baseline of " + included.size() + " migration(s)");
+          baseline.setFilename("baseline.sql");
+          ParsedScript parsed = scriptCache == null ? splitter.parse(script) : scriptCache.parse(script, splitter);
+          plannedChanges.add(new PlannedChange(baseline, false, parsed.getStatements().size(), script.length()));
+        }
+      }
+    } catch (IOException e) {
+      throw new MigrationException("Error reading baseline.sql.  Cause: " + e, e);
+    }
+    return planUp(migrations, included, null, steps == null ? null : steps - included.size());
+  }
+
+  private List<Change> planUp(List<Change> migrations, List<Change> changelog, BigDecimal target, Integer steps) {
+    Change last = changelog.isEmpty() ? null : changelog.get(changelog.size() - 1);
+    List<Change> changes = new ArrayList<Change>();
+    for (Change change : migrations) {
+      if (last == null || change.getId().compareTo(last.getId()) > 0) {
+        if (target != null && change.getId().compareTo(target) > 0
+            || steps != null && changes.size() >= steps) {
+          break;
+        }
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  private List<Change> planDown(List<Change> migrations, List<Change> changelog, BigDecimal target) {
+    // Same walk as DownOperation: undo the last applied change as long as a script exists for it.
+    List<Change> changes = new ArrayList<Change>();
+    int last = changelog.size() - 1;
+    for (int i = migrations.size() - 1; i >= 0 && last >= 0; i--) {
+      Change change = migrations.get(i);
+      BigDecimal lastId = changelog.get(last).getId();
+      if (target != null && lastId.equals(target)) {
+        break;
+      }
+      if (change.getId().equals(lastId)) {
+        changes.add(change);
+        if (target == null && (steps == null || changes.size() >= steps)) {
+          break;
+        }
+        last--;
+      }
+    }
+    return changes;
+  }
+
+  private List<Change> planPending(List<Change> migrations, List<Change> changelog) {
+    Set<BigDecimal> applied = new HashSet<BigDecimal>();
+    for (Change change : changelog) {
+      applied.add(change.getId());
+    }
+    List<Change> changes = new ArrayList<Change>();
+    for (Change change : migrations) {
+      if (!applied.contains(change.getId())) {
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  private PlannedChange plan(MigrationLoader migrationsLoader, StatementSplitter splitter, ScriptCache scriptCache,
+      Change change, boolean undo) {
+    Reader reader = migrationsLoader.getScriptReader(change, undo);
+    try {
+      String script = Util.readFully(reader);
+      ParsedScript parsed = scriptCache == null ? splitter.parse(script) : scriptCache.parse(script, splitter);
+      return new PlannedChange(change, undo, parsed.getStatements().size(), script.length());
+    } catch (IOException e) {
+      throw new MigrationException("Error reading " + change.getFilename() + ".  Cause: " + e, e);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private void print(PrintStream printStream) {
+    println(printStream, "ID             Action Statements Characters Description");
+    println(printStream, Util.horizontalLine("", 80));
+    int statementCount = 0;
+    long length = 0L;
+    for (PlannedChange planned : plannedChanges) {
+      Change change = planned.getChange();
+      println(printStream, String.format("%-14s %-6s %10d %10d %s", change.getId(), planned.isUndo() ? "undo" : "up",
+          planned.getStatementCount(), planned.getScriptLength(), change.getDescription()));
+      statementCount += planned.getStatementCount();
+      length += planned.getScriptLength();
+    }
+    println(printStream);
+    println(printStream, String.format("%d migration(s), %d statement(s), %d character(s).", plannedChanges.size(),
+        statementCount, length));
+    println(printStream);
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import org.apache.ibatis.migration.Change;
+
+/**
+ * A migration that an operation would apply or undo, as computed by {@link PlanOperation}.
+ */
+public class PlannedChange {
+  private final Change change;
+
+  private final boolean undo;
+
+  private final int statementCount;
+
+  private final int scriptLength;
+
+  public PlannedChange(Change change, boolean undo, int statementCount, int scriptLength) {
+    super();
+    this.change = change;
+    this.undo = undo;
+    this.statementCount = statementCount;
+    this.scriptLength = scriptLength;
+  }
+
+  public Change getChange() {
+    return change;
+  }
+
+  public boolean isUndo() {
+    return undo;
+  }
+
+  public int getStatementCount() {
+    return statementCount;
+  }
+
+  /**
+   * @return The number of characters of the script after variable substitution.
+   */
+  public int getScriptLength() {
+    return scriptLength;
+  }
+}
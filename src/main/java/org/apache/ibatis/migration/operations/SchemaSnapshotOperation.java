@@ -0,0 +1,270 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Migrates a new database by restoring a snapshot taken after an earlier run of the same migrations, so that test
+ * suites creating a fresh in-memory database per test class do not replay every script each time.<br>
+ * Snapshots are written to the given directory and keyed by a hash of the database product, the changelog table, the
+ * baseline script and the do section of each migration after variable substitution (the content of data files), so
+ * that any change to the scripts or to the variables takes a new snapshot.<br>
+ * HSQLDB and H2 are supported (with their <code>SCRIPT</code> statement); on other databases, or if the changelog
+ * already exists, the migrations are applied by {@link UpOperation}.
+ */
+public final class SchemaSnapshotOperation extends DatabaseOperation {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private enum Dialect {
+    HSQLDB, H2
+  }
+
+  private final File directory;
+
+  private String key;
+
+  private boolean restored;
+
+  public SchemaSnapshotOperation(File directory) {
+    super();
+    this.directory = directory;
+  }
+
+  public SchemaSnapshotOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    if (option == null) {
+      option = new DatabaseOperationOption();
+    }
+    try {
+      Dialect dialect = dialect(connectionProvider);
+      if (dialect == null || changelogExists(connectionProvider, option)) {
+        new UpOperation().operate(connectionProvider, migrationsLoader, option, printStream);
+        succeeded = true;
+        return this;
+      }
+      key = computeKey(migrationsLoader, option, dialect);
+      File snapshot = new File(directory, key + ".script");
+      if (snapshot.isFile()) {
+        restore(connectionProvider, dialect, snapshot);
+        restored = true;
+        println(printStream, "Restored the schema from snapshot " + snapshot.getName() + ".");
+      } else {
+        new UpOperation().operate(connectionProvider, migrationsLoader, option, printStream);
+        capture(connectionProvider, dialect, snapshot);
+        println(printStream, "Saved the schema to snapshot " + snapshot.getName() + ".");
+      }
+      succeeded = true;
+      return this;
+    } catch (SQLException e) {
+      throw new MigrationException("Error restoring schema snapshot.  Cause: " + e, e);
+    } catch (IOException e) {
+      throw new MigrationException("Error restoring schema snapshot.  Cause: " + e, e);
+    } finally {
+      event.commit("snapshot", succeeded);
+    }
+  }
+
+  /**
+   * @return The key of the snapshot, or <code>null</code> if snapshots were not used.
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return <code>true</code> if the schema was restored from a snapshot instead of being migrated.
+   */
+  public boolean isRestored() {
+    return restored;
+  }
+
+  private Dialect dialect(ConnectionProvider connectionProvider) throws SQLException {
+    Connection connection = connectionProvider.getConnection();
+    try {
+      String product = connection.getMetaData().getDatabaseProductName();
+      if (product.startsWith("HSQL")) {
+        return Dialect.HSQLDB;
+      } else if (product.equals("H2")) {
+        return Dialect.H2;
+      }
+      return null;
+    } finally {
+      connection.close();
+    }
+  }
+
+  private String computeKey(MigrationLoader migrationsLoader, DatabaseOperationOption option, Dialect dialect)
+      throws IOException {
+    StringBuilder digests = new StringBuilder();
+    digests.append(FORMAT_VERSION).append(' ').append(dialect).append(' ').append(option.getChangelogTable())
+        .append('\n');
+    // The baseline replaces the first migrations on a new database, so it may differ from their scripts.
+    String baseline = BaselineOperation.readScript(migrationsLoader);
+    if (baseline != null) {
+      digests.append("baseline ").append(Util.sha256(baseline.getBytes(UTF_8))).append('\n');
+    }
+    for (Change change : migrationsLoader.getMigrations()) {
+      if (migrationsLoader instanceof FileMigrationLoader
+          && ((FileMigrationLoader) migrationsLoader).isDataFile(change.getFilename())) {
+        // The generated script only refers to the file.
+        File file = Util.file(((FileMigrationLoader) migrationsLoader).getScriptsDir(), change.getFilename());
+        digests.append(change.getId()).append(' ').append(Util.sha256(Util.readBytes(file))).append('\n');
+        continue;
+      }
+      Reader reader = migrationsLoader.getScriptReader(change, false);
+      try {
+        String script = Util.readFully(reader);
+        digests.append(change.getId()).append(' ').append(Util.sha256(script.getBytes(UTF_8))).append('\n');
+      } finally {
+        reader.close();
+      }
+    }
+    return Util.sha256(digests.toString().getBytes(UTF_8));
+  }
+
+  private void capture(ConnectionProvider connectionProvider, Dialect dialect, File snapshot) throws SQLException {
+    if (!directory.isDirectory()) {
+      directory.mkdirs();
+    }
+    // Written under a unique name and renamed, so that concurrent test runs never read a partial snapshot.
+    File tmp = new File(directory, key + "." + System.nanoTime() + ".tmp");
+    String path = tmp.getAbsolutePath().replace("'", "''");
+    Connection connection = connectionProvider.getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      try {
+        statement.execute(dialect == Dialect.H2 ? "SCRIPT TO '" + path + "'" : "SCRIPT '" + path + "'");
+      } finally {
+        statement.close();
+      }
+    } finally {
+      connection.close();
+    }
+    if (snapshot.exists() || !tmp.renameTo(snapshot)) {
+      tmp.delete();
+    }
+  }
+
+  private void restore(ConnectionProvider connectionProvider, Dialect dialect, File snapshot)
+      throws SQLException, IOException {
+    Connection connection = connectionProvider.getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      try {
+        if (dialect == Dialect.H2) {
+          statement.execute("RUNSCRIPT FROM '" + snapshot.getAbsolutePath().replace("'", "''") + "'");
+        } else {
+          replayHsqldbScript(statement, snapshot);
+        }
+      } finally {
+        statement.close();
+      }
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+    } finally {
+      connection.close();
+    }
+  }
+
+  /**
+   * Runs the statements of a script written by the HSQLDB <code>SCRIPT</code> statement, one per line. The lines
+   * before the first <code>SET SCHEMA</code> recreate the settings, user and schema that a new database already has,
+   * so their errors are ignored, and the internal <code>SYSTEM_LOBS</code> schema is skipped.
+   */
+  private void replayHsqldbScript(Statement statement, File snapshot) throws SQLException, IOException {
+    // Characters outside ASCII are written as unicode escapes.
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(snapshot), Charset.forName("ISO-8859-1")));
+    try {
+      boolean prelude = true;
+      boolean systemSchema = false;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("SET SCHEMA ")) {
+          prelude = false;
+          systemSchema = line.equals("SET SCHEMA SYSTEM_LOBS");
+          if (systemSchema) {
+            continue;
+          }
+        }
+        if (systemSchema || line.length() == 0 || line.startsWith("SET DATABASE UNIQUE NAME")) {
+          continue;
+        }
+        try {
+          statement.execute(unescape(line));
+        } catch (SQLException e) {
+          if (!prelude && !line.startsWith("GRANT ")) {
+            throw e;
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static String unescape(String line) {
+    if (line.indexOf("\\u") < 0) {
+      return line;
+    }
+    StringBuilder builder = new StringBuilder(line.length());
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\' && i + 5 < line.length() && line.charAt(i + 1) == 'u' && isHex(line, i + 2, i + 6)) {
+        builder.append((char) Integer.parseInt(line.substring(i + 2, i + 6), 16));
+        i += 5;
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  private static boolean isHex(String text, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (Character.digit(text.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.math.BigDecimal;
+
+/**
+ * The result of {@link SchemaStatusOperation}.
+ */
+public final class SchemaStatus {
+  private final BigDecimal currentVersion;
+
+  private final BigDecimal latestVersion;
+
+  private final int appliedCount;
+
+  private final int pendingCount;
+
+  public SchemaStatus(BigDecimal currentVersion, BigDecimal latestVersion, int appliedCount, int pendingCount) {
+    super();
+    this.currentVersion = currentVersion;
+    this.latestVersion = latestVersion;
+    this.appliedCount = appliedCount;
+    this.pendingCount = pendingCount;
+  }
+
+  /**
+   * @return The ID of the last applied migration or <code>null</code> if none has been applied.
+   */
+  public BigDecimal getCurrentVersion() {
+    return currentVersion;
+  }
+
+  /**
+   * @return The ID of the last migration script or <code>null</code> if there is no script.
+   */
+  public BigDecimal getLatestVersion() {
+    return latestVersion;
+  }
+
+  /**
+   * @return The number of rows in the changelog.
+   */
+  public int getAppliedCount() {
+    return appliedCount;
+  }
+
+  /**
+   * @return The number of migrations newer than the current version, i.e. what <code>up</code> would apply. Migrations
+   *         skipped out of order are not counted (see {@link PendingOperation}).
+   */
+  public int getPendingCount() {
+    return pendingCount;
+  }
+
+  public boolean isCurrent() {
+    return pendingCount == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SchemaStatus [currentVersion=" + currentVersion + ", latestVersion=" + latestVersion + ", appliedCount="
+        + appliedCount + ", pendingCount=" + pendingCount + "]";
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.jdbc.SqlRunner;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationCatalog;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * Tells whether the database is up to date with a single query, e.g. for health checks.<br>
+ * The catalog of migration scripts is loaded on the first call and cached, so an instance can be reused for every
+ * check. Create a new instance to pick up new scripts.
+ */
+public final class SchemaStatusOperation extends DatabaseOperation {
+
+  private volatile CachedCatalog cachedCatalog;
+
+  public SchemaStatus operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
+      }
+      MigrationCatalog catalog = getCatalog(migrationsLoader);
+      BigDecimal latestVersion = catalog.getLatestId();
+
+      SqlRunner runner = getSqlRunner(connectionProvider);
+      try {
+        List<Map<String, Object>> rows = runner
+            .selectAll("select max(ID) as ID, count(*) as APPLIED from " + option.getChangelogTable());
+        Object id = rows.get(0).get("ID");
+        BigDecimal currentVersion = id == null ? null : new BigDecimal(id.toString());
+        int appliedCount = ((Number) rows.get(0).get("APPLIED")).intValue();
+        int pendingCount = catalog.size() - catalog.indexAfter(currentVersion);
+        succeeded = true;
+        return new SchemaStatus(currentVersion, latestVersion, appliedCount, pendingCount);
+      } catch (SQLException e) {
+        if (!changelogExists(connectionProvider, option)) {
+          succeeded = true;
+          return new SchemaStatus(null, latestVersion, 0, catalog.size());
+        }
+        throw new MigrationException("Error querying schema status.  Cause: " + e, e);
+      } finally {
+        runner.closeConnection();
+      }
+    } finally {
+      event.commit("schema status", succeeded);
+    }
+  }
+
+  private MigrationCatalog getCatalog(MigrationLoader migrationsLoader) {
+    CachedCatalog cached = cachedCatalog;
+    if (cached == null || cached.loader != migrationsLoader) {
+      cached = new CachedCatalog(migrationsLoader, MigrationCatalog.of(migrationsLoader));
+      cachedCatalog = cached;
+    }
+    return cached.catalog;
+  }
+
+  private static final class CachedCatalog {
+    private final MigrationLoader loader;
+    private final MigrationCatalog catalog;
+
+    CachedCatalog(MigrationLoader loader, MigrationCatalog catalog) {
+      this.loader = loader;
+      this.catalog = catalog;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Reads the scripts of upcoming changes on background threads so that they are ready when the caller needs them.<br>
+ * Scripts are returned strictly in the order of the given changes and at most <code>depth</code> scripts are held
+ * ahead. With more than one thread, the {@link MigrationLoader} must be thread-safe.
+ */
+public final class ScriptPrefetcher {
+
+  static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+  private final MigrationLoader migrationsLoader;
+
+  private final boolean undo;
+
+  private final int depth;
+
+  private final Iterator<Change> upcoming;
+
+  private final LinkedList<Future<PrefetchedScript>> queue = new LinkedList<Future<PrefetchedScript>>();
+
+  private final ExecutorService executor;
+
+  public ScriptPrefetcher(MigrationLoader migrationsLoader, List<Change> changes, boolean undo, int depth) {
+    this(migrationsLoader, changes, undo, depth, 1);
+  }
+
+  public ScriptPrefetcher(MigrationLoader migrationsLoader, List<Change> changes, boolean undo, int depth,
+      int threads) {
+    super();
+    if (depth < 1) {
+      throw new IllegalArgumentException("depth must be a positive number.");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be a positive number.");
+    }
+    this.migrationsLoader = migrationsLoader;
+    this.undo = undo;
+    this.depth = depth;
+    this.upcoming = changes.iterator();
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "migrations-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    fill();
+  }
+
+  /**
+   * @return The script of the next change. Blocks until it has been read.
+   */
+  public PrefetchedScript next() {
+    Future<PrefetchedScript> future = queue.poll();
+    if (future == null) {
+      throw new MigrationException("No more scripts to prefetch.");
+    }
+    fill();
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MigrationException("Interrupted while reading script.  Cause: " + e, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new MigrationException("Error reading script.  Cause: " + cause, cause);
+    }
+  }
+
+  /**
+   * Discards the scripts read ahead and stops the background threads, waiting up to {@link #CLOSE_TIMEOUT_MILLIS} for
+   * a read in progress to end.
+   */
+  public void close() {
+    for (Future<PrefetchedScript> future : queue) {
+      future.cancel(true);
+    }
+    queue.clear();
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void fill() {
+    while (queue.size() < depth && upcoming.hasNext()) {
+      final Change change = upcoming.next();
+      queue.add(executor.submit(new Callable<PrefetchedScript>() {
+        @Override
+        public PrefetchedScript call() throws Exception {
+          long start = System.nanoTime();
+          Reader reader = migrationsLoader.getScriptReader(change, undo);
+          try {
+            String script = Util.readFully(reader);
+            return new PrefetchedScript(change, script, System.nanoTime() - start);
+          } finally {
+            reader.close();
+          }
+        }
+      }));
+    }
+  }
+
+  public static final class PrefetchedScript {
+    private final Change change;
+    private final String script;
+    private final long readNanos;
+
+    PrefetchedScript(Change change, String script, long readNanos) {
+      super();
+      this.change = change;
+      this.script = script;
+      this.readNanos = readNanos;
+    }
+
+    public Change getChange() {
+      return change;
+    }
+
+    public Reader getReader() {
+      return new StringReader(script);
+    }
+
+    public long getReadNanos() {
+      return readNanos;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.jdbc.SqlRunner;
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.io.OutputLevel;
+import org.apache.ibatis.migration.io.SinkPrintStream;
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementInvocation;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Records the index of each completed statement of the running script in a table named after the changelog table
+ * (e.g. CHANGELOG_CHECKPOINT), together with a hash of the script.<br>
+ * Each statement is committed together with its checkpoint. When the same script is run again after a failure, the
+ * statements up to the checkpoint are skipped. A changed script is run from the start.<br>
+ * Checkpoints require auto commit to be off: with auto commit, a statement is committed before its checkpoint, and a
+ * failure in between would run it again.
+ */
+final class StatementCheckpoints implements StatementInterceptor {
+
+  private static final String CHECKPOINT_TABLE_SUFFIX = "_CHECKPOINT";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ConnectionProvider connectionProvider;
+
+  private final String table;
+
+  private final PrintStream printStream;
+
+  private BigDecimal changeId;
+
+  private String scriptHash;
+
+  private int completed;
+
+  private int executed;
+
+  private boolean recorded;
+
+  StatementCheckpoints(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      PrintStream printStream) {
+    super();
+    if (option.isAutoCommit()) {
+      throw new MigrationException(
+          "Statement checkpoints cannot be used with auto commit, which commits a statement before its checkpoint.");
+    }
+    this.connectionProvider = connectionProvider;
+    this.table = option.getChangelogTable() + CHECKPOINT_TABLE_SUFFIX;
+    this.printStream = printStream == null ? null : SinkPrintStream.forLevel(printStream, OutputLevel.VERBOSE);
+  }
+
+  void ensureTable() {
+    if (tableExists()) {
+      return;
+    }
+    SqlRunner runner = getSqlRunner();
+    try {
+      runner.run("create table " + table
+          + " (ID NUMERIC(20,0) NOT NULL, SCRIPT_HASH VARCHAR(64) NOT NULL, STATEMENT_INDEX INTEGER NOT NULL,"
+          + " PRIMARY KEY (ID))");
+    } catch (SQLException e) {
+      // Another process may have created it in the meantime.
+      if (!tableExists()) {
+        throw new MigrationException("Error creating checkpoint table.  Cause: " + e, e);
+      }
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  /**
+   * Starts recording the statements of the given script.
+   *
+   * @return the number of statements that completed in a previous run and will be skipped.
+   */
+  int start(Change change, String script) {
+    changeId = change.getId();
+    scriptHash = hash(script);
+    completed = 0;
+    executed = 0;
+    recorded = false;
+    SqlRunner runner = getSqlRunner();
+    try {
+      List<Map<String, Object>> rows = runner
+          .selectAll("select SCRIPT_HASH, STATEMENT_INDEX from " + table + " where ID = ?", changeId);
+      if (!rows.isEmpty()) {
+        recorded = true;
+        if (scriptHash.equals(rows.get(0).get("SCRIPT_HASH"))) {
+          completed = ((Number) rows.get(0).get("STATEMENT_INDEX")).intValue() + 1;
+        }
+      }
+      return completed;
+    } catch (SQLException e) {
+      throw new MigrationException("Error reading checkpoint.  Cause: " + e, e);
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  /**
+   * Removes the checkpoint of a script that has run to the end.
+   */
+  void finish() {
+    BigDecimal id = changeId;
+    changeId = null;
+    if (!recorded) {
+      return;
+    }
+    SqlRunner runner = getSqlRunner();
+    try {
+      runner.delete("delete from " + table + " where ID = ?", id);
+    } catch (SQLException e) {
+      throw new MigrationException("Error deleting checkpoint.  Cause: " + e, e);
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  @Override
+  public boolean intercept(StatementInvocation invocation) throws SQLException {
+    if (changeId == null) {
+      return invocation.proceed();
+    }
+    int index = executed++;
+    if (index < completed) {
+      // The script runner has already echoed the statement.
+      if (printStream != null) {
+        printStream.println("-- Skipped: completed in a previous run.");
+      }
+      return false;
+    }
+    boolean hasResults = invocation.proceed();
+    save(invocation.getStatement().getConnection(), index);
+    return hasResults;
+  }
+
+  private void save(Connection connection, int index) throws SQLException {
+    // Written on the connection of the script so that it is committed together with the statement.
+    PreparedStatement statement;
+    if (recorded) {
+      statement = connection.prepareStatement(
+          "update " + table + " set SCRIPT_HASH = ?, STATEMENT_INDEX = ? where ID = ?");
+      statement.setString(1, scriptHash);
+      statement.setInt(2, index);
+      statement.setBigDecimal(3, changeId);
+    } else {
+      statement = connection.prepareStatement(
+          "insert into " + table + " (ID, SCRIPT_HASH, STATEMENT_INDEX) values (?, ?, ?)");
+      statement.setBigDecimal(1, changeId);
+      statement.setString(2, scriptHash);
+      statement.setInt(3, index);
+    }
+    try {
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+    recorded = true;
+    if (!connection.getAutoCommit()) {
+      connection.commit();
+    }
+  }
+
+  private boolean tableExists() {
+    SqlRunner runner = getSqlRunner();
+    try {
+      runner.selectAll("select ID from " + table + " where 1 = 0");
+      return true;
+    } catch (SQLException e) {
+      return false;
+    } finally {
+      runner.closeConnection();
+    }
+  }
+
+  private SqlRunner getSqlRunner() {
+    return DatabaseOperation.openSqlRunner(connectionProvider);
+  }
+
+  static String hash(String script) {
+    return Util.sha256(script.getBytes(UTF_8));
+  }
+}
@@ -16,13 +16,17 @@
 package org.apache.ibatis.migration.operations;
 
 import java.io.PrintStream;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
 import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.Util;
 
@@ -35,35 +39,46 @@ public final class StatusOperation extends DatabaseOperation {
 
   public StatusOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream) {
-    if (option == null) {
-      option = new DatabaseOperationOption();
-    }
-    println(printStream, "ID             Applied At          Description");
-    println(printStream, Util.horizontalLine("", 80));
-    changes = new ArrayList<Change>();
-    List<Change> migrations = migrationsLoader.getMigrations();
-    if (changelogExists(connectionProvider, option)) {
-      List<Change> changelog = getChangelog(connectionProvider, option);
-      for (Change change : migrations) {
-        int index = changelog.indexOf(change);
-        if (index > -1) {
-          changes.add(changelog.get(index));
-          applied++;
-        } else {
-          changes.add(change);
-          pending++;
-        }
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
       }
-    } else {
+      println(printStream, "ID             Applied At          Description");
+      println(printStream, Util.horizontalLine("", 80));
+      changes = new ArrayList<Change>();
+      List<Change> migrations = migrationsLoader.getMigrations();
       changes.addAll(migrations);
-      pending = migrations.size();
-    }
-    Collections.sort(changes);
-    for (Change change : changes) {
-      println(printStream, change.toString());
+      if (changelogExists(connectionProvider, option)) {
+        // Replace the migrations that have been applied with their changelog entries.
+        final Map<BigDecimal, Integer> indexes = new HashMap<BigDecimal, Integer>();
+        for (int i = 0; i < changes.size(); i++) {
+          indexes.put(changes.get(i).getId(), Integer.valueOf(i));
+        }
+        readChangelog(connectionProvider, option, new ChangelogHandler() {
+          @Override
+          public boolean handle(Change change) {
+            Integer index = indexes.remove(change.getId());
+            if (index != null) {
+              changes.set(index.intValue(), change);
+              applied++;
+            }
+            return true;
+          }
+        });
+      }
+      pending = changes.size() - applied;
+      Collections.sort(changes);
+      for (Change change : changes) {
+        println(printStream, change.toString());
+      }
+      println(printStream);
+      succeeded = true;
+      return this;
+    } finally {
+      event.commit("status", succeeded);
     }
-    println(printStream);
-    return this;
   }
 
   public int getAppliedCount() {
@@ -15,27 +15,43 @@
  */
 package org.apache.ibatis.migration.operations;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
-import java.util.Collections;
+import java.io.StringReader;
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.apache.ibatis.jdbc.RuntimeSqlException;
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationCatalog;
 import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
 import org.apache.ibatis.migration.hook.HookContext;
 import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.lock.MigrationLock;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.metrics.MetricsRecorder;
+import org.apache.ibatis.migration.operations.ScriptPrefetcher.PrefetchedScript;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.Util;
 
 public final class UpOperation extends DatabaseOperation {
+  private static final long INITIAL_LOCK_BACKOFF = 100L;
+
+  private static final long MAX_LOCK_BACKOFF = 5000L;
+
+  private final Random random = new Random();
+
   private final Integer steps;
 
+  private int appliedCount;
+
   public UpOperation() {
     super();
     this.steps = null;
@@ -56,79 +72,245 @@ public final class UpOperation extends DatabaseOperation {
 
   public UpOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream, MigrationHook hook) {
+    return run(connectionProvider, migrationsLoader, option, printStream, hook, null);
+  }
+
+  /**
+   * Applies the given migrations in order without reading the changelog, e.g. the ones added while a
+   * {@link WatchOperation} is running. The migration lock is taken if there is one.
+   */
+  UpOperation apply(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook hook, List<Change> changes) {
+    return run(connectionProvider, migrationsLoader, option, printStream, hook, changes);
+  }
+
+  /**
+   * @return The number of migrations applied by the last run, including the ones before a failure.
+   */
+  int getAppliedCount() {
+    return appliedCount;
+  }
+
+  private UpOperation run(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook hook, List<Change> changes) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
     try {
       if (option == null) {
         option = new DatabaseOperationOption();
       }
 
-      Change lastChange = null;
-      if (changelogExists(connectionProvider, option)) {
-        lastChange = getLastAppliedChange(connectionProvider, option);
+      appliedCount = 0;
+      MigrationLock lock = option.getMigrationLock();
+      if (lock == null) {
+        migrate(connectionProvider, migrationsLoader, option, printStream, hook, changes);
+      } else if (awaitLock(connectionProvider, option, printStream, lock,
+          changes == null ? MigrationCatalog.of(migrationsLoader).getLatestId()
+              : changes.isEmpty() ? null : changes.get(changes.size() - 1).getId())) {
+        boolean migrated = false;
+        try {
+          migrate(connectionProvider, migrationsLoader, option, printStream, hook, changes);
+          migrated = true;
+        } finally {
+          unlock(connectionProvider, option, printStream, lock, migrated);
+        }
+      }
+      succeeded = true;
+      return this;
+    } catch (Throwable e) {
+      while (e instanceof MigrationException && e.getCause() != null) {
+        e = e.getCause();
       }
+      throw new MigrationException("Error executing command.  Cause: " + e, e);
+    } finally {
+      event.commit("up", succeeded);
+    }
+  }
 
-      List<Change> migrations = migrationsLoader.getMigrations();
-      Collections.sort(migrations);
-      int stepCount = 0;
-      ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream);
+  private void migrate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook hook, List<Change> changes)
+      throws IOException {
+    List<Change> pending = changes == null ? getPending(connectionProvider, migrationsLoader, option, printStream)
+        : changes;
+    StatementCheckpoints checkpoints = null;
+    if (option.isCheckpoint() && !pending.isEmpty()) {
+      checkpoints = new StatementCheckpoints(connectionProvider, option, printStream);
+      checkpoints.ensureTable();
+      option = new DatabaseOperationOption(option);
+      option.addStatementInterceptor(checkpoints);
+    }
+    int stepCount = 0;
+    MetricsRecorder recorder = createMetricsRecorder(option);
+    ScriptRunner runner = getScriptRunner(connectionProvider, option, printStream, recorder);
 
-      Map<String, Object> hookBindings = new HashMap<String, Object>();
+    Map<String, Object> hookBindings = new HashMap<String, Object>();
 
-      Reader scriptReader = null;
-      Reader onAbortScriptReader = null;
-      try {
-        for (Change change : migrations) {
-          if (lastChange == null || change.getId().compareTo(lastChange.getId()) > 0) {
-            if (stepCount == 0 && hook != null) {
-              hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
-              hook.before(hookBindings);
-            }
-            if (hook != null) {
-              hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, change.clone()));
-              hook.beforeEach(hookBindings);
-            }
-            println(printStream, Util.horizontalLine("Applying: " + change.getFilename(), 80));
-            scriptReader = migrationsLoader.getScriptReader(change, false);
-            runner.runScript(scriptReader);
-            insertChangelog(change, connectionProvider, option);
-            println(printStream);
-            if (hook != null) {
-              hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, change.clone()));
-              hook.afterEach(hookBindings);
-            }
-            stepCount++;
-            if (steps != null && stepCount >= steps) {
-              break;
-            }
-          }
+    ScriptPrefetcher prefetcher = null;
+    Reader scriptReader = null;
+    Reader onAbortScriptReader = null;
+    try {
+      if (option.getPrefetchDepth() > 0 && pending.size() > 1) {
+        prefetcher = new ScriptPrefetcher(migrationsLoader, pending, false, option.getPrefetchDepth());
+      }
+      for (Change change : pending) {
+        if (stepCount == 0 && hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
+          hook.before(hookBindings);
         }
-        if (stepCount > 0 && hook != null) {
-          hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null));
-          hook.after(hookBindings);
+        if (hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT,
+              new HookContext(connectionProvider, runner, change.clone(), option));
+          hook.beforeEach(hookBindings);
         }
-        return this;
-      } catch (RuntimeSqlException e) {
-        onAbortScriptReader = migrationsLoader.getOnAbortReader();
-        if (onAbortScriptReader != null) {
-          println(printStream);
-          println(printStream, Util.horizontalLine("Executing onabort.sql script.", 80));
-          runner.runScript(onAbortScriptReader);
-          println(printStream);
+        println(printStream, Util.horizontalLine("Applying: " + change.getFilename(), 80));
+        recorder.startChange(change, false);
+        if (prefetcher != null) {
+          PrefetchedScript script = prefetcher.next();
+          recorder.scriptRead(script.getReadNanos());
+          scriptReader = script.getReader();
+        } else {
+          scriptReader = recorder.readScript(migrationsLoader, change, false);
         }
-        throw e;
-      } finally {
-        if (scriptReader != null) {
+        if (checkpoints != null) {
+          String script = Util.readFully(scriptReader);
           scriptReader.close();
+          scriptReader = new StringReader(script);
+          int completed = checkpoints.start(change, script);
+          if (completed > 0) {
+            println(printStream, "Resuming after statement " + completed + " which completed in a previous run.");
+          }
+        }
+        recorder.runScript(runner, scriptReader);
+        if (checkpoints != null) {
+          // Removed before the changelog entry so that a leftover checkpoint never skips statements of a rerun.
+          checkpoints.finish();
         }
-        if (onAbortScriptReader != null) {
-          onAbortScriptReader.close();
+        recorder.startChangelog();
+        insertChangelog(change, connectionProvider, option);
+        recorder.finishChange();
+        println(printStream);
+        if (hook != null) {
+          hookBindings.put(MigrationHook.HOOK_CONTEXT,
+              new HookContext(connectionProvider, runner, change.clone(), option));
+          hook.afterEach(hookBindings);
         }
-        runner.closeConnection();
+        stepCount++;
+        appliedCount++;
       }
-    } catch (Throwable e) {
-      while (e instanceof MigrationException) {
-        e = e.getCause();
+      if (stepCount > 0 && hook != null) {
+        hookBindings.put(MigrationHook.HOOK_CONTEXT, new HookContext(connectionProvider, runner, null, option));
+        hook.after(hookBindings);
       }
-      throw new MigrationException("Error executing command.  Cause: " + e, e);
+    } catch (RuntimeSqlException e) {
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
+      onAbortScriptReader = migrationsLoader.getOnAbortReader();
+      if (onAbortScriptReader != null) {
+        println(printStream);
+        println(printStream, Util.horizontalLine("Executing onabort.sql script.", 80));
+        runner.runScript(onAbortScriptReader);
+        println(printStream);
+      }
+      throw e;
+    } finally {
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
+      if (scriptReader != null) {
+        scriptReader.close();
+      }
+      if (onAbortScriptReader != null) {
+        onAbortScriptReader.close();
+      }
+      awaitHooks(hook, printStream);
+      runner.closeConnection();
+    }
+  }
+
+  /**
+   * Reads the last applied migration (or applies the baseline to a new database) and returns the migrations to apply.
+   */
+  private List<Change> getPending(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream) throws IOException {
+    BigDecimal lastId = null;
+    Integer remainingSteps = steps;
+    if (changelogExists(connectionProvider, option)) {
+      lastId = getLastAppliedId(connectionProvider, option);
+    } else {
+      // The baseline counts as the migrations it includes, and is skipped if they are more than the steps.
+      BaselineOperation baseline = new BaselineOperation();
+      lastId = baseline.apply(connectionProvider, migrationsLoader, option, printStream, steps);
+      if (lastId != null && steps != null) {
+        remainingSteps = steps - baseline.getAppliedCount();
+      }
+    }
+    MigrationCatalog catalog = MigrationCatalog.of(migrationsLoader);
+    int firstPending = catalog.indexAfter(lastId);
+    int lastPending = remainingSteps == null ? catalog.size()
+        : (int) Math.min(catalog.size(), (long) firstPending + remainingSteps);
+    return catalog.getChanges(firstPending, lastPending);
+  }
+
+  /**
+   * Waits until the lock is acquired or the database is up to date.
+   *
+   * @return <code>true</code> if the lock has been acquired, <code>false</code> if there is nothing to migrate.
+   */
+  private boolean awaitLock(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      PrintStream printStream, MigrationLock lock, BigDecimal lastScriptId) {
+    long deadline = option.getLockTimeout() > 0 ? System.currentTimeMillis() + option.getLockTimeout()
+        : Long.MAX_VALUE;
+    long backoff = INITIAL_LOCK_BACKOFF;
+    while (true) {
+      if (isUpToDate(connectionProvider, option, lastScriptId)) {
+        println(printStream, "Already up to date.");
+        return false;
+      }
+      if (lock.tryLock(connectionProvider, option)) {
+        return true;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        throw new MigrationException("Timed out waiting for the migration lock.");
+      }
+      try {
+        Thread.sleep(backoff + random.nextInt((int) (backoff / 2) + 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MigrationException("Interrupted while waiting for the migration lock.", e);
+      }
+      backoff = Math.min(backoff * 2, MAX_LOCK_BACKOFF);
+    }
+  }
+
+  /**
+   * Releases the lock. If the migration failed, a failure to release the lock is printed so that it does not replace
+   * the error of the migration.
+   */
+  private void unlock(ConnectionProvider connectionProvider, DatabaseOperationOption option, PrintStream printStream,
+      MigrationLock lock, boolean migrated) {
+    try {
+      lock.unlock(connectionProvider, option);
+    } catch (RuntimeException e) {
+      if (migrated) {
+        throw e;
+      }
+      println(printStream, "Error releasing the migration lock.  Cause: " + e);
+    }
+  }
+
+  private boolean isUpToDate(ConnectionProvider connectionProvider, DatabaseOperationOption option,
+      BigDecimal lastScriptId) {
+    if (lastScriptId == null) {
+      return true;
+    }
+    // A single query per poll; a missing changelog table simply means there is work to do.
+    BigDecimal lastId;
+    try {
+      lastId = getLastAppliedId(connectionProvider, option);
+    } catch (MigrationException e) {
+      return false;
     }
+    return lastId != null && lastId.compareTo(lastScriptId) >= 0;
   }
 }
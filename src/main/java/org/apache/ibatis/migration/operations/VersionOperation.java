@@ -17,13 +17,13 @@ package org.apache.ibatis.migration.operations;
 
 import java.io.PrintStream;
 import java.math.BigDecimal;
-import java.util.List;
 
-import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.MigrationCatalog;
 import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
 import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 
 public final class VersionOperation extends DatabaseOperation {
@@ -44,35 +44,42 @@ public final class VersionOperation extends DatabaseOperation {
 
   public VersionOperation operate(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
       DatabaseOperationOption option, PrintStream printStream, MigrationHook upHook, MigrationHook downHook) {
-    if (option == null) {
-      option = new DatabaseOperationOption();
-    }
-    ensureVersionExists(migrationsLoader);
-    Change change = getLastAppliedChange(connectionProvider, option);
-    if (change == null || version.compareTo(change.getId()) > 0) {
-      println(printStream, "Upgrading to: " + version);
-      UpOperation up = new UpOperation(1);
-      while (!version.equals(change.getId())) {
-        up.operate(connectionProvider, migrationsLoader, option, printStream, upHook);
-        change = getLastAppliedChange(connectionProvider, option);
+    // Spans the up and down operations it runs, which have their own events.
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
       }
-    } else if (version.compareTo(change.getId()) < 0) {
-      println(printStream, "Downgrading to: " + version);
-      DownOperation down = new DownOperation(1);
-      while (!version.equals(change.getId())) {
-        down.operate(connectionProvider, migrationsLoader, option, printStream, downHook);
-        change = getLastAppliedChange(connectionProvider, option);
+      ensureVersionExists(migrationsLoader);
+      BigDecimal lastId = getLastAppliedId(connectionProvider, option);
+      if (lastId == null || version.compareTo(lastId) > 0) {
+        println(printStream, "Upgrading to: " + version);
+        UpOperation up = new UpOperation(1);
+        while (!version.equals(lastId)) {
+          up.operate(connectionProvider, migrationsLoader, option, printStream, upHook);
+          lastId = getLastAppliedId(connectionProvider, option);
+        }
+      } else if (version.compareTo(lastId) < 0) {
+        println(printStream, "Downgrading to: " + version);
+        DownOperation down = new DownOperation(1);
+        while (!version.equals(lastId)) {
+          down.operate(connectionProvider, migrationsLoader, option, printStream, downHook);
+          lastId = getLastAppliedId(connectionProvider, option);
+        }
+      } else {
+        println(printStream, "Already at version: " + version);
       }
-    } else {
-      println(printStream, "Already at version: " + version);
+      println(printStream);
+      succeeded = true;
+      return this;
+    } finally {
+      event.commit("version", succeeded);
     }
-    println(printStream);
-    return this;
   }
 
   private void ensureVersionExists(MigrationLoader migrationsLoader) {
-    List<Change> migrations = migrationsLoader.getMigrations();
-    if (!migrations.contains(new Change(version))) {
+    if (!MigrationCatalog.of(migrationsLoader).contains(version)) {
       throw new MigrationException("A migration for the specified version number does not exist.");
     }
   }
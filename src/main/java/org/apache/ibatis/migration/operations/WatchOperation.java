@@ -0,0 +1,337 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.operations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationCatalog;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.apache.ibatis.migration.utils.Util;
+
+/**
+ * Applies pending migrations, then keeps polling the scripts directory and applies new migrations as they appear,
+ * until {@link #stop()} is called or the thread is interrupted. A change is applied once it is unchanged for one
+ * polling interval, so that files still being written are not picked up. Errors are reported and the operation keeps
+ * watching: a migration that failed is applied again when its file is saved.<br>
+ * With <code>redo</code>, editing the last migration applied by this operation undoes it (with the undo section it
+ * had when it was applied) and applies it again.<br>
+ * The catalog of migrations and the last applied ID are kept in memory after the first run: new migrations are applied
+ * without reading the changelog, so this operation assumes that nothing else migrates the database meanwhile.
+ */
+public final class WatchOperation extends DatabaseOperation {
+
+  public static final long DEFAULT_INTERVAL = 1000L;
+
+  private static final long COARSE_TIMESTAMP = 2000L;
+
+  private final long interval;
+
+  private final boolean redo;
+
+  private volatile boolean stopped;
+
+  private File scriptsDir;
+
+  private BigDecimal startId;
+
+  private MigrationCatalog catalog;
+
+  private BigDecimal lastAppliedId;
+
+  private Change target;
+
+  private boolean targetApplied;
+
+  private String targetUndoScript;
+
+  private String targetStamp;
+
+  public WatchOperation(boolean redo) {
+    this(DEFAULT_INTERVAL, redo);
+  }
+
+  public WatchOperation(long interval, boolean redo) {
+    super();
+    if (interval < 1) {
+      throw new IllegalArgumentException("interval must be positive.");
+    }
+    this.interval = interval;
+    this.redo = redo;
+  }
+
+  public WatchOperation operate(ConnectionProvider connectionProvider, FileMigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook upHook, MigrationHook downHook) {
+    FlightRecorder.Event event = FlightRecorder.OPERATION.begin();
+    boolean succeeded = false;
+    try {
+      if (option == null) {
+        option = new DatabaseOperationOption();
+      }
+      scriptsDir = migrationsLoader.getScriptsDir();
+      startId = readLastAppliedId(connectionProvider, option);
+      // Listed before applying, so that files added meanwhile are seen as new.
+      long dirStamp = scriptsDir.lastModified();
+      String[] filenames = list();
+      catalog = MigrationCatalog.of(migrationsLoader);
+      Change last = getLast();
+      String lastStamp = last == null ? null : stamp(last);
+      String lastUndoScript = last == null || !redo ? null : readUndoScript(migrationsLoader, last);
+      try {
+        new UpOperation().operate(connectionProvider, migrationsLoader, option, printStream, upHook);
+      } catch (MigrationException e) {
+        println(printStream, "Error applying migrations.  Cause: " + e.getMessage());
+      }
+      // The only time the changelog is read after the first run.
+      lastAppliedId = readLastAppliedId(connectionProvider, option);
+      track(migrationsLoader, last, lastStamp, lastUndoScript);
+      println(printStream, "Watching " + scriptsDir + " for new migrations" + (redo ? " and edits of the last one" : "")
+          + ". Press Ctrl+C to stop.");
+      try {
+        while (!stopped) {
+          Thread.sleep(interval);
+          // Some file systems only keep seconds, so a recent time stamp does not rule out a later change.
+          if (scriptsDir.lastModified() != dirStamp || System.currentTimeMillis() - dirStamp < COARSE_TIMESTAMP) {
+            dirStamp = scriptsDir.lastModified();
+            String[] current = list();
+            if (!Arrays.equals(current, filenames)) {
+              filenames = settle(current);
+              dirStamp = scriptsDir.lastModified();
+              catalog = MigrationCatalog.of(migrationsLoader);
+              up(connectionProvider, migrationsLoader, option, printStream, upHook);
+              continue;
+            }
+          }
+          if (target != null && !stamp(target).equals(targetStamp) && settle(target)) {
+            retry(connectionProvider, migrationsLoader, option, printStream, upHook, downHook);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      succeeded = true;
+      return this;
+    } finally {
+      event.commit("watch", succeeded);
+    }
+  }
+
+  /**
+   * Makes {@link #operate} return after the current polling interval.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Applies the migrations of the catalog after the last applied one.
+   */
+  private void up(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook upHook) {
+    List<Change> pending = catalog.getChanges(catalog.indexAfter(lastAppliedId), catalog.size());
+    // The last script is read before it is applied, so that a save while it runs is seen as an edit.
+    Change last = getLast();
+    String lastStamp = last == null ? null : stamp(last);
+    String lastUndoScript = last == null || !redo ? null : readUndoScript(migrationsLoader, last);
+    if (!pending.isEmpty()) {
+      UpOperation up = new UpOperation();
+      boolean completed = false;
+      try {
+        up.apply(connectionProvider, migrationsLoader, option, printStream, upHook, pending);
+        completed = true;
+      } catch (MigrationException e) {
+        println(printStream, "Error applying migrations.  Cause: " + e.getMessage());
+      }
+      if (up.getAppliedCount() > 0) {
+        lastAppliedId = pending.get(up.getAppliedCount() - 1).getId();
+      }
+      if (completed && up.getAppliedCount() < pending.size()) {
+        // Applied by another process that held the migration lock.
+        lastAppliedId = readLastAppliedId(connectionProvider, option);
+      }
+    }
+    track(migrationsLoader, last, lastStamp, lastUndoScript);
+  }
+
+  private void retry(ConnectionProvider connectionProvider, MigrationLoader migrationsLoader,
+      DatabaseOperationOption option, PrintStream printStream, MigrationHook upHook, MigrationHook downHook) {
+    Change target = this.target;
+    targetStamp = stamp(target);
+    if (targetApplied) {
+      if (catalog.size() == 0 || catalog.getId(catalog.size() - 1).compareTo(target.getId()) != 0) {
+        // Only the last migration is redone, the others may have been applied after it.
+        this.target = null;
+        return;
+      }
+      println(printStream, Util.horizontalLine("Redoing: " + target.getFilename(), 80));
+      try {
+        new DownOperation(1).operate(connectionProvider,
+            new AppliedUndoLoader(migrationsLoader, target, targetUndoScript), option, printStream, downHook);
+      } catch (MigrationException e) {
+        println(printStream, "Error undoing " + target.getFilename() + ".  Cause: " + e.getMessage());
+        return;
+      }
+      int index = catalog.indexOf(target.getId());
+      lastAppliedId = index > 0 ? catalog.getId(index - 1) : null;
+      targetApplied = false;
+    }
+    up(connectionProvider, migrationsLoader, option, printStream, upHook);
+  }
+
+  /**
+   * Watches the first pending migration if it failed, or with <code>redo</code> the last migration if this operation
+   * applied it. The undo section of an applied migration is kept as it was when it was applied.
+   */
+  private void track(MigrationLoader migrationsLoader, Change last, String lastStamp, String lastUndoScript) {
+    BigDecimal lastId = lastAppliedId;
+    int next = catalog.indexAfter(lastId);
+    Change change = null;
+    boolean applied = false;
+    if (next < catalog.size()) {
+      change = catalog.getChange(next);
+    } else if (redo && next > 0 && lastId != null && catalog.getId(next - 1).compareTo(lastId) == 0
+        && (startId == null || lastId.compareTo(startId) > 0)) {
+      change = catalog.getChange(next - 1);
+      applied = true;
+    }
+    if (change == null) {
+      target = null;
+      return;
+    }
+    if (target != null && target.getId().compareTo(change.getId()) == 0 && targetApplied == applied) {
+      return;
+    }
+    boolean wasLast = last != null && last.getId().compareTo(change.getId()) == 0;
+    if (applied) {
+      targetUndoScript = wasLast ? lastUndoScript : readUndoScript(migrationsLoader, change);
+    }
+    target = change;
+    targetApplied = applied;
+    targetStamp = wasLast ? lastStamp : stamp(change);
+  }
+
+  private Change getLast() {
+    return catalog.size() == 0 ? null : catalog.getChange(catalog.size() - 1);
+  }
+
+  private BigDecimal readLastAppliedId(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+    return changelogExists(connectionProvider, option) ? getLastAppliedId(connectionProvider, option) : null;
+  }
+
+  private String readUndoScript(MigrationLoader migrationsLoader, Change change) {
+    try {
+      Reader reader = migrationsLoader.getScriptReader(change, true);
+      try {
+        return Util.readFully(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new MigrationException("Error reading " + change.getFilename() + ".  Cause: " + e, e);
+    }
+  }
+
+  private String[] list() {
+    String[] filenames = scriptsDir.list();
+    if (filenames == null) {
+      throw new MigrationException(scriptsDir + " does not exist.");
+    }
+    Arrays.sort(filenames);
+    return filenames;
+  }
+
+  private String[] settle(String[] filenames) throws InterruptedException {
+    String[] current = filenames;
+    do {
+      filenames = current;
+      Thread.sleep(interval);
+      current = list();
+    } while (!Arrays.equals(current, filenames));
+    return current;
+  }
+
+  private boolean settle(Change change) throws InterruptedException {
+    String stamp = stamp(change);
+    Thread.sleep(interval);
+    return stamp(change).equals(stamp);
+  }
+
+  /**
+   * @return A hash of the content of the script, which unlike its time stamp changes with every save.
+   */
+  private String stamp(Change change) {
+    File file = new File(scriptsDir, change.getFilename());
+    try {
+      return Util.sha256(Util.readBytes(file));
+    } catch (IOException e) {
+      // Deleted or being replaced.
+      return "";
+    }
+  }
+
+  /**
+   * Reads the undo section of the redone migration as it was when the migration was applied.
+   */
+  private static class AppliedUndoLoader implements MigrationLoader {
+    private final MigrationLoader delegate;
+
+    private final Change change;
+
+    private final String undoScript;
+
+    AppliedUndoLoader(MigrationLoader delegate, Change change, String undoScript) {
+      this.delegate = delegate;
+      this.change = change;
+      this.undoScript = undoScript;
+    }
+
+    @Override
+    public List<Change> getMigrations() {
+      return delegate.getMigrations();
+    }
+
+    @Override
+    public Reader getScriptReader(Change change, boolean undo) {
+      if (undo && change.getId().compareTo(this.change.getId()) == 0) {
+        return new StringReader(undoScript);
+      }
+      return delegate.getScriptReader(change, undo);
+    }
+
+    @Override
+    public Reader getBootstrapReader() {
+      return delegate.getBootstrapReader();
+    }
+
+    @Override
+    public Reader getOnAbortReader() {
+      return delegate.getOnAbortReader();
+    }
+  }
+}
@@ -15,6 +15,15 @@
  */
 package org.apache.ibatis.migration.options;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.migration.jdbc.StatementInterceptor;
+import org.apache.ibatis.migration.jdbc.StatementThrottle;
+import org.apache.ibatis.migration.lock.MigrationLock;
+import org.apache.ibatis.migration.metrics.MigrationListener;
+import org.apache.ibatis.migration.script.ScriptCache;
+
 public class DatabaseOperationOption {
   private static final String DEFAULT_CHANGELOG_TABLE = "CHANGELOG";
 
@@ -38,6 +47,54 @@ public class DatabaseOperationOption {
 
   private String delimiter;
 
+  private int prefetchDepth;
+
+  private MigrationLock migrationLock;
+
+  private long lockTimeout;
+
+  private int changelogFetchSize;
+
+  private boolean checkpoint;
+
+  private StatementThrottle throttle;
+
+  private ScriptCache scriptCache;
+
+  private final List<MigrationListener> migrationListeners = new ArrayList<MigrationListener>();
+
+  private final List<StatementInterceptor> statementInterceptors = new ArrayList<StatementInterceptor>();
+
+  public DatabaseOperationOption() {
+    super();
+  }
+
+  /**
+   * Creates a copy of the given option. Listeners and interceptors can be added to the copy without affecting the
+   * original.
+   */
+  public DatabaseOperationOption(DatabaseOperationOption option) {
+    super();
+    this.changelogTable = option.changelogTable;
+    this.stopOnError = option.stopOnError;
+    this.throwWarning = option.throwWarning;
+    this.autoCommit = option.autoCommit;
+    this.sendFullScript = option.sendFullScript;
+    this.removeCRs = option.removeCRs;
+    this.escapeProcessing = option.escapeProcessing;
+    this.fullLineDelimiter = option.fullLineDelimiter;
+    this.delimiter = option.delimiter;
+    this.prefetchDepth = option.prefetchDepth;
+    this.migrationLock = option.migrationLock;
+    this.lockTimeout = option.lockTimeout;
+    this.changelogFetchSize = option.changelogFetchSize;
+    this.checkpoint = option.checkpoint;
+    this.throttle = option.throttle;
+    this.scriptCache = option.scriptCache;
+    this.migrationListeners.addAll(option.migrationListeners);
+    this.statementInterceptors.addAll(option.statementInterceptors);
+  }
+
   public String getChangelogTable() {
     return changelogTable == null ? DEFAULT_CHANGELOG_TABLE : changelogTable;
   }
@@ -109,4 +166,113 @@ public class DatabaseOperationOption {
   public void setDelimiter(String delimiter) {
     this.delimiter = delimiter;
   }
+
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  /**
+   * @param prefetchDepth
+   *          The number of upcoming scripts read on a background thread while the current one is executed. 0 (the
+   *          default) reads each script just before it is executed.
+   */
+  public void setPrefetchDepth(int prefetchDepth) {
+    this.prefetchDepth = prefetchDepth;
+  }
+
+  public MigrationLock getMigrationLock() {
+    return migrationLock;
+  }
+
+  /**
+   * @param migrationLock
+   *          If set, {@link org.apache.ibatis.migration.operations.UpOperation} holds this lock while migrating. Other
+   *          processes wait until the migration is done or the database is up to date.
+   */
+  public void setMigrationLock(MigrationLock migrationLock) {
+    this.migrationLock = migrationLock;
+  }
+
+  public long getLockTimeout() {
+    return lockTimeout;
+  }
+
+  /**
+   * @param lockTimeout
+   *          Maximum time in milliseconds to wait for the migration lock. 0 (the default) waits indefinitely.
+   */
+  public void setLockTimeout(long lockTimeout) {
+    this.lockTimeout = lockTimeout;
+  }
+
+  public int getChangelogFetchSize() {
+    return changelogFetchSize;
+  }
+
+  /**
+   * @param changelogFetchSize
+   *          The fetch size used to read the changelog. 0 (the default) uses the default of the driver. Note that some
+   *          drivers (e.g. PostgreSQL) only honor it when auto commit is disabled.
+   */
+  public void setChangelogFetchSize(int changelogFetchSize) {
+    this.changelogFetchSize = changelogFetchSize;
+  }
+
+  public List<MigrationListener> getMigrationListeners() {
+    return migrationListeners;
+  }
+
+  public void addMigrationListener(MigrationListener migrationListener) {
+    migrationListeners.add(migrationListener);
+  }
+
+  public List<StatementInterceptor> getStatementInterceptors() {
+    return statementInterceptors;
+  }
+
+  /**
+   * @param statementInterceptor
+   *          Intercepts the statements of the migration scripts. Interceptors are called in the order they are added.
+   */
+  public void addStatementInterceptor(StatementInterceptor statementInterceptor) {
+    statementInterceptors.add(statementInterceptor);
+  }
+
+  public boolean isCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * @param checkpoint
+   *          If true, {@link org.apache.ibatis.migration.operations.UpOperation} commits after every statement and
+   *          records the progress of the running script, so that a failed script resumes after the last completed
+   *          statement when it is run again unchanged.
+   */
+  public void setCheckpoint(boolean checkpoint) {
+    this.checkpoint = checkpoint;
+  }
+
+  public StatementThrottle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * @param throttle
+   *          If set, script statements (and each chunk of a <code>@CHUNK</code> statement) are paced by this throttle.
+   */
+  public void setThrottle(StatementThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  public ScriptCache getScriptCache() {
+    return scriptCache;
+  }
+
+  /**
+   * @param scriptCache
+   *          If set, the statements of scripts (e.g. for metrics and plans) are taken from this cache.
+   */
+  public void setScriptCache(ScriptCache scriptCache) {
+    this.scriptCache = scriptCache;
+  }
 }
@@ -16,5 +16,6 @@
 package org.apache.ibatis.migration.options;
 
 public enum Options {
-  PATH, ENVPATH, SCRIPTPATH, DRIVERPATH, HOOKPATH, ENV, FORCE, TRACE, HELP, TEMPLATE, IDPATTERN
+  PATH, ENVPATH, SCRIPTPATH, DRIVERPATH, HOOKPATH, ENV, FORCE, TRACE, HELP, TEMPLATE, IDPATTERN, METRICS, PROFILE, THREADS,
+  OUTPUT, JSON
 }
@@ -18,6 +18,10 @@ package org.apache.ibatis.migration.options;
 import static org.apache.ibatis.migration.utils.Util.isOption;
 
 import java.io.File;
+import java.util.Locale;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.io.OutputLevel;
 
 public enum OptionsParser {
   ;
@@ -87,9 +91,52 @@ public enum OptionsParser {
         case IDPATTERN:
           options.setIdPattern(argParts[1]);
           break;
+        case METRICS:
+          options.setMetricsFile(new File(argParts[1]));
+          break;
+        case PROFILE:
+          options.setProfile(true);
+          break;
+        case THREADS:
+          options.setThreads(parseThreads(value(argParts)));
+          break;
+        case OUTPUT:
+          options.setOutputLevel(parseOutputLevel(value(argParts)));
+          break;
+        case JSON:
+          options.setJsonOutput(true);
+          break;
       }
     }
 
     return isOption;
   }
+
+  private static String value(String[] argParts) {
+    if (argParts.length < 2 || argParts[1].length() == 0) {
+      throw new MigrationException("Option --" + argParts[0] + " requires a value.");
+    }
+    return argParts[1];
+  }
+
+  private static int parseThreads(String value) {
+    try {
+      int threads = Integer.parseInt(value);
+      if (threads > 0) {
+        return threads;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new MigrationException("Invalid value for --threads: " + value + ". Use a positive number.");
+  }
+
+  private static OutputLevel parseOutputLevel(String value) {
+    for (OutputLevel level : OutputLevel.values()) {
+      if (level.name().equals(value.toUpperCase(Locale.ENGLISH))) {
+        return level;
+      }
+    }
+    throw new MigrationException("Invalid value for --output: " + value + ". Use quiet, summary or verbose.");
+  }
 }
@@ -15,11 +15,20 @@
  */
 package org.apache.ibatis.migration.options;
 
+import java.io.File;
+
+import org.apache.ibatis.migration.io.OutputLevel;
+
 public class SelectedOptions {
   private SelectedPaths paths = new SelectedPaths();
   private String environment = "development";
   private String template;
   private String idPattern;
+  private File metricsFile;
+  private boolean profile;
+  private Integer threads;
+  private OutputLevel outputLevel;
+  private boolean jsonOutput;
   private boolean force;
   private boolean trace;
   private String command;
@@ -54,6 +63,52 @@ public class SelectedOptions {
     this.idPattern = idPattern;
   }
 
+  public File getMetricsFile() {
+    return metricsFile;
+  }
+
+  public void setMetricsFile(File metricsFile) {
+    this.metricsFile = metricsFile;
+  }
+
+  public boolean isProfile() {
+    return profile;
+  }
+
+  public void setProfile(boolean profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * @return The number given with <code>--threads</code>, <code>null</code> if not specified.
+   */
+  public Integer getThreads() {
+    return threads;
+  }
+
+  public void setThreads(Integer threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * @return The level given with <code>--output</code>, <code>null</code> if not specified.
+   */
+  public OutputLevel getOutputLevel() {
+    return outputLevel;
+  }
+
+  public void setOutputLevel(OutputLevel outputLevel) {
+    this.outputLevel = outputLevel;
+  }
+
+  public boolean isJsonOutput() {
+    return jsonOutput;
+  }
+
+  public void setJsonOutput(boolean jsonOutput) {
+    this.jsonOutput = jsonOutput;
+  }
+
   public boolean isForce() {
     return force;
   }
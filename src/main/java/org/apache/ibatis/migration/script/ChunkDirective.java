@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.migration.MigrationException;
+
+/**
+ * A <code>-- //@CHUNK key=id size=10000</code> directive. The <code>UPDATE</code> or <code>DELETE</code> statement
+ * that follows it is executed in ranges of <code>size</code> values of the numeric <code>key</code> column, each one
+ * in its own transaction.<br>
+ * As each range is committed, so are the statements that precede it in the same script; a failure in a later range
+ * does not roll back the ranges already done. The statement must not contain a sub-query or clauses after its
+ * <code>WHERE</code> clause (e.g. <code>ORDER BY</code>, <code>LIMIT</code> or <code>RETURNING</code>).<br>
+ * {@link org.apache.ibatis.migration.MigrationReader} attaches the directive to the statement as an inline comment
+ * (see {@link #toInlineComment()}), so that it is passed to the database operations along with the statement.
+ */
+public final class ChunkDirective {
+
+  private static final Pattern DIRECTIVE_LINE = Pattern.compile("^\\s*--\\s*//\\s*@CHUNK\\b(.*)$");
+
+  private static final Pattern INLINE_COMMENT = Pattern.compile("^\\s*/\\*\\s*@CHUNK\\b([^*]*)\\*/\\s*");
+
+  private static final String INLINE_PREFIX = "/* @CHUNK key=";
+
+  private static final Pattern KEY = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+
+  private final String key;
+
+  private final long size;
+
+  public ChunkDirective(String key, long size) {
+    super();
+    if (key == null || !KEY.matcher(key).matches()) {
+      throw new MigrationException("Invalid @CHUNK key: " + key);
+    }
+    if (size < 1) {
+      throw new MigrationException("@CHUNK size must be a positive number.");
+    }
+    this.key = key;
+    this.size = size;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the directive of a <code>-- //@CHUNK ...</code> line, or <code>null</code> if the line is not one.
+   */
+  public static ChunkDirective parseLine(String line) {
+    Matcher matcher = DIRECTIVE_LINE.matcher(line);
+    return matcher.matches() ? parseArguments(matcher.group(1)) : null;
+  }
+
+  /**
+   * @return the directive attached to the statement, or <code>null</code> if there is none.
+   */
+  public static ChunkDirective parseInline(String sql) {
+    Matcher matcher = INLINE_COMMENT.matcher(sql);
+    return matcher.find() ? parseArguments(matcher.group(1)) : null;
+  }
+
+  /**
+   * @return <code>true</code> if the line starts with a directive attached by {@link #toInlineComment()}.
+   */
+  public static boolean startsWithInline(String line) {
+    return line.trim().startsWith(INLINE_PREFIX);
+  }
+
+  /**
+   * @return the statement without the inline directive.
+   */
+  public static String removeInline(String sql) {
+    return INLINE_COMMENT.matcher(sql).replaceFirst("");
+  }
+
+  public String toInlineComment() {
+    return INLINE_PREFIX + key + " size=" + size + " */ ";
+  }
+
+  private static ChunkDirective parseArguments(String arguments) {
+    String key = null;
+    Long size = null;
+    String trimmed = arguments.trim();
+    for (String argument : trimmed.length() == 0 ? new String[0] : trimmed.split("\\s+")) {
+      int eq = argument.indexOf('=');
+      String name = eq < 0 ? argument : argument.substring(0, eq);
+      String value = eq < 0 ? "" : argument.substring(eq + 1);
+      if ("key".equalsIgnoreCase(name)) {
+        key = value;
+      } else if ("size".equalsIgnoreCase(name)) {
+        try {
+          size = Long.valueOf(value);
+        } catch (NumberFormatException e) {
+          throw new MigrationException("Invalid @CHUNK size: " + value);
+        }
+      } else {
+        throw new MigrationException("Unknown @CHUNK argument: " + argument);
+      }
+    }
+    if (key == null || size == null) {
+      throw new MigrationException("@CHUNK requires key and size, e.g. -- //@CHUNK key=id size=10000");
+    }
+    return new ChunkDirective(key, size);
+  }
+
+  @Override
+  public String toString() {
+    return "@CHUNK key=" + key + " size=" + size;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the records of a CSV or TSV file one at a time, so that files of any size are read with constant memory.<br>
+ * An empty field that is not quoted is read as <code>null</code>, a quoted one (<code>""</code>) as an empty string.
+ * Blank lines are skipped. Quoted fields may contain separators, line breaks and doubled quotes.
+ */
+public class DelimitedReader {
+
+  private final BufferedReader reader;
+
+  private final char separator;
+
+  private final boolean quoted;
+
+  private long lineNumber = 1L;
+
+  public DelimitedReader(Reader reader, char separator, boolean quoted) {
+    super();
+    this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+    this.separator = separator;
+    this.quoted = quoted;
+  }
+
+  /**
+   * @return The line the next record starts at (1-based).
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * @return The fields of the next record, or <code>null</code> at the end of the file.
+   * @throws IOException
+   *           If the file cannot be read or ends within a quoted field.
+   */
+  public String[] readRecord() throws IOException {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean inQuotes = false;
+    boolean quotedField = false;
+    boolean empty = true;
+    while (true) {
+      int c = reader.read();
+      if (c == -1) {
+        if (inQuotes) {
+          throw new IOException("Quoted field not closed at line " + lineNumber + ".");
+        }
+        if (empty) {
+          return null;
+        }
+        fields.add(value(field, quotedField));
+        return fields.toArray(new String[fields.size()]);
+      }
+      if (inQuotes) {
+        if (c == '"') {
+          reader.mark(1);
+          if (reader.read() == '"') {
+            field.append('"');
+          } else {
+            reader.reset();
+            inQuotes = false;
+          }
+        } else {
+          if (c == '\n') {
+            lineNumber++;
+          }
+          field.append((char) c);
+        }
+      } else if (c == '\n' || c == '\r') {
+        if (c == '\r') {
+          reader.mark(1);
+          if (reader.read() != '\n') {
+            reader.reset();
+          }
+        }
+        lineNumber++;
+        if (!empty) {
+          fields.add(value(field, quotedField));
+          return fields.toArray(new String[fields.size()]);
+        }
+      } else {
+        empty = false;
+        if (c == separator) {
+          fields.add(value(field, quotedField));
+          field.setLength(0);
+          quotedField = false;
+        } else if (c == '"' && quoted && field.length() == 0 && !quotedField) {
+          inQuotes = true;
+          quotedField = true;
+        } else {
+          field.append((char) c);
+        }
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private static String value(StringBuilder field, boolean quotedField) {
+    return field.length() == 0 && !quotedField ? null : field.toString();
+  }
+}
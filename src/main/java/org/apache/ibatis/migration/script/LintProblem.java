@@ -0,0 +1,62 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+/**
+ * A problem found in a script by {@link ScriptLinter}.
+ */
+public final class LintProblem implements Comparable<LintProblem> {
+
+  private final String filename;
+
+  private final int line;
+
+  private final String message;
+
+  /**
+   * @param line
+   *          The line number in the file, or <code>0</code> if the problem is not about a specific line.
+   */
+  public LintProblem(String filename, int line, String message) {
+    super();
+    this.filename = filename;
+    this.line = line;
+    this.message = message;
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public int compareTo(LintProblem o) {
+    int result = filename.compareTo(o.filename);
+    return result != 0 ? result : line - o.line;
+  }
+
+  @Override
+  public String toString() {
+    return line > 0 ? filename + ":" + line + ": " + message : filename + ": " + message;
+  }
+}
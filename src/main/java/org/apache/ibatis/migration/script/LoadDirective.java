@@ -0,0 +1,169 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.migration.MigrationException;
+
+/**
+ * Loads a CSV or TSV data file into a table, or deletes the rows it loaded (by the key in its first column).
+ * {@link org.apache.ibatis.migration.FileMigrationLoader} generates a statement carrying this directive as an inline
+ * comment for each data file migration (see {@link #toInlineComment()}), so that it is passed to the database
+ * operations like any other statement.<br>
+ * The comment carries a token that is generated once per process, so that a directive written into a script (or
+ * printed by another process) is never honored.
+ */
+public final class LoadDirective {
+
+  public enum Format {
+    /** Comma separated, with optional double quotes (RFC 4180). */
+    CSV(',', true),
+    /** Tab separated, without quotes. */
+    TSV('\t', false);
+
+    private final char separator;
+
+    private final boolean quoted;
+
+    private Format(char separator, boolean quoted) {
+      this.separator = separator;
+      this.quoted = quoted;
+    }
+
+    public char getSeparator() {
+      return separator;
+    }
+
+    public boolean isQuoted() {
+      return quoted;
+    }
+  }
+
+  private static final String TOKEN = UUID.randomUUID().toString();
+
+  private static final String INLINE_PREFIX = "/* @LOAD token=" + TOKEN + " ";
+
+  private static final Pattern INLINE_COMMENT = Pattern.compile("^\\s*/\\*\\s*@LOAD\\s+token=(\\S+)\\s+(load|undo)"
+      + "\\s+table=(\\S+)\\s+format=(\\S+)\\s+charset=(\\S*)\\s+file=(.*?)\\s*\\*/\\s*");
+
+  private static final Pattern IDENTIFIER = Pattern
+      .compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+
+  private final String table;
+
+  private final Format format;
+
+  private final String charset;
+
+  private final File file;
+
+  private final boolean undo;
+
+  public LoadDirective(String table, Format format, String charset, File file) {
+    this(table, format, charset, file, false);
+  }
+
+  /**
+   * @param undo
+   *          <code>true</code> to delete the rows whose first column matches the first column of a record of the file
+   *          instead of inserting them.
+   */
+  public LoadDirective(String table, Format format, String charset, File file, boolean undo) {
+    super();
+    if (table == null || !isIdentifier(table)) {
+      throw new MigrationException("Invalid @LOAD table: " + table);
+    }
+    if (file.getPath().contains("*/")) {
+      throw new MigrationException("Invalid @LOAD file: " + file);
+    }
+    this.table = table;
+    this.format = format;
+    this.charset = charset == null ? "" : charset;
+    this.file = file;
+    this.undo = undo;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * @return The charset of the file, or an empty string for the platform default.
+   */
+  public String getCharset() {
+    return charset;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean isUndo() {
+    return undo;
+  }
+
+  /**
+   * @return <code>true</code> if the name can be used as a table or column name without quoting.
+   */
+  public static boolean isIdentifier(String name) {
+    return IDENTIFIER.matcher(name).matches();
+  }
+
+  /**
+   * @return the directive attached to the statement by {@link #toInlineComment()} in this process, or
+   *         <code>null</code> if there is none.
+   */
+  public static LoadDirective parseInline(String sql) {
+    Matcher matcher = INLINE_COMMENT.matcher(sql);
+    if (!matcher.find() || !TOKEN.equals(matcher.group(1))) {
+      return null;
+    }
+    Format format;
+    try {
+      format = Format.valueOf(matcher.group(4).toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new MigrationException("Unknown @LOAD format: " + matcher.group(4));
+    }
+    return new LoadDirective(matcher.group(3), format, matcher.group(5), new File(matcher.group(6)),
+        "undo".equals(matcher.group(2)));
+  }
+
+  /**
+   * @return <code>true</code> if the line starts with a directive attached by {@link #toInlineComment()} in this
+   *         process.
+   */
+  public static boolean startsWithInline(String line) {
+    return line.trim().startsWith(INLINE_PREFIX);
+  }
+
+  public String toInlineComment() {
+    return INLINE_PREFIX + (undo ? "undo" : "load") + " table=" + table + " format="
+        + format.name().toLowerCase() + " charset=" + charset + " file=" + file.getPath() + " */ ";
+  }
+
+  @Override
+  public String toString() {
+    return "@LOAD " + file.getName() + (undo ? " from " : " into ") + table;
+  }
+}
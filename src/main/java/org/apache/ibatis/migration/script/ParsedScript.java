@@ -0,0 +1,48 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ParsedScript {
+  private final List<SqlStatement> statements;
+  private final SqlStatement unterminated;
+  private final int lineCount;
+
+  public ParsedScript(List<SqlStatement> statements, SqlStatement unterminated, int lineCount) {
+    super();
+    this.statements = Collections.unmodifiableList(statements);
+    this.unterminated = unterminated;
+    this.lineCount = lineCount;
+  }
+
+  public List<SqlStatement> getStatements() {
+    return statements;
+  }
+
+  /**
+   * @return The trailing text that is not followed by a delimiter (the script runner rejects such a script) or
+   *         <code>null</code>.
+   */
+  public SqlStatement getUnterminated() {
+    return unterminated;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+}
@@ -0,0 +1,283 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ibatis.migration.MigrationReader;
+import org.apache.ibatis.migration.utils.Util;
+import org.apache.ibatis.migration.utils.VariableTemplate;
+
+/**
+ * A content addressed cache of rendered scripts and their statements, so that the same scripts applied to many
+ * environments (or tenants) are lexed once.<br>
+ * Script sections (the do or undo part of a file) are compiled into a {@link VariableTemplate} keyed by a hash of the
+ * file content and the charset, and rendered against the variables on each call, so environments with different
+ * variables share the entry. Statement lists are keyed by a hash of the rendered script and the delimiter settings.
+ * Entries are kept in memory with LRU eviction and, if a directory is given, also written to disk so that they survive
+ * across runs. The disk cache is best effort: errors are ignored and the entry is computed again.<br>
+ * A cache can be shared by several loaders and operations.
+ */
+public class ScriptCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private static final int DISK_FORMAT_VERSION = 1;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Map<String, Object> entries;
+
+  private final File directory;
+
+  private long hitCount;
+
+  private long missCount;
+
+  public ScriptCache() {
+    this(DEFAULT_MAX_ENTRIES, null);
+  }
+
+  /**
+   * @param maxEntries
+   *          The maximum number of entries kept in memory.
+   * @param directory
+   *          The directory to persist entries to, or <code>null</code> to keep them in memory only.
+   */
+  public ScriptCache(final int maxEntries, File directory) {
+    super();
+    this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    this.directory = directory;
+    if (directory != null && !directory.isDirectory()) {
+      directory.mkdirs();
+    }
+  }
+
+  /**
+   * @return The section of the script as read by {@link MigrationReader}.
+   */
+  public String render(byte[] content, String charset, boolean undo, Properties variables) throws IOException {
+    String key = Util.sha256(content) + "-" + (undo ? "undo" : "do") + "-" + hashOf(String.valueOf(charset));
+    Object cached = get(key);
+    if (cached == null) {
+      cached = readSection(key);
+    }
+    if (cached instanceof VariableTemplate) {
+      hit();
+      return ((VariableTemplate) cached).render(variables);
+    }
+    missed();
+    Reader reader = charset == null || charset.length() == 0
+        ? new InputStreamReader(new ByteArrayInputStream(content))
+        : new InputStreamReader(new ByteArrayInputStream(content), charset);
+    String section = MigrationReader.readSection(reader, undo);
+    VariableTemplate template = VariableTemplate.compile(section);
+    put(key, template);
+    writeFile(key + ".sql", section.getBytes(UTF_8));
+    return template.render(variables);
+  }
+
+  /**
+   * @return The statements of the script as split by the splitter.
+   */
+  public ParsedScript parse(String script, StatementSplitter splitter) {
+    String key = Util.sha256(script.getBytes(UTF_8)) + "-" + hashOf(splitter.getSettingsKey());
+    Object cached = get(key);
+    if (cached == null) {
+      cached = readParsed(key);
+    }
+    if (cached instanceof ParsedScript) {
+      hit();
+      return (ParsedScript) cached;
+    }
+    missed();
+    ParsedScript parsed = splitter.parse(script);
+    put(key, parsed);
+    writeParsed(key, parsed);
+    return parsed;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  private synchronized Object get(String key) {
+    return entries.get(key);
+  }
+
+  private synchronized void put(String key, Object value) {
+    entries.put(key, value);
+  }
+
+  private Object readSection(String key) {
+    byte[] bytes = readFile(key + ".sql");
+    if (bytes == null) {
+      return null;
+    }
+    VariableTemplate template = VariableTemplate.compile(new String(bytes, UTF_8));
+    put(key, template);
+    return template;
+  }
+
+  private Object readParsed(String key) {
+    byte[] bytes = readFile(key + ".stmt");
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != DISK_FORMAT_VERSION) {
+        return null;
+      }
+      int lineCount = in.readInt();
+      int count = in.readInt();
+      List<SqlStatement> statements = new ArrayList<SqlStatement>(count);
+      for (int i = 0; i < count; i++) {
+        statements.add(readStatement(in));
+      }
+      SqlStatement unterminated = in.readBoolean() ? readStatement(in) : null;
+      ParsedScript parsed = new ParsedScript(statements, unterminated, lineCount);
+      put(key, parsed);
+      return parsed;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeParsed(String key, ParsedScript parsed) {
+    if (directory == null) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(DISK_FORMAT_VERSION);
+      out.writeInt(parsed.getLineCount());
+      out.writeInt(parsed.getStatements().size());
+      for (SqlStatement statement : parsed.getStatements()) {
+        writeStatement(out, statement);
+      }
+      out.writeBoolean(parsed.getUnterminated() != null);
+      if (parsed.getUnterminated() != null) {
+        writeStatement(out, parsed.getUnterminated());
+      }
+      out.flush();
+      writeFile(key + ".stmt", bytes.toByteArray());
+    } catch (IOException e) {
+      // The disk cache is best effort.
+    }
+  }
+
+  private static SqlStatement readStatement(DataInputStream in) throws IOException {
+    int startLine = in.readInt();
+    int endLine = in.readInt();
+    byte[] sql = new byte[in.readInt()];
+    in.readFully(sql);
+    return new SqlStatement(new String(sql, UTF_8), startLine, endLine);
+  }
+
+  private static void writeStatement(DataOutputStream out, SqlStatement statement) throws IOException {
+    byte[] sql = statement.getSql().getBytes(UTF_8);
+    out.writeInt(statement.getStartLine());
+    out.writeInt(statement.getEndLine());
+    out.writeInt(sql.length);
+    out.write(sql);
+  }
+
+  private byte[] readFile(String name) {
+    if (directory == null) {
+      return null;
+    }
+    File file = new File(directory, name);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        byte[] bytes = new byte[(int) file.length()];
+        in.readFully(bytes);
+        return bytes;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeFile(String name, byte[] bytes) {
+    if (directory == null) {
+      return;
+    }
+    File file = new File(directory, name);
+    File tmp = new File(directory, name + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+      // Entries are content addressed, so an existing file already has the same content.
+      if (file.exists() || !tmp.renameTo(file)) {
+        tmp.delete();
+      }
+    } catch (IOException e) {
+      tmp.delete();
+    }
+  }
+
+  private synchronized void hit() {
+    hitCount++;
+  }
+
+  private synchronized void missed() {
+    missCount++;
+  }
+
+  private static String hashOf(String value) {
+    return Util.sha256(value.getBytes(UTF_8)).substring(0, 16);
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.migration.Change;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.MigrationReader;
+import org.apache.ibatis.migration.utils.Util;
+import org.apache.ibatis.migration.utils.VariableTemplate;
+
+/**
+ * Checks the scripts of a directory without connecting to the database: file names, duplicate ids, missing
+ * <code>@UNDO</code> sections, statements not terminated by the delimiter and undefined variables.<br>
+ * Files are checked concurrently and all the problems are returned at once, ordered by file name and line.
+ */
+public class ScriptLinter {
+
+  private static final Pattern LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+
+  private final File scriptsDir;
+
+  private final String charset;
+
+  private final Properties variables;
+
+  private final StatementSplitter splitter;
+
+  private final int threads;
+
+  private final FileMigrationLoader loader;
+
+  public ScriptLinter(File scriptsDir, String charset, Properties variables, StatementSplitter splitter,
+      int threads) {
+    super();
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be a positive number.");
+    }
+    this.scriptsDir = scriptsDir;
+    this.charset = charset;
+    this.variables = variables;
+    this.splitter = splitter;
+    this.threads = threads;
+    this.loader = new FileMigrationLoader(scriptsDir, charset, variables);
+  }
+
+  public List<LintProblem> lint() {
+    String[] filenames = scriptsDir.list();
+    if (filenames == null) {
+      throw new MigrationException(scriptsDir + " does not exist.");
+    }
+    Arrays.sort(filenames);
+    List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "migrations-lint");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      for (final String filename : filenames) {
+        if (loader.isMigrationFile(filename) || filename.endsWith(".sql")) {
+          futures.add(executor.submit(new Callable<FileResult>() {
+            @Override
+            public FileResult call() throws Exception {
+              return lintFile(filename);
+            }
+          }));
+        }
+      }
+      List<LintProblem> problems = new ArrayList<LintProblem>();
+      Map<BigDecimal, String> ids = new TreeMap<BigDecimal, String>();
+      for (Future<FileResult> future : futures) {
+        FileResult result = get(future);
+        problems.addAll(result.problems);
+        if (result.change != null) {
+          String other = ids.get(result.change.getId());
+          if (other == null) {
+            ids.put(result.change.getId(), result.change.getFilename());
+          } else {
+            problems.add(new LintProblem(result.change.getFilename(), 0,
+                "Duplicate id " + result.change.getId() + " (also used by " + other + ")."));
+          }
+        }
+      }
+      Collections.sort(problems);
+      return problems;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private FileResult get(Future<FileResult> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MigrationException("Interrupted while checking scripts.  Cause: " + e, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new MigrationException("Error checking scripts.  Cause: " + cause, cause);
+    }
+  }
+
+  private FileResult lintFile(String filename) {
+    FileResult result = new FileResult();
+    boolean migration = loader.isMigrationFile(filename);
+    if (migration) {
+      try {
+        result.change = loader.parseChangeFromFilename(filename);
+      } catch (MigrationException e) {
+        result.add(filename, 0, "The file name must start with a numeric id followed by '_'.");
+      }
+    }
+    if (!filename.endsWith(".sql")) {
+      // Data files are checked when they are loaded.
+      return result;
+    }
+    String text;
+    try {
+      text = read(Util.file(scriptsDir, filename));
+    } catch (IOException e) {
+      result.add(filename, 0, "Could not be read.  Cause: " + e);
+      return result;
+    }
+    int undoLine = findUndoLine(text);
+    if (migration && undoLine == 0) {
+      result.add(filename, 0, "Missing '-- //@UNDO' section.");
+    }
+    lintSection(result, filename, text, false, 0);
+    if (undoLine > 0) {
+      // The undo section starts with the @UNDO line.
+      lintSection(result, filename, text, true, undoLine - 1);
+    }
+    return result;
+  }
+
+  private void lintSection(FileResult result, String filename, String text, boolean undo, int lineOffset) {
+    String section;
+    try {
+      section = MigrationReader.readSection(new StringReader(text), undo);
+    } catch (IOException e) {
+      // Reading from a string.
+      throw new IllegalStateException(e);
+    }
+    String[] lines = LINE_BREAK.split(section, -1);
+    for (int i = 0; i < lines.length; i++) {
+      String trimmedLine = lines[i].trim();
+      if (trimmedLine.startsWith("--") || trimmedLine.startsWith("//")) {
+        continue;
+      }
+      for (String variable : VariableTemplate.compile(lines[i]).getUndefinedVariables(variables)) {
+        result.add(filename, lineOffset + i + 1, "Undefined variable ${" + variable + "}.");
+      }
+    }
+    SqlStatement unterminated = splitter.parse(VariableTemplate.compile(section).render(variables))
+        .getUnterminated();
+    if (unterminated != null) {
+      result.add(filename, lineOffset + unterminated.getStartLine(), "Statement is not terminated by the delimiter.");
+    }
+  }
+
+  private static int findUndoLine(String text) {
+    String[] lines = LINE_BREAK.split(text, -1);
+    for (int i = 0; i < lines.length; i++) {
+      if (MigrationReader.DIRECTIVE.matcher(lines[i].trim()).matches() && lines[i].contains("@UNDO")) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  private String read(File file) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      Reader reader = charset == null || charset.length() == 0 ? new InputStreamReader(in)
+          : new InputStreamReader(in, charset);
+      return Util.readFully(new BufferedReader(reader));
+    } finally {
+      in.close();
+    }
+  }
+
+  private static final class FileResult {
+    private final List<LintProblem> problems = new ArrayList<LintProblem>();
+    private Change change;
+
+    void add(String filename, int line, String message) {
+      problems.add(new LintProblem(filename, line, message));
+    }
+  }
+}
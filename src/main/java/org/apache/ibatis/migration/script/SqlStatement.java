@@ -0,0 +1,55 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+/**
+ * A statement of a script as it is sent to the database by the script runner.
+ */
+public class SqlStatement {
+  private final String sql;
+  private final int startLine;
+  private final int endLine;
+
+  public SqlStatement(String sql, int startLine, int endLine) {
+    super();
+    this.sql = sql;
+    this.startLine = startLine;
+    this.endLine = endLine;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * @return One-based line number of the first line of the statement.
+   */
+  public int getStartLine() {
+    return startLine;
+  }
+
+  /**
+   * @return One-based line number of the line containing the delimiter.
+   */
+  public int getEndLine() {
+    return endLine;
+  }
+
+  @Override
+  public String toString() {
+    return startLine + "-" + endLine + ": " + sql;
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+
+/**
+ * Splits a script into statements following the same rules as {@link org.apache.ibatis.jdbc.ScriptRunner}
+ * (delimiter, full line delimiter, <code>@DELIMITER</code> comments and send full script).
+ */
+public class StatementSplitter {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+  private final String delimiter;
+
+  private final boolean fullLineDelimiter;
+
+  private final boolean sendFullScript;
+
+  public StatementSplitter(DatabaseOperationOption option) {
+    this(option.getDelimiter(), option.isFullLineDelimiter(), option.isSendFullScript());
+  }
+
+  public StatementSplitter(String delimiter, boolean fullLineDelimiter, boolean sendFullScript) {
+    super();
+    this.delimiter = delimiter;
+    this.fullLineDelimiter = fullLineDelimiter;
+    this.sendFullScript = sendFullScript;
+  }
+
+  /**
+   * @return The settings that affect the result of parsing, as a cache key.
+   */
+  String getSettingsKey() {
+    return delimiter + "|" + fullLineDelimiter + "|" + sendFullScript;
+  }
+
+  public ParsedScript parse(String script) {
+    try {
+      return parse(new StringReader(script));
+    } catch (IOException e) {
+      throw new MigrationException("Error parsing script.  Cause: " + e, e);
+    }
+  }
+
+  public ParsedScript parse(Reader reader) throws IOException {
+    BufferedReader lineReader = new BufferedReader(reader);
+    List<SqlStatement> statements = new ArrayList<SqlStatement>();
+    StringBuilder command = new StringBuilder();
+    String currentDelimiter = delimiter;
+    int lineNumber = 0;
+    int startLine = 0;
+    String line;
+    while ((line = lineReader.readLine()) != null) {
+      lineNumber++;
+      if (sendFullScript) {
+        command.append(line);
+        command.append(LINE_SEPARATOR);
+        continue;
+      }
+      String trimmedLine = line.trim();
+      if (trimmedLine.startsWith("//") || trimmedLine.startsWith("--")) {
+        String cleanedString = trimmedLine.substring(2).trim().replaceFirst("//", "");
+        if (cleanedString.toUpperCase().startsWith("@DELIMITER")) {
+          currentDelimiter = cleanedString.substring(11, 12);
+        }
+      } else if (!fullLineDelimiter && trimmedLine.contains(currentDelimiter)
+          || fullLineDelimiter && trimmedLine.equals(currentDelimiter)) {
+        command.append(line.substring(0, line.lastIndexOf(currentDelimiter)));
+        command.append(LINE_SEPARATOR);
+        statements.add(new SqlStatement(command.toString(), startLine == 0 ? lineNumber : startLine, lineNumber));
+        command.setLength(0);
+        startLine = 0;
+      } else if (trimmedLine.length() > 0) {
+        if (startLine == 0) {
+          startLine = lineNumber;
+        }
+        command.append(line);
+        command.append(LINE_SEPARATOR);
+      }
+    }
+    SqlStatement unterminated = null;
+    if (sendFullScript) {
+      statements.add(new SqlStatement(command.toString(), 1, lineNumber));
+    } else if (command.toString().trim().length() > 0) {
+      unterminated = new SqlStatement(command.toString(), startLine, lineNumber);
+    }
+    return new ParsedScript(statements, unterminated, lineNumber);
+  }
+}
@@ -15,7 +15,15 @@
  */
 package org.apache.ibatis.migration.utils;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.ibatis.migration.MigrationException;
 
 public enum Util {
   ;
@@ -40,4 +48,44 @@ public enum Util {
     }
     return builder.toString();
   }
+
+  public static String readFully(Reader reader) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    char[] buffer = new char[8192];
+    int length;
+    while ((length = reader.read(buffer)) != -1) {
+      builder.append(buffer, 0, length);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return The whole content of the given file.
+   */
+  public static byte[] readBytes(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      in.readFully(bytes);
+      return bytes;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return The SHA-256 digest of the given bytes as a lower case hex string.
+   */
+  public static String sha256(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new MigrationException("SHA-256 is not available.  Cause: " + e, e);
+    }
+  }
 }
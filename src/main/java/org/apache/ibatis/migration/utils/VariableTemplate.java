@@ -0,0 +1,181 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.utils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.parsing.PropertyParser;
+
+/**
+ * A text with <code>${variable}</code> placeholders that is scanned once and can be rendered many times.<br>
+ * Rendering gives the same result as {@link PropertyParser#parse(String, Properties)} (including escaped
+ * placeholders, unknown variables and default values), but only copies the literal parts and the values.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class VariableTemplate {
+
+  private static final String OPEN_TOKEN = "${";
+
+  private static final String CLOSE_TOKEN = "}";
+
+  private static final String DEFAULT_VALUE_SEPARATOR = ":";
+
+  /** literals[0] expressions[0] literals[1] ... expressions[n - 1] literals[n] */
+  private final String[] literals;
+
+  private final String[] expressions;
+
+  private final int length;
+
+  private VariableTemplate(String[] literals, String[] expressions) {
+    super();
+    this.literals = literals;
+    this.expressions = expressions;
+    int total = 0;
+    for (String literal : literals) {
+      total += literal.length();
+    }
+    this.length = total;
+  }
+
+  public static VariableTemplate compile(String text) {
+    List<String> literals = new ArrayList<String>();
+    List<String> expressions = new ArrayList<String>();
+    if (text == null) {
+      text = "";
+    }
+    StringBuilder literal = new StringBuilder();
+    int offset = 0;
+    int start = text.indexOf(OPEN_TOKEN);
+    while (start > -1) {
+      if (start > 0 && text.charAt(start - 1) == '\\') {
+        // Escaped open token: drop the backslash.
+        literal.append(text, offset, start - 1).append(OPEN_TOKEN);
+        offset = start + OPEN_TOKEN.length();
+      } else {
+        literal.append(text, offset, start);
+        StringBuilder expression = new StringBuilder();
+        offset = start + OPEN_TOKEN.length();
+        int end = text.indexOf(CLOSE_TOKEN, offset);
+        while (end > -1 && end > offset && text.charAt(end - 1) == '\\') {
+          // Escaped close token: drop the backslash.
+          expression.append(text, offset, end - 1).append(CLOSE_TOKEN);
+          offset = end + CLOSE_TOKEN.length();
+          end = text.indexOf(CLOSE_TOKEN, offset);
+        }
+        if (end == -1) {
+          // Not closed: kept as is.
+          literal.append(text, start, text.length());
+          offset = text.length();
+        } else {
+          expression.append(text, offset, end);
+          literals.add(literal.toString());
+          literal.setLength(0);
+          expressions.add(expression.toString());
+          offset = end + CLOSE_TOKEN.length();
+        }
+      }
+      start = text.indexOf(OPEN_TOKEN, offset);
+    }
+    if (offset < text.length()) {
+      literal.append(text, offset, text.length());
+    }
+    literals.add(literal.toString());
+    return new VariableTemplate(literals.toArray(new String[literals.size()]),
+        expressions.toArray(new String[expressions.size()]));
+  }
+
+  public boolean hasVariables() {
+    return expressions.length > 0;
+  }
+
+  /**
+   * @return The variables that have neither a value nor a default value, in order of appearance. These are left as
+   *         is by {@link #render(Properties)}.
+   */
+  public List<String> getUndefinedVariables(Properties variables) {
+    List<String> undefined = new ArrayList<String>();
+    for (String expression : expressions) {
+      String placeholder = OPEN_TOKEN + expression + CLOSE_TOKEN;
+      if (placeholder.equals(resolve(expression, variables, isDefaultValueEnabled(variables), separator(variables)))
+          && (variables == null || !variables.containsKey(expression))) {
+        undefined.add(expression);
+      }
+    }
+    return undefined;
+  }
+
+  public String render(Properties variables) {
+    if (expressions.length == 0) {
+      return literals[0];
+    }
+    StringWriter writer = new StringWriter(length + 16 * expressions.length);
+    try {
+      render(variables, writer);
+    } catch (IOException e) {
+      // StringWriter does not throw.
+      throw new IllegalStateException(e);
+    }
+    return writer.toString();
+  }
+
+  public void render(Properties variables, Writer writer) throws IOException {
+    boolean enableDefaultValue = false;
+    String separator = DEFAULT_VALUE_SEPARATOR;
+    if (expressions.length > 0) {
+      enableDefaultValue = isDefaultValueEnabled(variables);
+      separator = separator(variables);
+    }
+    for (int i = 0; i < expressions.length; i++) {
+      writer.write(literals[i]);
+      writer.write(String.valueOf(resolve(expressions[i], variables, enableDefaultValue, separator)));
+    }
+    writer.write(literals[expressions.length]);
+  }
+
+  private static boolean isDefaultValueEnabled(Properties variables) {
+    return variables != null
+        && Boolean.parseBoolean(variables.getProperty(PropertyParser.KEY_ENABLE_DEFAULT_VALUE, "false"));
+  }
+
+  private static String separator(Properties variables) {
+    return variables == null ? DEFAULT_VALUE_SEPARATOR
+        : variables.getProperty(PropertyParser.KEY_DEFAULT_VALUE_SEPARATOR, DEFAULT_VALUE_SEPARATOR);
+  }
+
+  private static String resolve(String expression, Properties variables, boolean enableDefaultValue,
+      String separator) {
+    if (variables != null) {
+      String key = expression;
+      if (enableDefaultValue) {
+        int separatorIndex = expression.indexOf(separator);
+        if (separatorIndex >= 0) {
+          key = expression.substring(0, separatorIndex);
+          return variables.getProperty(key, expression.substring(separatorIndex + separator.length()));
+        }
+      }
+      if (variables.containsKey(key)) {
+        return variables.getProperty(key);
+      }
+    }
+    return OPEN_TOKEN + expression + CLOSE_TOKEN;
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MigrationCatalogTest {
+
+  @Test
+  public void shouldSortAndLookUpLongIds() {
+    MigrationCatalog catalog = new MigrationCatalog.Builder()
+        .add(new BigDecimal("20130707120739"), "create second table", "20130707120739_create_second_table.sql")
+        .add(new BigDecimal("20130707120737"), "create changelog", "20130707120737_create_changelog.sql")
+        .add(new BigDecimal("20130707120738"), "create first table", "custom.sql").build();
+    assertEquals(3, catalog.size());
+    assertEquals(new BigDecimal("20130707120737"), catalog.getId(0));
+    assertEquals("create changelog", catalog.getDescription(0));
+    assertEquals("20130707120737_create_changelog.sql", catalog.getFilename(0));
+    assertEquals("custom.sql", catalog.getFilename(1));
+    assertEquals(new BigDecimal("20130707120739"), catalog.getLatestId());
+
+    assertEquals(1, catalog.indexOf(new BigDecimal("20130707120738")));
+    assertEquals(-1, catalog.indexOf(new BigDecimal("20130707120738.5")));
+    assertFalse(catalog.contains(new BigDecimal("1")));
+    assertEquals(0, catalog.indexAfter(null));
+    assertEquals(2, catalog.indexAfter(new BigDecimal("20130707120738.5")));
+    assertEquals(3, catalog.indexAfter(new BigDecimal("99999999999999999999999")));
+  }
+
+  @Test
+  public void shouldReturnChangesInBothDirections() {
+    MigrationCatalog.Builder builder = new MigrationCatalog.Builder();
+    for (int i = 1; i <= 5; i++) {
+      builder.add(BigDecimal.valueOf(i), "fix tenant data", null);
+    }
+    MigrationCatalog catalog = builder.build();
+
+    List<Change> up = catalog.getChanges(catalog.indexAfter(new BigDecimal("1")),
+        catalog.indexAfter(new BigDecimal("3")));
+    assertEquals(2, up.size());
+    assertEquals(new BigDecimal("2"), up.get(0).getId());
+    assertEquals("2_fix_tenant_data.sql", up.get(0).getFilename());
+    assertEquals(new BigDecimal("3"), up.get(1).getId());
+
+    List<Change> down = catalog.getChanges(catalog.indexAfter(new BigDecimal("4")),
+        catalog.indexAfter(new BigDecimal("1")));
+    assertEquals(3, down.size());
+    assertEquals(new BigDecimal("4"), down.get(0).getId());
+    assertEquals(new BigDecimal("2"), down.get(2).getId());
+  }
+
+  @Test
+  public void shouldFallBackToBigDecimalIds() {
+    MigrationCatalog catalog = new MigrationCatalog.Builder().add(new BigDecimal("2.5"), "b", null)
+        .add(new BigDecimal("1"), "a", null).add(new BigDecimal("100000000000000000000"), "c", null).build();
+    assertEquals(new BigDecimal("1"), catalog.getId(0));
+    assertEquals(new BigDecimal("2.5"), catalog.getId(1));
+    assertEquals("2.5_b.sql", catalog.getFilename(1));
+    assertEquals(1, catalog.indexOf(new BigDecimal("2.50")));
+    assertEquals(2, catalog.indexAfter(new BigDecimal("2.5")));
+  }
+}
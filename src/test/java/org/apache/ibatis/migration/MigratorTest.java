@@ -76,6 +76,7 @@ public class MigratorTest {
     testDownCommandGiven2Steps();
     testStatusContainsPendingMigrations();
 
+    testPlanCommand();
     testDoPendingScriptCommand();
 
     testVersionCommand();
@@ -135,6 +136,20 @@ public class MigratorTest {
     assertFalse(output.toString().contains("FAILURE"));
   }
 
+  private void testPlanCommand() throws Exception {
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "plan", "up"));
+    String output = out.getLog();
+    assertFalse(output.toString().contains("FAILURE"));
+    assertTrue(output.toString().contains("2 migration(s)"));
+
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "plan", "down", "2"));
+    output = out.getLog();
+    assertFalse(output.toString().contains("FAILURE"));
+    assertTrue(output.toString().contains(" undo "));
+  }
+
   private void testDoPendingScriptCommand() throws Exception {
     out.clearLog();
     Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "script", "pending"));
@@ -220,6 +235,21 @@ public class MigratorTest {
     assertFalse(output.toString().contains("20080827200214"));
     assertFalse(output.toString().contains("20080827200215"));
     assertFalse(output.toString().contains("-- @UNDO"));
+
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "script", "0", "20080827200215"));
+    String sequential = scriptOutput(out.getLog());
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "--threads=4", "script", "0", "20080827200215"));
+    String parallel = scriptOutput(out.getLog());
+    assertTrue(sequential.contains("20080827200215"));
+    assertEquals(sequential, parallel);
+  }
+
+  private String scriptOutput(String log) {
+    // Ignore the applied timestamps and the summary.
+    return log.substring(0, log.indexOf("Total time")).replaceAll("'\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}'",
+        "''");
   }
 
   private void testUndoScriptCommand() throws Exception {
@@ -261,6 +291,21 @@ public class MigratorTest {
     Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "script", "20080827200211", "20080827200211"));
   }
 
+  @Test
+  public void shouldPrintErrorInQuietMode() throws Exception {
+    exit.expectSystemExitWithStatus(1);
+    exit.checkAssertionAfterwards(new Assertion() {
+      public void checkAssertion() {
+        String output = out.getLog();
+        assertTrue(output.contains("ERROR: "));
+        assertFalse(output.contains("FAILURE"));
+      }
+    });
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "--output=quiet", "script", "20080827200211",
+        "20080827200211"));
+  }
+
   @Test
   public void shouldInitTempDirectory() throws Exception {
     File basePath = getTempDir();
@@ -349,6 +394,43 @@ public class MigratorTest {
         .contains("Your migrations configuration did not find your custom template.  Using the default template."));
   }
 
+  @Test
+  public void shouldCreateBaseline() throws Exception {
+    File basePath = getTempDir();
+    Migrator.main(TestUtil.args("--path=" + basePath.getAbsolutePath(), "init"));
+    File scriptPath = new File(basePath.getCanonicalPath() + File.separator + "scripts");
+    String[] scripts = scriptPath.list();
+    Arrays.sort(scripts);
+    String changelogId = scripts[0].substring(0, scripts[0].indexOf('_'));
+    Migrator.main(TestUtil.args("--path=" + basePath.getAbsolutePath(), "baseline", changelogId));
+    File baseline = new File(scriptPath, "baseline.sql");
+    assertTrue(baseline.exists());
+    Scanner scanner = new Scanner(baseline);
+    String content = scanner.useDelimiter("\\A").next();
+    scanner.close();
+    assertTrue(content.contains("-- //@BASELINE " + changelogId + " create changelog"));
+    assertTrue(content.contains("-- " + scripts[0]));
+    // Variables are replaced when the baseline is applied.
+    assertTrue(content.contains("CREATE TABLE ${changelog}"));
+    assertFalse(content.contains("DROP TABLE"));
+    assertEquals(2, new FileMigrationLoader(scriptPath, null, new Properties()).getMigrations().size());
+  }
+
+  @Test
+  public void shouldLintScripts() throws Exception {
+    exit.expectSystemExitWithStatus(1);
+    exit.checkAssertionAfterwards(new Assertion() {
+      public void checkAssertion() {
+        String output = out.getLog();
+        // 'url' is a setting, not a variable.
+        assertTrue(output.contains("20080827200211_create_author.sql:31: Undefined variable ${url}."));
+        assertTrue(output.contains("1 problem(s) found in the scripts."));
+      }
+    });
+    out.clearLog();
+    Migrator.main(TestUtil.args("--path=" + dir.getAbsolutePath(), "lint"));
+  }
+
   private File getTempDir() throws IOException {
     File f = File.createTempFile("migration", "test");
     assertTrue(f.delete());
@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+public class BufferedOutputSinkTest {
+
+  private static final String NL = System.getProperty("line.separator", "\n");
+
+  @Test
+  public void shouldFilterByLevel() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BufferedOutputSink sink = new BufferedOutputSink(out, OutputLevel.SUMMARY, false);
+    SinkPrintStream summary = new SinkPrintStream(sink, OutputLevel.SUMMARY);
+    summary.println("Applying: 1_first.sql");
+    PrintWriter statements = new PrintWriter(summary.forLevel(OutputLevel.VERBOSE));
+    statements.println("create table first (id int)");
+    statements.flush();
+    assertFalse(summary.forLevel(OutputLevel.VERBOSE).isEnabled());
+    PrintStream errors = SinkPrintStream.forLevel(summary, OutputLevel.QUIET);
+    errors.print("Error executing: ");
+    errors.println("drop table missing");
+    sink.flush();
+    assertEquals("Applying: 1_first.sql" + NL + "Error executing: drop table missing" + NL, out.toString());
+
+    summary.print("unterminated");
+    summary.close();
+    sink.close();
+    assertTrue(out.toString().endsWith("unterminated" + NL));
+    // Lines written after close are dropped.
+    sink.write(OutputLevel.QUIET, "late");
+    assertFalse(out.toString().contains("late"));
+  }
+
+  @Test
+  public void shouldWriteJsonLines() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BufferedOutputSink sink = new BufferedOutputSink(out, OutputLevel.VERBOSE, true, 2);
+    for (int i = 0; i < 10; i++) {
+      sink.write(OutputLevel.VERBOSE, "insert into t values (" + i + ", 'a\"b\\c\t')");
+    }
+    sink.close();
+    String[] lines = out.toString("UTF-8").split("\n");
+    assertEquals(10, lines.length);
+    assertTrue(lines[9], lines[9].matches("\\{\"time\":\"\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z\","
+        + "\"level\":\"verbose\",\"message\":\".*\"\\}"));
+    assertTrue(lines[9], lines[9].endsWith("\"message\":\"insert into t values (9, 'a\\\"b\\\\c\\t')\"}"));
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StatementThrottleTest {
+
+  @Test
+  public void shouldCapRate() throws Exception {
+    StatementThrottle throttle = new StatementThrottle(0, 20);
+    long start = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      throttle.intercept(invocation(0L));
+    }
+    assertTrue(System.nanoTime() - start >= 140000000L);
+    assertEquals(4, throttle.getStatementCount());
+    assertTrue(throttle.getPauseNanos() > 0);
+    assertEquals(20.0d, throttle.getCurrentRate(), 0.0d);
+  }
+
+  @Test
+  public void shouldHalveRateOnSlowStatementAndRecover() throws Exception {
+    StatementThrottle throttle = new StatementThrottle(50, 0);
+    throttle.intercept(invocation(0L));
+    assertTrue(Double.isInfinite(throttle.getCurrentRate()));
+
+    throttle.intercept(invocation(120L));
+    assertEquals(1, throttle.getSlowStatementCount());
+    double reduced = throttle.getCurrentRate();
+    assertTrue(reduced <= 5.0d);
+
+    throttle.intercept(invocation(0L));
+    assertTrue(throttle.getCurrentRate() > reduced);
+    assertTrue(throttle.getPauseNanos() > 0);
+  }
+
+  private static StatementInvocation invocation(final long millis) {
+    List<StatementInterceptor> statement = Collections.<StatementInterceptor> singletonList(new StatementInterceptor() {
+      @Override
+      public boolean intercept(StatementInvocation invocation) throws SQLException {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+        return false;
+      }
+    });
+    return new StatementInvocation(null, "update t set a = 1", statement, 0);
+  }
+}
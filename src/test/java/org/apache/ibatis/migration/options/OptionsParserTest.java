@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.migration.options;
 
+import org.apache.ibatis.migration.MigrationException;
+import org.apache.ibatis.migration.io.OutputLevel;
 import org.hamcrest.core.StringContains;
 import org.junit.Test;
 
@@ -48,6 +50,46 @@ public class OptionsParserTest {
     assertThat(options.getIdPattern(), equalTo(testValue));
   }
 
+  @Test
+  public void testThreads() {
+    assertThat(parse(new String[0]).getThreads(), equalTo(null));
+    assertThat(parse(new String[] { valuedOption(THREADS, "1") }).getThreads(), equalTo(1));
+    assertThat(parse(new String[] { valuedOption(THREADS, "4") }).getThreads(), equalTo(4));
+  }
+
+  @Test(expected = MigrationException.class)
+  public void testInvalidThreads() {
+    parse(new String[] { valuedOption(THREADS, "x") });
+  }
+
+  @Test(expected = MigrationException.class)
+  public void testZeroThreads() {
+    parse(new String[] { valuedOption(THREADS, "0") });
+  }
+
+  @Test(expected = MigrationException.class)
+  public void testThreadsWithoutValue() {
+    parse(new String[] { option(THREADS) });
+  }
+
+  @Test
+  public void testOutput() {
+    assertThat(parse(new String[0]).getOutputLevel(), equalTo(null));
+    final SelectedOptions options = parse(new String[] { valuedOption(OUTPUT, "quiet"), option(JSON) });
+    assertThat(options.getOutputLevel(), equalTo(OutputLevel.QUIET));
+    assertTrue(options.isJsonOutput());
+  }
+
+  @Test(expected = MigrationException.class)
+  public void testInvalidOutput() {
+    parse(new String[] { valuedOption(OUTPUT, "foo") });
+  }
+
+  @Test(expected = MigrationException.class)
+  public void testOutputWithoutValue() {
+    parse(new String[] { option(OUTPUT) });
+  }
+
   @Test
   public void testFileOptions() {
     final String testFileName = "test";
@@ -0,0 +1,329 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.runtime_migration;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.FileMigrationLoader;
+import org.apache.ibatis.migration.JdbcConnectionProvider;
+import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.lock.TableMigrationLock;
+import org.apache.ibatis.migration.operations.StatusOperation;
+import org.apache.ibatis.migration.operations.UpOperation;
+import org.apache.ibatis.migration.options.DatabaseOperationOption;
+import org.hsqldb.server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Starts an HSQLDB server and lets many embedders run {@link UpOperation} and {@link StatusOperation} against it at
+ * the same time, then checks the changelog for duplicate or lost rows and prints throughput, latency percentiles and
+ * connection counts.<br>
+ * It only runs when the <code>stress</code> system property is <code>true</code>. Larger runs can be configured with
+ * system properties:
+ * <ul>
+ * <li><code>stress.embedders</code> - number of concurrent embedders (default 8)</li>
+ * <li><code>stress.scripts</code> - number of generated scripts (default 10)</li>
+ * <li><code>stress.rounds</code> - status operations per embedder after the migration (default 3)</li>
+ * <li><code>stress.url</code> - an already running database (e.g. <code>jdbc:hsqldb:hsql://localhost/stress</code>),
+ * so that several JVMs can run the test against the same database. No server is started then.</li>
+ * </ul>
+ * e.g.
+ * <code>mvn test -Dtest=ConcurrentStartupStressTest -Dstress=true -Dstress.embedders=64 -Dstress.scripts=200</code>
+ */
+public class ConcurrentStartupStressTest {
+
+  private static final long FIRST_ID = 20170101000000L;
+
+  private final int embedders = Integer.getInteger("stress.embedders", 8);
+
+  private final int scripts = Integer.getInteger("stress.scripts", 10);
+
+  private final int rounds = Integer.getInteger("stress.rounds", 3);
+
+  private Server server;
+
+  private String url;
+
+  private File scriptsDir;
+
+  private CountingConnectionProvider connectionProvider;
+
+  @Before
+  public void setup() throws Exception {
+    assumeTrue(Boolean.getBoolean("stress"));
+    url = System.getProperty("stress.url");
+    if (url == null) {
+      int port = freePort();
+      server = new Server();
+      server.setAddress("127.0.0.1");
+      server.setPort(port);
+      server.setDatabaseName(0, "stress");
+      server.setDatabasePath(0, "mem:stress");
+      server.setSilent(true);
+      server.setTrace(false);
+      server.setNoSystemExit(true);
+      server.setLogWriter(null);
+      server.setErrWriter(null);
+      server.start();
+      url = "jdbc:hsqldb:hsql://127.0.0.1:" + port + "/stress";
+    }
+    connectionProvider = new CountingConnectionProvider(
+        new JdbcConnectionProvider("org.hsqldb.jdbcDriver", url, "sa", ""));
+    scriptsDir = generateScripts(scripts);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.shutdown();
+    }
+    if (scriptsDir != null) {
+      for (File file : scriptsDir.listFiles()) {
+        file.delete();
+      }
+      scriptsDir.delete();
+    }
+  }
+
+  @Test
+  public void shouldMigrateOnceWhenEmbeddersStartTogether() throws Exception {
+    final MigrationLoader migrationsLoader = new FileMigrationLoader(scriptsDir, "utf-8", new Properties());
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final long[] upNanos = new long[embedders];
+    final long[] statusNanos = new long[embedders * rounds];
+    final AtomicInteger statusIndex = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < embedders; i++) {
+      final int embedder = i;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          DatabaseOperationOption option = new DatabaseOperationOption();
+          option.setMigrationLock(new TableMigrationLock());
+          try {
+            start.await();
+            long begin = System.nanoTime();
+            new UpOperation().operate(connectionProvider, migrationsLoader, option, null);
+            upNanos[embedder] = System.nanoTime() - begin;
+            for (int round = 0; round < rounds; round++) {
+              begin = System.nanoTime();
+              StatusOperation status = new StatusOperation().operate(connectionProvider, migrationsLoader,
+                  new DatabaseOperationOption(), null);
+              statusNanos[statusIndex.getAndIncrement()] = System.nanoTime() - begin;
+              if (status.getPendingCount() != 0) {
+                throw new IllegalStateException(status.getPendingCount() + " pending after up.");
+              }
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      }, "embedder-" + i);
+      thread.start();
+      threads.add(thread);
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(300000L);
+    }
+    long elapsed = System.nanoTime() - begin;
+
+    List<String> duplicates = queryColumn(
+        "select ID from CHANGELOG group by ID having count(*) > 1 union all "
+            + "select ID from STRESS_APPLIED group by ID having count(*) > 1");
+    List<String> applied = queryColumn("select ID from CHANGELOG");
+    int lost = 0;
+    for (int i = 0; i < scripts; i++) {
+      if (!applied.contains(String.valueOf(FIRST_ID + i))) {
+        lost++;
+      }
+    }
+
+    System.out.printf("Concurrent startup: %d embedder(s), %d script(s), %d status round(s) against %s%n", embedders,
+        scripts, rounds, url);
+    System.out.printf("  elapsed %.3fs, %.1f operation(s)/s%n", elapsed / 1e9,
+        (embedders + statusIndex.get()) / (elapsed / 1e9));
+    System.out.printf("  up     p50 %8.2fms  p99 %8.2fms%n", percentile(upNanos, 50), percentile(upNanos, 99));
+    System.out.printf("  status p50 %8.2fms  p99 %8.2fms%n",
+        percentile(Arrays.copyOf(statusNanos, statusIndex.get()), 50),
+        percentile(Arrays.copyOf(statusNanos, statusIndex.get()), 99));
+    System.out.printf("  connections opened %d, peak open %d, still open %d%n", connectionProvider.getOpened(),
+        connectionProvider.getPeak(), connectionProvider.getOpen());
+    System.out.printf("  duplicate rows %s, lost rows %d, errors %d%n", duplicates, lost, errors.size());
+
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertTrue(duplicates.toString(), duplicates.isEmpty());
+    assertEquals(0, lost);
+    assertEquals(String.valueOf(scripts), queryColumn("select count(*) from STRESS_APPLIED").get(0));
+    assertEquals(0, connectionProvider.getOpen());
+    // Only the lock holder has two connections open at a time (the script runner and the changelog), the other
+    // embedders at most one: waiting for the lock must not hold a connection.
+    assertTrue("peak open connections " + connectionProvider.getPeak(),
+        connectionProvider.getPeak() <= embedders + 1);
+  }
+
+  private File generateScripts(int count) throws IOException {
+    File dir = File.createTempFile("migration", "stress");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+    // No primary keys, so that a script applied twice shows up as a duplicate row instead of an error.
+    writeScript(dir, FIRST_ID, "create_changelog",
+        "CREATE TABLE CHANGELOG (ID NUMERIC(20,0) NOT NULL, APPLIED_AT VARCHAR(25) NOT NULL, "
+            + "DESCRIPTION VARCHAR(255) NOT NULL);\n"
+            + "CREATE TABLE STRESS_APPLIED (ID NUMERIC(20,0) NOT NULL);\n"
+            + "INSERT INTO STRESS_APPLIED VALUES (" + FIRST_ID + ");\n",
+        "DROP TABLE STRESS_APPLIED;\nDROP TABLE CHANGELOG;\n");
+    for (int i = 1; i < count; i++) {
+      long id = FIRST_ID + i;
+      writeScript(dir, id, "create_table_" + i,
+          "CREATE TABLE STRESS_" + i + " (ID INTEGER, NAME VARCHAR(50));\n"
+              + "INSERT INTO STRESS_" + i + " VALUES (1, 'first');\n"
+              + "INSERT INTO STRESS_" + i + " VALUES (2, 'second');\n"
+              + "INSERT INTO STRESS_APPLIED VALUES (" + id + ");\n",
+          "DROP TABLE STRESS_" + i + ";\nDELETE FROM STRESS_APPLIED WHERE ID = " + id + ";\n");
+    }
+    return dir;
+  }
+
+  private static void writeScript(File dir, long id, String description, String doSql, String undoSql)
+      throws IOException {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, id + "_" + description + ".sql")),
+        "UTF-8");
+    try {
+      writer.write("-- // " + description + "\n" + doSql + "\n-- //@UNDO\n" + undoSql);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private List<String> queryColumn(String sql) throws SQLException {
+    List<String> values = new ArrayList<String>();
+    Connection connection = connectionProvider.getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      ResultSet rs = statement.executeQuery(sql);
+      while (rs.next()) {
+        values.add(rs.getString(1));
+      }
+      rs.close();
+      statement.close();
+    } finally {
+      connection.close();
+    }
+    return values;
+  }
+
+  private static double percentile(long[] nanos, int percentile) {
+    if (nanos.length == 0) {
+      return 0.0;
+    }
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+
+  private static int freePort() throws IOException {
+    ServerSocket socket = new ServerSocket(0);
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Counts the connections that are opened and those that are open at the same time.
+   */
+  private static class CountingConnectionProvider implements ConnectionProvider {
+    private final ConnectionProvider delegate;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+
+    CountingConnectionProvider(ConnectionProvider delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      final Connection connection = delegate.getConnection();
+      opened.incrementAndGet();
+      int current = open.incrementAndGet();
+      int max;
+      while (current > (max = peak.get()) && !peak.compareAndSet(max, current)) {
+        // retry
+      }
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              if ("close".equals(method.getName()) && !closed) {
+                closed = true;
+                open.decrementAndGet();
+              }
+              try {
+                return method.invoke(connection, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            }
+          });
+    }
+
+    int getOpened() {
+      return opened.get();
+    }
+
+    int getOpen() {
+      return open.get();
+    }
+
+    int getPeak() {
+      return peak.get();
+    }
+  }
+}
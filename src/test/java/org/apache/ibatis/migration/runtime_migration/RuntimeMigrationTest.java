@@ -17,31 +17,77 @@ package org.apache.ibatis.migration.runtime_migration;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.migration.Change;
 import org.apache.ibatis.migration.ConnectionProvider;
+import org.apache.ibatis.migration.DataSourceConnectionProvider;
 import org.apache.ibatis.migration.FileMigrationLoader;
 import org.apache.ibatis.migration.JdbcConnectionProvider;
+import org.apache.ibatis.migration.MigrationException;
 import org.apache.ibatis.migration.MigrationLoader;
+import org.apache.ibatis.migration.MigrationReader;
+import org.apache.ibatis.migration.hook.FileMigrationHook;
+import org.apache.ibatis.migration.hook.HookContext;
+import org.apache.ibatis.migration.hook.HookScript;
 import org.apache.ibatis.migration.hook.MigrationHook;
+import org.apache.ibatis.migration.lock.TableMigrationLock;
+import org.apache.ibatis.migration.metrics.ChangeMetrics;
+import org.apache.ibatis.migration.metrics.FlightRecorder;
+import org.apache.ibatis.migration.metrics.MetricsCollector;
+import org.apache.ibatis.migration.metrics.PrometheusExporter;
+import org.apache.ibatis.migration.metrics.StatementMetrics;
+import org.apache.ibatis.migration.metrics.StatementProfiler;
+import org.apache.ibatis.migration.operations.AsyncOperations;
 import org.apache.ibatis.migration.operations.BootstrapOperation;
 import org.apache.ibatis.migration.operations.DownOperation;
+import org.apache.ibatis.migration.operations.MigrationTask;
+import org.apache.ibatis.migration.operations.MigrationTaskCallback;
 import org.apache.ibatis.migration.operations.PendingOperation;
+import org.apache.ibatis.migration.operations.PlanOperation;
+import org.apache.ibatis.migration.operations.PlannedChange;
+import org.apache.ibatis.migration.operations.SchemaStatus;
+import org.apache.ibatis.migration.operations.SchemaSnapshotOperation;
+import org.apache.ibatis.migration.operations.SchemaStatusOperation;
+import org.apache.ibatis.migration.operations.ScriptPrefetcher;
 import org.apache.ibatis.migration.operations.StatusOperation;
 import org.apache.ibatis.migration.operations.UpOperation;
 import org.apache.ibatis.migration.operations.VersionOperation;
+import org.apache.ibatis.migration.operations.WatchOperation;
 import org.apache.ibatis.migration.options.DatabaseOperationOption;
 import org.apache.ibatis.migration.utils.TestUtil;
+import org.apache.ibatis.migration.utils.Util;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -78,6 +124,24 @@ public class RuntimeMigrationTest {
     assertEquals(3, status.getCurrentStatus().size());
   }
 
+  @Test
+  public void testUpStepsThroughPooledDataSource() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:javaapitest", "sa",
+        "");
+    dataSource.setPoolMaximumActiveConnections(2);
+    dataSource.setPoolMaximumIdleConnections(2);
+    try {
+      // With two connections, those used by the script runners are handed out again for the changelog writes.
+      ConnectionProvider pooled = new DataSourceConnectionProvider(dataSource);
+      for (int i = 1; i <= 3; i++) {
+        new UpOperation(1).operate(pooled, migrationsLoader, dbOption, new PrintStream(out));
+        assertEquals(String.valueOf(i), runQuery(connectionProvider, "select count(*) from changelog"));
+      }
+    } finally {
+      dataSource.forceCloseAll();
+    }
+  }
+
   @Test
   public void testBootstrapOperation() throws Exception {
     new BootstrapOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
@@ -114,6 +178,544 @@ public class RuntimeMigrationTest {
     assertTableDoesNotExist(connectionProvider, "second_table");
   }
 
+  @Test
+  public void testUpWithPrefetch() throws Exception {
+    final List<String> readOrder = Collections.synchronizedList(new ArrayList<String>());
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        readOrder.add(change.getId() + " " + Thread.currentThread().getName());
+        return super.getScriptReader(change, undo);
+      }
+    };
+    MetricsCollector collector = new MetricsCollector();
+    dbOption.addMigrationListener(collector);
+    dbOption.setPrefetchDepth(1);
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from second_table"));
+    assertEquals(Arrays.asList("20130707120737 migrations-prefetch", "20130707120738 migrations-prefetch",
+        "20130707120739 migrations-prefetch"), readOrder);
+    for (ChangeMetrics metrics : collector.getChangeMetrics()) {
+      assertTrue(metrics.getReadNanos() > 0);
+    }
+  }
+
+  @Test
+  public void testUpResumesFromCheckpoint() throws Exception {
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        if (!undo && change.getId().equals(new BigDecimal("20130707120738"))) {
+          return new StringReader("create table first_table (ID INTEGER NOT NULL, NAME VARCHAR(16));\n"
+              + "insert into first_table values (1, 'a');\n" + "insert into audit_log values (1);\n");
+        }
+        return super.getScriptReader(change, undo);
+      }
+    };
+    dbOption.setCheckpoint(true);
+    try {
+      new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+      fail();
+    } catch (MigrationException e) {
+      // expected
+    }
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("1", runQuery(connectionProvider, "select STATEMENT_INDEX from changelog_checkpoint"));
+
+    runSql(connectionProvider, "create table audit_log (ID INTEGER)");
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertTrue(out.toString().contains("Resuming after statement 2"));
+    String resumed = out.toString().substring(out.toString().indexOf("Resuming after statement 2"));
+    assertTrue(resumed, resumed.matches("(?s).*values \\(1, 'a'\\)\\s+-- Skipped: completed in a previous run\\..*"));
+    assertFalse(resumed, resumed.matches("(?s).*values \\(1\\)\\s+-- Skipped: .*"));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from first_table"));
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from audit_log"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from changelog_checkpoint"));
+  }
+
+  @Test
+  public void testUpRefusesCheckpointsWithAutoCommit() throws Exception {
+    dbOption.setCheckpoint(true);
+    dbOption.setAutoCommit(true);
+    try {
+      new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+      fail();
+    } catch (MigrationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("cannot be used with auto commit"));
+    }
+    assertTableDoesNotExist(connectionProvider, "changelog");
+  }
+
+  @Test
+  public void testUpWithChunkedUpdate() throws Exception {
+    MigrationLoader loader = chunkedUpdateLoader("update first_table set NAME = 'b'\n  where ID > 3 or ID = 1;\n");
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("23", runQuery(connectionProvider, "select count(*) from first_table where NAME = 'b'"));
+    assertTrue(out.toString().contains("-- @CHUNK first_table: 23 rows in 3 chunks."));
+  }
+
+  @Test
+  public void testUpWithChunkedUpdateAfterLongScript() throws Exception {
+    // The directive is read well after the first buffer of the script runner.
+    MigrationLoader loader = chunkedUpdateLoader("update first_table set NAME = 'b' where ID > 3;\n", 1000);
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("22", runQuery(connectionProvider, "select count(*) from first_table where NAME = 'b'"));
+    assertTrue(out.toString().contains("-- @CHUNK first_table: 22 rows in 3 chunks."));
+  }
+
+  @Test
+  public void testUpWithChunkedUpdateRejectsTrailingClauses() throws Exception {
+    String[] statements = { "update first_table set NAME = 'b' where ID > 3 order by ID;\n",
+        "delete from first_table where ID in (select ID from first_table where NAME = 'a');\n" };
+    for (String statement : statements) {
+      runSql(connectionProvider, "drop table first_table if exists");
+      try {
+        new UpOperation().operate(connectionProvider, chunkedUpdateLoader(statement), dbOption, new PrintStream(out));
+        fail();
+      } catch (MigrationException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("@CHUNK does not support statements with "));
+      }
+    }
+  }
+
+  private MigrationLoader chunkedUpdateLoader(String statement) {
+    return chunkedUpdateLoader(statement, 0);
+  }
+
+  private MigrationLoader chunkedUpdateLoader(final String statement, final int paddingLines) {
+    return new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        if (!undo && change.getId().equals(new BigDecimal("20130707120738"))) {
+          StringBuilder script = new StringBuilder("create table first_table (ID INTEGER, NAME VARCHAR(16));\n");
+          for (int i = 1; i <= 25; i++) {
+            script.append("insert into first_table values (").append(i).append(", 'a');\n");
+          }
+          for (int i = 0; i < paddingLines; i++) {
+            script.append("-- padding padding padding padding padding\n");
+          }
+          script.append("-- //@CHUNK key=ID size=10\n");
+          script.append(statement);
+          try {
+            return new MigrationReader(new ByteArrayInputStream(script.toString().getBytes("UTF-8")), "UTF-8",
+                false, new Properties());
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return super.getScriptReader(change, undo);
+      }
+    };
+  }
+
+  @Test
+  public void testUpAndDownWithDataFile() throws Exception {
+    File scriptsDir = copyScripts();
+    writeFile(new File(scriptsDir, "20130707120740_first_table.csv"),
+        "ID,NAME\r\n1,\"a, b\"\r\n2,\r\n3,\"\"\r\n");
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    assertEquals(4, loader.getMigrations().size());
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("4", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from first_table"));
+    assertEquals("a, b", runQuery(connectionProvider, "select NAME from first_table where ID = 1"));
+    assertEquals("2", runQuery(connectionProvider, "select ID from first_table where NAME is null"));
+    assertEquals("3", runQuery(connectionProvider, "select ID from first_table where NAME = ''"));
+    assertTrue(out.toString().contains("-- @LOAD first_table: 3 rows from 20130707120740_first_table.csv."));
+    // Not loaded from the file, so undoing the data file must keep it.
+    runSql(connectionProvider, "insert into first_table values (4, 'd')");
+    new DownOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("4", runQuery(connectionProvider, "select ID from first_table"));
+    assertTrue(out.toString().contains("-- @LOAD first_table: 3 rows deleted by 20130707120740_first_table.csv."));
+  }
+
+  @Test
+  public void testLoadDirectiveIsIgnoredInScripts() throws Exception {
+    File scriptsDir = copyScripts();
+    File data = new File(scriptsDir, "data.txt");
+    writeFile(data, "ID,NAME\n1,a\n");
+    writeFile(new File(scriptsDir, "20130707120740_load_first_table.sql"),
+        "-- // load first table\n/* @LOAD token=guessed load table=first_table format=csv charset= file="
+            + data.getAbsolutePath() + " */ INSERT INTO first_table VALUES (9, 'x');\n\n-- //@UNDO\n");
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertEquals("4", runQuery(connectionProvider, "select count(*) from changelog"));
+    // Executed as written.
+    assertEquals("9", runQuery(connectionProvider, "select ID from first_table"));
+    assertFalse(out.toString().contains("-- @LOAD first_table:"));
+  }
+
+  @Test
+  public void testUpWithBaseline() throws Exception {
+    File scriptsDir = copyScripts();
+    writeBaseline(scriptsDir);
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    assertEquals(3, loader.getMigrations().size());
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertTrue(out.toString().contains("Applied the baseline of 2 migration(s) up to 20130707120738."));
+    assertFalse(out.toString().contains("Applying: 20130707120738_create_first_table.sql"));
+    assertTrue(out.toString().contains("Applying: 20130707120739_create_second_table.sql"));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("create first table",
+        runQuery(connectionProvider, "select DESCRIPTION from changelog where ID = 20130707120738"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from second_table"));
+
+    out.reset();
+    new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertFalse(out.toString().contains("baseline"));
+  }
+
+  @Test
+  public void testUpWithBaselineAndSteps() throws Exception {
+    File scriptsDir = copyScripts();
+    writeBaseline(scriptsDir);
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+
+    List<PlannedChange> planned = new PlanOperation(PlanOperation.Type.UP, null)
+        .operate(connectionProvider, loader, dbOption, new PrintStream(out)).getPlannedChanges();
+    assertEquals(2, planned.size());
+    assertEquals("baseline.sql", planned.get(0).getChange().getFilename());
+    assertEquals(2, planned.get(0).getStatementCount());
+    assertEquals(new BigDecimal("20130707120739"), planned.get(1).getChange().getId());
+    // Fewer steps than the migrations of the baseline: they are applied one by one.
+    planned = new PlanOperation(PlanOperation.Type.UP, 1)
+        .operate(connectionProvider, loader, dbOption, new PrintStream(out)).getPlannedChanges();
+    assertEquals(1, planned.size());
+    assertEquals(new BigDecimal("20130707120737"), planned.get(0).getChange().getId());
+
+    new UpOperation(2).operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertTrue(out.toString().contains("Applied the baseline of 2 migration(s) up to 20130707120738."));
+    assertEquals("2", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTableDoesNotExist(connectionProvider, "second_table");
+  }
+
+  @Test
+  public void testUpWithBaselineSkippedForFewerSteps() throws Exception {
+    File scriptsDir = copyScripts();
+    writeBaseline(scriptsDir);
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    new UpOperation(1).operate(connectionProvider, loader, dbOption, new PrintStream(out));
+    assertFalse(out.toString().contains("baseline"));
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTableDoesNotExist(connectionProvider, "first_table");
+  }
+
+  @Test
+  public void testSchemaSnapshot() throws Exception {
+    File directory = File.createTempFile("migration", "snapshots");
+    assertTrue(directory.delete());
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        Reader reader = super.getScriptReader(change, undo);
+        if (undo || !change.getId().equals(new BigDecimal("20130707120738"))) {
+          return reader;
+        }
+        try {
+          return new StringReader(Util.readFully(reader)
+              + "insert into first_table (ID, NAME) values (1, 'a' || CHAR(10) || 'b\\u0041 \u00e9');\n");
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    SchemaSnapshotOperation first = new SchemaSnapshotOperation(directory).operate(connectionProvider, loader,
+        dbOption, new PrintStream(out));
+    assertFalse(first.isRestored());
+    assertTrue(new File(directory, first.getKey() + ".script").isFile());
+    runSql(connectionProvider, "shutdown");
+
+    SchemaSnapshotOperation second = new SchemaSnapshotOperation(directory).operate(connectionProvider, loader,
+        dbOption, new PrintStream(out));
+    assertTrue(second.isRestored());
+    assertEquals(first.getKey(), second.getKey());
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("a\nb\\u0041 \u00e9", runQuery(connectionProvider, "select NAME from first_table where ID = 1"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from second_table"));
+    runSql(connectionProvider, "shutdown");
+
+    SchemaSnapshotOperation other = new SchemaSnapshotOperation(directory).operate(connectionProvider,
+        migrationsLoader, dbOption, null);
+    assertFalse(other.isRestored());
+    assertFalse(first.getKey().equals(other.getKey()));
+  }
+
+  @Test
+  public void testSchemaSnapshotKeyIncludesBaseline() throws Exception {
+    File directory = File.createTempFile("migration", "snapshots");
+    assertTrue(directory.delete());
+    File scriptsDir = copyScripts();
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    SchemaSnapshotOperation first = new SchemaSnapshotOperation(directory).operate(connectionProvider, loader,
+        dbOption, new PrintStream(out));
+    runSql(connectionProvider, "shutdown");
+
+    writeBaseline(scriptsDir);
+    SchemaSnapshotOperation second = new SchemaSnapshotOperation(directory).operate(connectionProvider, loader,
+        dbOption, new PrintStream(out));
+    assertFalse(second.isRestored());
+    assertFalse(first.getKey().equals(second.getKey()));
+  }
+
+  @Test
+  public void testWatch() throws Exception {
+    final File scriptsDir = copyScripts();
+    Properties properties = new Properties();
+    properties.setProperty("changelog", "CHANGELOG");
+    final FileMigrationLoader loader = new FileMigrationLoader(scriptsDir, "utf-8", properties);
+    final WatchOperation operation = new WatchOperation(20L, true);
+    final PrintStream printStream = new PrintStream(out, true);
+    final AtomicInteger opened = new AtomicInteger();
+    final ConnectionProvider countingProvider = new ConnectionProvider() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        opened.incrementAndGet();
+        return connectionProvider.getConnection();
+      }
+    };
+    Thread watcher = new Thread() {
+      @Override
+      public void run() {
+        operation.operate(countingProvider, loader, dbOption, printStream, null, null);
+      }
+    };
+    watcher.start();
+    try {
+      awaitQuery("select count(*) from changelog", "3");
+      Thread.sleep(100L);
+      int openedBefore = opened.get();
+
+      File third = new File(scriptsDir, "20130707120740_create_third_table.sql");
+      writeFile(third, "create table third_table (ID INTEGER);\n-- //@UNDO\ndrop table third_table;\n");
+      awaitQuery("select count(*) from changelog", "4");
+      // The new migration is applied without reading the changelog: one connection for the script, one for its row.
+      assertEquals(2, opened.get() - openedBefore);
+      assertEquals("0", runQuery(connectionProvider, "select count(*) from third_table"));
+
+      // The undo section of the applied script is used, even though the new one would fail.
+      writeFile(third, "create table third_table (ID INTEGER, NAME VARCHAR(16));\n-- //@UNDO\ndrop table none;\n");
+      awaitQuery("select count(*) from information_schema.columns where table_name = 'THIRD_TABLE'", "2");
+
+      File fourth = new File(scriptsDir, "20130707120741_create_fourth_table.sql");
+      writeFile(fourth, "create table fourth_table (;\n");
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (!out.toString().contains("Error applying migrations.") && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20L);
+      }
+      writeFile(fourth, "create table fourth_table (ID INTEGER);\n");
+      awaitQuery("select count(*) from changelog", "5");
+    } finally {
+      operation.stop();
+      watcher.join(5000L);
+    }
+    assertFalse(watcher.isAlive());
+    assertTrue(out.toString().contains("Redoing: 20130707120740_create_third_table.sql"));
+    assertTrue(out.toString().contains("Error applying migrations."));
+  }
+
+  private void awaitQuery(String query, String expected) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000L;
+    String result = null;
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        result = runQuery(connectionProvider, query);
+      } catch (SQLException e) {
+        result = e.toString();
+      }
+      if (expected.equals(result)) {
+        return;
+      }
+      Thread.sleep(20L);
+    }
+    fail("Expected " + expected + " from " + query + " but was " + result);
+  }
+
+  private void writeBaseline(File scriptsDir) throws IOException {
+    writeFile(new File(scriptsDir, "baseline.sql"),
+        "-- //@BASELINE 20130707120737 create changelog\n-- //@BASELINE 20130707120738 create first table\n\n"
+            + "CREATE TABLE ${changelog} (ID NUMERIC(20,0) NOT NULL, APPLIED_AT VARCHAR(25) NOT NULL, "
+            + "DESCRIPTION VARCHAR(255) NOT NULL);\n"
+            + "CREATE TABLE first_table (ID INTEGER NOT NULL, NAME VARCHAR(16));\n");
+  }
+
+  private File copyScripts() throws IOException {
+    URL url = getClass().getClassLoader().getResource("org/apache/ibatis/migration/runtime_migration/scripts");
+    File scriptsDir = File.createTempFile("migration", "scripts");
+    assertTrue(scriptsDir.delete());
+    assertTrue(scriptsDir.mkdir());
+    for (File script : new File(url.getFile()).listFiles()) {
+      FileReader reader = new FileReader(script);
+      try {
+        writeFile(new File(scriptsDir, script.getName()), Util.readFully(reader));
+      } finally {
+        reader.close();
+      }
+    }
+    return scriptsDir;
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testPrefetcherCloseWaitsForRead() throws Exception {
+    final CountDownLatch reading = new CountDownLatch(1);
+    final CountDownLatch finished = new CountDownLatch(1);
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        reading.countDown();
+        try {
+          Thread.sleep(60000L);
+        } catch (InterruptedException e) {
+          // closed
+        }
+        finished.countDown();
+        return super.getScriptReader(change, undo);
+      }
+    };
+    ScriptPrefetcher prefetcher = new ScriptPrefetcher(loader, migrationsLoader.getMigrations(), false, 1);
+    assertTrue(reading.await(10, TimeUnit.SECONDS));
+    prefetcher.close();
+    assertEquals(0, finished.getCount());
+  }
+
+  @Test
+  public void testUpWithPrefetchStopsOnError() throws Exception {
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        if (change.getId().equals(new BigDecimal("20130707120738"))) {
+          return new StringReader("create table first_table (;");
+        }
+        return super.getScriptReader(change, undo);
+      }
+    };
+    dbOption.setPrefetchDepth(2);
+    try {
+      new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+      fail();
+    } catch (MigrationException e) {
+      // expected
+    }
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTableDoesNotExist(connectionProvider, "second_table");
+  }
+
+  @Test
+  public void testUpWithLock() throws Exception {
+    dbOption.setMigrationLock(new TableMigrationLock());
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from changelog_lock"));
+
+    out.reset();
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertTrue(out.toString().contains("Already up to date."));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+  }
+
+  @Test
+  public void testUpWithLockConcurrently() throws Exception {
+    final int nodes = 5;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < nodes; i++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          DatabaseOperationOption option = new DatabaseOperationOption();
+          option.setMigrationLock(new TableMigrationLock());
+          try {
+            start.await();
+            new UpOperation().operate(connectionProvider, migrationsLoader, option, null);
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(30000L);
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from changelog_lock"));
+  }
+
+  @Test
+  public void testUpKeepsTheErrorWhenUnlockFails() throws Exception {
+    MigrationLoader loader = new DelegatingMigrationLoader(migrationsLoader) {
+      @Override
+      public Reader getScriptReader(Change change, boolean undo) {
+        if (change.getId().equals(new BigDecimal("20130707120738"))) {
+          return new StringReader("create table first_table (;");
+        }
+        return super.getScriptReader(change, undo);
+      }
+    };
+    dbOption.setMigrationLock(new TableMigrationLock() {
+      @Override
+      public void unlock(ConnectionProvider connectionProvider, DatabaseOperationOption option) {
+        throw new MigrationException("unlock failed");
+      }
+    });
+    try {
+      new UpOperation().operate(connectionProvider, loader, dbOption, new PrintStream(out));
+      fail();
+    } catch (MigrationException e) {
+      assertFalse(e.getMessage(), e.getMessage().contains("unlock failed"));
+    }
+    assertTrue(out.toString().contains("Error releasing the migration lock.  Cause: "));
+  }
+
+  @Test
+  public void testUpWithLockTimeout() throws Exception {
+    TableMigrationLock otherNode = new TableMigrationLock();
+    assertTrue(otherNode.tryLock(connectionProvider, dbOption));
+    dbOption.setMigrationLock(new TableMigrationLock());
+    dbOption.setLockTimeout(300L);
+    try {
+      new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+      fail();
+    } catch (MigrationException e) {
+      assertTrue(e.getMessage().contains("Timed out waiting for the migration lock."));
+    }
+    assertTableDoesNotExist(connectionProvider, "changelog");
+
+    // An abandoned lock is taken over once it is stale.
+    Thread.sleep(10L);
+    dbOption.setMigrationLock(new TableMigrationLock(5L));
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from changelog_lock"));
+  }
+
   @Test
   public void testUpWithHook() throws Exception {
     final PrintStream printStream = new PrintStream(out);
@@ -153,6 +755,378 @@ public class RuntimeMigrationTest {
     assertEquals(1, TestUtil.countStr(output, "<AFTER>"));
   }
 
+  @Test
+  public void testUpWithAsyncAfterEachHook() throws Exception {
+    runSql(connectionProvider, "create table hook_log (ID numeric(20,0), THREAD varchar(100))");
+    final String mainThread = Thread.currentThread().getName();
+    final List<String> afterCounts = Collections.synchronizedList(new ArrayList<String>());
+    HookScript afterEach = new HookScript() {
+      @Override
+      public void execute(Map<String, Object> bindingMap) {
+        HookContext context = (HookContext) bindingMap.get(MigrationHook.HOOK_CONTEXT);
+        context.executeSql("insert into hook_log values (" + context.getChange().getId() + ", '"
+            + Thread.currentThread().getName() + "');");
+      }
+    };
+    HookScript after = new HookScript() {
+      @Override
+      public void execute(Map<String, Object> bindingMap) {
+        try {
+          afterCounts.add(runQuery(connectionProvider, "select count(*) from hook_log"));
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out),
+        new FileMigrationHook(null, null, afterEach, after, 1));
+    assertEquals(Arrays.asList("3"), afterCounts);
+    assertEquals("0",
+        runQuery(connectionProvider, "select count(*) from hook_log where THREAD = '" + mainThread + "'"));
+  }
+
+  @Test
+  public void testUpReportsAllAsyncHookFailures() throws Exception {
+    HookScript afterEach = new HookScript() {
+      @Override
+      public void execute(Map<String, Object> bindingMap) {
+        HookContext context = (HookContext) bindingMap.get(MigrationHook.HOOK_CONTEXT);
+        throw new IllegalStateException("failed hook " + context.getChange().getId());
+      }
+    };
+    try {
+      new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out),
+          new FileMigrationHook(null, null, afterEach, null, 2));
+      fail();
+    } catch (MigrationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("3 asynchronous hook(s) failed"));
+      assertTrue(e.getMessage(), e.getMessage().contains("failed hook 20130707120737"));
+      assertTrue(e.getMessage(), e.getMessage().contains("failed hook 20130707120739"));
+    }
+    // The migrations themselves were applied.
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+  }
+
+  @Test
+  public void testUpWithMetrics() throws Exception {
+    MetricsCollector collector = new MetricsCollector();
+    dbOption.addMigrationListener(collector);
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+
+    List<ChangeMetrics> metrics = collector.getChangeMetrics();
+    assertEquals(3, metrics.size());
+    assertEquals(new BigDecimal("20130707120737"), metrics.get(0).getChange().getId());
+    assertEquals(2, metrics.get(0).getStatementCount());
+    assertTrue(metrics.get(0).getCharactersRead() > 0);
+    assertEquals(3, collector.getSlowest(3).size());
+    assertEquals(1, collector.getSlowest(1).size());
+
+    StringWriter writer = new StringWriter();
+    new PrometheusExporter(collector).export(writer);
+    String exported = writer.toString();
+    assertEquals(12, TestUtil.countStr(exported, "mybatis_migrations_change_seconds{"));
+    assertTrue(exported.contains(
+        "mybatis_migrations_change_statements{id=\"20130707120737\",migration=\"20130707120737_create_changelog.sql\",direction=\"up\"} 2"));
+
+    new DownOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    metrics = collector.getChangeMetrics();
+    assertEquals(4, metrics.size());
+    assertTrue(metrics.get(3).isUndo());
+  }
+
+  @Test
+  public void testUpWithFlightRecorder() throws Exception {
+    Class<?> recordingClass;
+    try {
+      recordingClass = Class.forName("jdk.jfr.Recording");
+    } catch (ClassNotFoundException e) {
+      // JFR events need JDK 11 or later.
+      return;
+    }
+    assertFalse(FlightRecorder.CHANGE.isEnabled());
+    HookScript script = new HookScript() {
+      @Override
+      public void execute(Map<String, Object> bindingMap) {
+      }
+    };
+    MigrationHook hook = new FileMigrationHook(null, script, null, null);
+    Object recording = recordingClass.getConstructor().newInstance();
+    for (String type : new String[] { "Operation", "Change", "Statement", "Changelog", "Hook" }) {
+      invoke(recording, "enable", "org.mybatis.migrations." + type);
+    }
+    invoke(recording, "start");
+    assertTrue(FlightRecorder.CHANGE.isEnabled());
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out), hook);
+    new StatusOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    invoke(recording, "stop");
+    File file = File.createTempFile("migrations", ".jfr");
+    file.deleteOnExit();
+    Object path = invoke(file, "toPath");
+    invoke(recording, "dump", path);
+    invoke(recording, "close");
+
+    List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+        .getMethod("readAllEvents", Class.forName("java.nio.file.Path")).invoke(null, path);
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    List<Object> filenames = new ArrayList<Object>();
+    List<Object> operations = new ArrayList<Object>();
+    for (Object event : events) {
+      String name = (String) invoke(invoke(event, "getEventType"), "getName");
+      counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+      if (name.equals("org.mybatis.migrations.Change")) {
+        filenames.add(invoke(event, "getValue", "filename"));
+      } else if (name.equals("org.mybatis.migrations.Operation")) {
+        operations.add(invoke(event, "getValue", "operation"));
+        assertEquals(Boolean.TRUE, invoke(event, "getValue", "succeeded"));
+      } else if (name.equals("org.mybatis.migrations.Hook")) {
+        assertEquals(Boolean.TRUE, invoke(event, "getValue", "succeeded"));
+      }
+    }
+    assertEquals(Arrays.asList("up", "status"), operations);
+    assertEquals(Arrays.asList("20130707120737_create_changelog.sql", "20130707120738_create_first_table.sql",
+        "20130707120739_create_second_table.sql"), filenames);
+    assertEquals(Integer.valueOf(4), counts.get("org.mybatis.migrations.Statement"));
+    assertEquals(Integer.valueOf(3), counts.get("org.mybatis.migrations.Hook"));
+    assertTrue(counts.get("org.mybatis.migrations.Changelog") >= 3);
+  }
+
+  private static Object invoke(Object target, String name, Object... args) throws Exception {
+    for (Method method : target.getClass().getMethods()) {
+      Class<?>[] types = method.getParameterTypes();
+      if (method.getName().equals(name) && types.length == args.length
+          && (args.length == 0 || types[0].isInstance(args[0]))) {
+        return method.invoke(target, args);
+      }
+    }
+    throw new NoSuchMethodException(name);
+  }
+
+  @Test
+  public void testUpWithStatementProfiler() throws Exception {
+    StatementProfiler profiler = new StatementProfiler(2);
+    dbOption.addMigrationListener(profiler);
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+
+    assertEquals(4, profiler.getStatementCount());
+    List<StatementMetrics> slowest = profiler.getSlowest();
+    assertEquals(2, slowest.size());
+    assertTrue(slowest.get(0).getElapsedNanos() >= slowest.get(1).getElapsedNanos());
+    for (StatementMetrics statement : slowest) {
+      assertTrue(statement.getStartLine() > 0);
+      assertTrue(statement.getEndLine() >= statement.getStartLine());
+    }
+
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    profiler.printReport(new PrintStream(report));
+    assertTrue(report.toString().contains("4 statement(s) executed"));
+  }
+
+  @Test
+  public void testDownWithStatementProfilerCountsLinesFromTheScriptStart() throws Exception {
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    StatementProfiler profiler = new StatementProfiler(1);
+    dbOption.addMigrationListener(profiler);
+    new DownOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+
+    assertEquals(1, profiler.getStatementCount());
+    // DROP TABLE second_table is on line 29 of the script, after the @UNDO marker on line 26.
+    assertEquals(29, profiler.getSlowest().get(0).getStartLine());
+  }
+
+  @Test
+  public void testPlan() throws Exception {
+    List<PlannedChange> planned = new PlanOperation(PlanOperation.Type.UP, null)
+        .operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out)).getPlannedChanges();
+    assertEquals(3, planned.size());
+    assertEquals(new BigDecimal("20130707120737"), planned.get(0).getChange().getId());
+    assertEquals(2, planned.get(0).getStatementCount());
+    assertEquals(1, planned.get(1).getStatementCount());
+    assertTrue(planned.get(1).getScriptLength() > 0);
+    assertFalse(planned.get(2).isUndo());
+    assertEquals(2, new PlanOperation(PlanOperation.Type.UP, 2)
+        .operate(connectionProvider, migrationsLoader, dbOption, null).getPlannedChanges().size());
+    assertTableDoesNotExist(connectionProvider, "changelog");
+
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertEquals(0, new PlanOperation(PlanOperation.Type.UP, null)
+        .operate(connectionProvider, migrationsLoader, dbOption, null).getPlannedChanges().size());
+
+    planned = new PlanOperation(PlanOperation.Type.DOWN, 1)
+        .operate(connectionProvider, migrationsLoader, dbOption, null).getPlannedChanges();
+    assertEquals(1, planned.size());
+    assertEquals(new BigDecimal("20130707120739"), planned.get(0).getChange().getId());
+    assertTrue(planned.get(0).isUndo());
+
+    planned = new PlanOperation(new BigDecimal("20130707120737"))
+        .operate(connectionProvider, migrationsLoader, dbOption, null).getPlannedChanges();
+    assertEquals(2, planned.size());
+    assertEquals(new BigDecimal("20130707120739"), planned.get(0).getChange().getId());
+    assertEquals(new BigDecimal("20130707120738"), planned.get(1).getChange().getId());
+
+    runSql(connectionProvider, "delete from changelog where id = 20130707120738");
+    planned = new PlanOperation(PlanOperation.Type.PENDING, null)
+        .operate(connectionProvider, migrationsLoader, dbOption, null).getPlannedChanges();
+    assertEquals(1, planned.size());
+    assertEquals(new BigDecimal("20130707120738"), planned.get(0).getChange().getId());
+    assertEquals("2", runQuery(connectionProvider, "select count(*) from changelog"));
+  }
+
+  @Test
+  public void testSchemaStatus() throws Exception {
+    SchemaStatusOperation operation = new SchemaStatusOperation();
+    SchemaStatus status = operation.operate(connectionProvider, migrationsLoader, dbOption);
+    assertNull(status.getCurrentVersion());
+    assertEquals(new BigDecimal("20130707120739"), status.getLatestVersion());
+    assertEquals(0, status.getAppliedCount());
+    assertEquals(3, status.getPendingCount());
+    assertFalse(status.isCurrent());
+
+    new UpOperation(1).operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    status = operation.operate(connectionProvider, migrationsLoader, dbOption);
+    assertEquals(new BigDecimal("20130707120737"), status.getCurrentVersion());
+    assertEquals(1, status.getAppliedCount());
+    assertEquals(2, status.getPendingCount());
+
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    status = operation.operate(connectionProvider, migrationsLoader, dbOption);
+    assertEquals(new BigDecimal("20130707120739"), status.getCurrentVersion());
+    assertEquals(3, status.getAppliedCount());
+    assertEquals(0, status.getPendingCount());
+    assertTrue(status.isCurrent());
+  }
+
+  @Test
+  public void testAsyncUp() throws Exception {
+    final List<Runnable> queue = new ArrayList<Runnable>();
+    AsyncOperations async = new AsyncOperations(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queue.add(command);
+      }
+    });
+    MigrationTask<UpOperation> task = async.up(new UpOperation(), connectionProvider, migrationsLoader, dbOption,
+        new PrintStream(out), null);
+    MetricsCollector collector = new MetricsCollector();
+    task.addListener(collector);
+    final List<String> outcome = new ArrayList<String>();
+    task.whenDone(new MigrationTaskCallback<UpOperation>() {
+      @Override
+      public void completed(UpOperation result) {
+        outcome.add("completed");
+      }
+
+      @Override
+      public void failed(Throwable cause) {
+        outcome.add("failed");
+      }
+    });
+    assertFalse(task.isDone());
+    assertEquals(1, queue.size());
+
+    queue.get(0).run();
+    assertTrue(task.isDone());
+    assertFalse(task.isCancelled());
+    assertNotNull(task.get());
+    assertEquals(Arrays.asList("completed"), outcome);
+    assertEquals(3, collector.getChangeMetrics().size());
+    assertEquals("3", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTrue(dbOption.getMigrationListeners().isEmpty());
+    assertTrue(dbOption.getStatementInterceptors().isEmpty());
+  }
+
+  @Test
+  public void testAsyncUpCancelled() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final CountDownLatch firstChangeDone = new CountDownLatch(1);
+      final CountDownLatch cancelled = new CountDownLatch(1);
+      dbOption.addMigrationListener(new MetricsCollector() {
+        @Override
+        public void changeFinished(ChangeMetrics metrics) {
+          super.changeFinished(metrics);
+          firstChangeDone.countDown();
+          try {
+            cancelled.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      MigrationTask<UpOperation> task = new AsyncOperations(executor).up(new UpOperation(), connectionProvider,
+          migrationsLoader, dbOption, new PrintStream(out), null);
+      firstChangeDone.await();
+      assertTrue(task.cancel());
+      cancelled.countDown();
+      try {
+        task.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (CancellationException e) {
+        // expected
+      }
+      assertTrue(task.isCancelled());
+      assertFalse(task.cancel());
+      assertEquals("1", runQuery(connectionProvider, "select count(*) from changelog"));
+      assertTableDoesNotExist(connectionProvider, "first_table");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testAsyncUpCancelledBeforeStart() throws Exception {
+    final List<Runnable> queue = new ArrayList<Runnable>();
+    MigrationTask<UpOperation> task = new AsyncOperations(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queue.add(command);
+      }
+    }).up(new UpOperation(), connectionProvider, migrationsLoader, dbOption, new PrintStream(out), null);
+    assertTrue(task.cancel());
+    assertTrue(task.isDone());
+    queue.get(0).run();
+    assertTrue(task.isCancelled());
+    assertTableDoesNotExist(connectionProvider, "changelog");
+  }
+
+  @Test
+  public void testTaskWithoutListenersDoesNotMeasure() throws Exception {
+    final List<Integer> listenerCounts = new ArrayList<Integer>();
+    MigrationTask<Void> task = new MigrationTask<Void>(dbOption) {
+      @Override
+      protected Void execute(DatabaseOperationOption option) {
+        listenerCounts.add(option.getMigrationListeners().size());
+        return null;
+      }
+    };
+    task.run();
+    assertEquals(Arrays.asList(0), listenerCounts);
+  }
+
+  @Test
+  public void testStatusWithChangelogFetchSize() throws Exception {
+    dbOption.setChangelogFetchSize(1);
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    // A changelog entry without script is ignored.
+    runSql(connectionProvider, "insert into changelog values (20130707120740, '2013-07-07 12:07:40', 'no script')");
+    runSql(connectionProvider, "delete from changelog where id = 20130707120738");
+
+    StatusOperation status = new StatusOperation().operate(connectionProvider, migrationsLoader, dbOption,
+        new PrintStream(out));
+    assertEquals(2, status.getAppliedCount());
+    assertEquals(1, status.getPendingCount());
+    List<Change> changes = status.getCurrentStatus();
+    assertEquals(3, changes.size());
+    assertNotNull(changes.get(0).getAppliedTimestamp());
+    assertNull(changes.get(1).getAppliedTimestamp());
+    assertEquals("create second table", changes.get(2).getDescription());
+    assertNotNull(changes.get(2).getAppliedTimestamp());
+
+    runSql(connectionProvider, "drop table first_table");
+    new PendingOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertEquals("4", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertEquals("0", runQuery(connectionProvider, "select count(*) from first_table"));
+  }
+
   @Test
   public void testDown() throws Exception {
     new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
@@ -173,6 +1147,73 @@ public class RuntimeMigrationTest {
     assertTableDoesNotExist(connectionProvider, "second_table");
   }
 
+  @Test
+  public void testDownDeletesEachChangeBeforeAfterEach() throws Exception {
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    final List<String> counts = new ArrayList<String>();
+    MigrationHook hook = new MigrationHook() {
+      @Override
+      public void beforeEach(Map<String, Object> bindingMap) {
+      }
+
+      @Override
+      public void before(Map<String, Object> bindingMap) {
+      }
+
+      @Override
+      public void afterEach(Map<String, Object> bindingMap) {
+        try {
+          counts.add(runQuery(connectionProvider, "select count(*) from changelog"));
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        throw new IllegalStateException("stop");
+      }
+
+      @Override
+      public void after(Map<String, Object> bindingMap) {
+      }
+    };
+    try {
+      new DownOperation(2).operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out), hook);
+      fail();
+    } catch (MigrationException e) {
+      // expected
+    }
+    assertEquals(Arrays.asList("2"), counts);
+    assertEquals("2", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTableDoesNotExist(connectionProvider, "second_table");
+  }
+
+  @Test
+  public void testDownDeletesChangesOnTheScriptConnection() throws Exception {
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    final AtomicInteger opened = new AtomicInteger();
+    ConnectionProvider countingProvider = new ConnectionProvider() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        opened.incrementAndGet();
+        return connectionProvider.getConnection();
+      }
+    };
+    new DownOperation(2).operate(countingProvider, migrationsLoader, dbOption, new PrintStream(out));
+    // One to read the changelog, one for the scripts and the changelog deletes.
+    assertEquals(2, opened.get());
+    assertEquals("1", runQuery(connectionProvider, "select count(*) from changelog"));
+    assertTableDoesNotExist(connectionProvider, "first_table");
+  }
+
+  @Test
+  public void testDownAllSteps() throws Exception {
+    new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+
+    new DownOperation(10).operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
+    assertTableDoesNotExist(connectionProvider, "first_table");
+    assertTableDoesNotExist(connectionProvider, "second_table");
+    assertTableDoesNotExist(connectionProvider, "changelog");
+    assertTrue(out.toString().contains("Changelog doesn't exist."));
+  }
+
   @Test
   public void testPending() throws Exception {
     new UpOperation().operate(connectionProvider, migrationsLoader, dbOption, new PrintStream(out));
@@ -226,6 +1267,34 @@ public class RuntimeMigrationTest {
     return migrationsLoader;
   }
 
+  private static class DelegatingMigrationLoader implements MigrationLoader {
+    private final MigrationLoader delegate;
+
+    DelegatingMigrationLoader(MigrationLoader delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public List<Change> getMigrations() {
+      return delegate.getMigrations();
+    }
+
+    @Override
+    public Reader getScriptReader(Change change, boolean undo) {
+      return delegate.getScriptReader(change, undo);
+    }
+
+    @Override
+    public Reader getBootstrapReader() {
+      return delegate.getBootstrapReader();
+    }
+
+    @Override
+    public Reader getOnAbortReader() {
+      return delegate.getOnAbortReader();
+    }
+  }
+
   protected void runSql(ConnectionProvider provider, String sql) throws SQLException {
     Connection connection = provider.getConnection();
     try {
@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import static org.junit.Assert.*;
+
+import org.apache.ibatis.migration.MigrationException;
+import org.junit.Test;
+
+public class ChunkDirectiveTest {
+
+  @Test
+  public void shouldParseDirectiveLine() {
+    ChunkDirective directive = ChunkDirective.parseLine("-- //@CHUNK key=id size=10000");
+    assertEquals("id", directive.getKey());
+    assertEquals(10000L, directive.getSize());
+    assertNull(ChunkDirective.parseLine("-- a comment"));
+    assertNull(ChunkDirective.parseLine("update t set a = 1"));
+  }
+
+  @Test
+  public void shouldRoundTripInlineComment() {
+    String sql = new ChunkDirective("t.id", 500).toInlineComment() + "update t set a = 1";
+    ChunkDirective directive = ChunkDirective.parseInline(sql);
+    assertEquals("t.id", directive.getKey());
+    assertEquals(500L, directive.getSize());
+    assertEquals("update t set a = 1", ChunkDirective.removeInline(sql));
+    assertNull(ChunkDirective.parseInline("update t set a = 1 /* @CHUNK key=id size=1 */"));
+  }
+
+  @Test(expected = MigrationException.class)
+  public void shouldRejectMissingSize() {
+    ChunkDirective.parseLine("-- //@CHUNK key=id");
+  }
+
+  @Test(expected = MigrationException.class)
+  public void shouldRejectInvalidKey() {
+    ChunkDirective.parseLine("-- //@CHUNK key=id;drop size=10");
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class DelimitedReaderTest {
+
+  @Test
+  public void shouldReadQuotedFieldsAndNulls() throws IOException {
+    DelimitedReader reader = new DelimitedReader(
+        new StringReader("ID,NAME,NOTE\r\n1,\"a, \"\"b\"\"\",\r\n\r\n2,\"\",\"multi\nline\"\r\n"), ',', true);
+    assertArrayEquals(new String[] { "ID", "NAME", "NOTE" }, reader.readRecord());
+    assertArrayEquals(new String[] { "1", "a, \"b\"", null }, reader.readRecord());
+    assertArrayEquals(new String[] { "2", "", "multi\nline" }, reader.readRecord());
+    assertNull(reader.readRecord());
+    reader.close();
+  }
+
+  @Test
+  public void shouldReadTabSeparatedFieldsWithoutQuotes() throws IOException {
+    DelimitedReader reader = new DelimitedReader(new StringReader("ID\tNAME\n1\t\"x\"\n2\t"), '\t', false);
+    assertArrayEquals(new String[] { "ID", "NAME" }, reader.readRecord());
+    assertArrayEquals(new String[] { "1", "\"x\"" }, reader.readRecord());
+    assertArrayEquals(new String[] { "2", null }, reader.readRecord());
+    assertNull(reader.readRecord());
+    reader.close();
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class ScriptCacheTest {
+
+  private static final byte[] SCRIPT = ("-- // create table\n" + "create table ${table} (id int);\n"
+      + "insert into ${table} values (1);\n" + "-- //@UNDO\n" + "drop table ${table};\n").getBytes();
+
+  @Test
+  public void shouldCompileOncePerContentAndSection() throws Exception {
+    ScriptCache cache = new ScriptCache();
+    Properties tenant1 = variables("t1");
+    String rendered = cache.render(SCRIPT, "UTF-8", false, tenant1);
+    assertTrue(rendered.contains("create table t1 (id int);"));
+    assertFalse(rendered.contains("drop table"));
+    assertEquals(rendered, cache.render(SCRIPT, "UTF-8", false, variables("t1")));
+    assertEquals(1, cache.getHitCount());
+
+    // Other variables render the same compiled section.
+    assertTrue(cache.render(SCRIPT, "UTF-8", false, variables("t2")).contains("create table t2"));
+    assertEquals(2, cache.getHitCount());
+    assertTrue(cache.render(SCRIPT, "UTF-8", true, tenant1).contains("drop table t1;"));
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void shouldKeySplitStatementsByDelimiter() throws Exception {
+    ScriptCache cache = new ScriptCache();
+    String script = "create table a (id int);\ninsert into a values (1);\n";
+    ParsedScript parsed = cache.parse(script, new StatementSplitter(";", false, false));
+    assertEquals(2, parsed.getStatements().size());
+    assertSame(parsed, cache.parse(script, new StatementSplitter(";", false, false)));
+    assertEquals(1, cache.parse(script, new StatementSplitter(";", false, true)).getStatements().size());
+  }
+
+  @Test
+  public void shouldReadEntriesFromDisk() throws Exception {
+    File dir = getTempDir();
+    ScriptCache first = new ScriptCache(10, dir);
+    String rendered = first.render(SCRIPT, "UTF-8", false, variables("t1"));
+    ParsedScript parsed = first.parse(rendered, new StatementSplitter(";", false, false));
+
+    ScriptCache second = new ScriptCache(10, dir);
+    assertEquals(rendered, second.render(SCRIPT, "UTF-8", false, variables("t1")));
+    assertEquals(rendered.replace("t1", "t2"), second.render(SCRIPT, "UTF-8", false, variables("t2")));
+    ParsedScript restored = second.parse(rendered, new StatementSplitter(";", false, false));
+    assertEquals(3, second.getHitCount());
+    assertEquals(0, second.getMissCount());
+    assertEquals(parsed.getLineCount(), restored.getLineCount());
+    assertEquals(parsed.getStatements().size(), restored.getStatements().size());
+    assertEquals(parsed.getStatements().get(1).getSql(), restored.getStatements().get(1).getSql());
+    assertEquals(parsed.getStatements().get(1).getStartLine(), restored.getStatements().get(1).getStartLine());
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+  }
+
+  private static Properties variables(String table) {
+    Properties variables = new Properties();
+    variables.setProperty("table", table);
+    return variables;
+  }
+
+  private File getTempDir() throws IOException {
+    File f = File.createTempFile("migration", "cache");
+    assertTrue(f.delete());
+    assertTrue(f.mkdir());
+    f.deleteOnExit();
+    return f;
+  }
+}
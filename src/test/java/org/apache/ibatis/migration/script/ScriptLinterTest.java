@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class ScriptLinterTest {
+
+  @Test
+  public void shouldReportAllProblems() throws Exception {
+    File dir = File.createTempFile("lint", "test");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+    writeFile(new File(dir, "001_good.sql"),
+        "CREATE TABLE ${table} (ID INT);\n-- //@UNDO\nDROP TABLE ${table};\n");
+    writeFile(new File(dir, "002_no_undo.sql"), "CREATE TABLE B (ID INT);\n");
+    writeFile(new File(dir, "003_unterminated.sql"),
+        "-- ${comment} is ignored\nCREATE TABLE C (ID INT);\nINSERT INTO C VALUES (${id})\n"
+            + "-- //@UNDO\nDELETE FROM C;\nDROP TABLE C\n");
+    writeFile(new File(dir, "003_duplicate.sql"), "CREATE TABLE D (ID INT);\n-- //@UNDO\nDROP TABLE D;\n");
+    writeFile(new File(dir, "abc_bad_name.sql"), "-- //@UNDO\n");
+    writeFile(new File(dir, "bootstrap.sql"), "CREATE TABLE ${bootstrap} (ID INT);\n");
+    writeFile(new File(dir, "004_data.csv"), "ID\n1\n");
+    writeFile(new File(dir, "README"), "${ignored}");
+    Properties variables = new Properties();
+    variables.setProperty("table", "A");
+
+    List<LintProblem> problems = new ScriptLinter(dir, "UTF-8", variables, new StatementSplitter(";", false, false),
+        4).lint();
+
+    List<String> messages = new ArrayList<String>();
+    for (LintProblem problem : problems) {
+      messages.add(problem.toString());
+    }
+    assertEquals("[002_no_undo.sql: Missing '-- //@UNDO' section., "
+        + "003_unterminated.sql: Duplicate id 3 (also used by 003_duplicate.sql)., "
+        + "003_unterminated.sql:3: Undefined variable ${id}., "
+        + "003_unterminated.sql:3: Statement is not terminated by the delimiter., "
+        + "003_unterminated.sql:6: Statement is not terminated by the delimiter., "
+        + "abc_bad_name.sql: The file name must start with a numeric id followed by '_'., "
+        + "bootstrap.sql:1: Undefined variable ${bootstrap}.]", messages.toString());
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.script;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class StatementSplitterTest {
+
+  @Test
+  public void shouldSplitStatementsWithLineNumbers() {
+    String script = "-- comment\n"
+        + "\n"
+        + "create table a (\n"
+        + "  id int\n"
+        + ");\n"
+        + "insert into a values (1);\n"
+        + "\n";
+    ParsedScript parsed = new StatementSplitter(";", false, false).parse(script);
+    List<SqlStatement> statements = parsed.getStatements();
+    assertEquals(2, statements.size());
+    assertEquals(3, statements.get(0).getStartLine());
+    assertEquals(5, statements.get(0).getEndLine());
+    assertEquals(6, statements.get(1).getStartLine());
+    assertEquals(6, statements.get(1).getEndLine());
+    assertEquals("insert into a values (1)", statements.get(1).getSql().trim());
+    assertNull(parsed.getUnterminated());
+    assertEquals(7, parsed.getLineCount());
+  }
+
+  @Test
+  public void shouldHonorDelimiterDirective() {
+    String script = "-- @DELIMITER $\n"
+        + "create procedure p() begin select 1; end$\n"
+        + "-- @DELIMITER ;\n"
+        + "select 2;\n";
+    List<SqlStatement> statements = new StatementSplitter(";", false, false).parse(script).getStatements();
+    assertEquals(2, statements.size());
+    assertEquals("create procedure p() begin select 1; end", statements.get(0).getSql().trim());
+    assertEquals(2, statements.get(0).getStartLine());
+    assertEquals(4, statements.get(1).getStartLine());
+  }
+
+  @Test
+  public void shouldHonorFullLineDelimiter() {
+    String script = "select 1;\n"
+        + "select 2\n"
+        + "/\n";
+    List<SqlStatement> statements = new StatementSplitter("/", true, false).parse(script).getStatements();
+    assertEquals(1, statements.size());
+    assertEquals(1, statements.get(0).getStartLine());
+    assertEquals(3, statements.get(0).getEndLine());
+  }
+
+  @Test
+  public void shouldReportUnterminatedStatement() {
+    ParsedScript parsed = new StatementSplitter(";", false, false).parse("select 1;\nselect 2\n");
+    assertEquals(1, parsed.getStatements().size());
+    assertEquals(2, parsed.getUnterminated().getStartLine());
+  }
+
+  @Test
+  public void shouldSendFullScriptAsOneStatement() {
+    ParsedScript parsed = new StatementSplitter(";", false, true).parse("select 1;\nselect 2;\n");
+    assertEquals(1, parsed.getStatements().size());
+    assertEquals(1, parsed.getStatements().get(0).getStartLine());
+    assertEquals(2, parsed.getStatements().get(0).getEndLine());
+  }
+}
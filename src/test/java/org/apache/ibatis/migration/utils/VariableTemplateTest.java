@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2010-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.migration.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.apache.ibatis.parsing.PropertyParser;
+import org.junit.Test;
+
+public class VariableTemplateTest {
+
+  private static final String[] TEXTS = { "", "no variables", "${a}", "create table ${a} (id ${b});",
+      "${a}${b}${a}", "select '${unknown}' from ${a}", "\\${a} is ${a}", "${a\\}b}", "${}", "${a", "x ${a} ${b",
+      "line1 ${a}\nline2 ${b}\n", "${c:default} ${a:other}" };
+
+  @Test
+  public void shouldRenderLikePropertyParser() {
+    Properties variables = new Properties();
+    variables.setProperty("a", "A");
+    variables.setProperty("b", "int");
+    variables.setProperty("a}b", "AB");
+    assertSameAsPropertyParser(variables);
+    assertSameAsPropertyParser(null);
+    assertSameAsPropertyParser(new Properties());
+  }
+
+  @Test
+  public void shouldResolveDefaultValuesWhenEnabled() {
+    Properties variables = new Properties();
+    variables.setProperty("a", "A");
+    variables.setProperty(PropertyParser.KEY_ENABLE_DEFAULT_VALUE, "true");
+    assertEquals("default A", VariableTemplate.compile("${c:default} ${a:other}").render(variables));
+    assertSameAsPropertyParser(variables);
+
+    variables.setProperty(PropertyParser.KEY_DEFAULT_VALUE_SEPARATOR, "?:");
+    assertEquals("x:y", VariableTemplate.compile("${c?:x:y}").render(variables));
+    assertSameAsPropertyParser(variables);
+  }
+
+  @Test
+  public void shouldRenderToWriter() throws Exception {
+    Properties variables = new Properties();
+    variables.setProperty("a", "A");
+    VariableTemplate template = VariableTemplate.compile("1 ${a} 2 ${a} 3");
+    assertTrue(template.hasVariables());
+    StringWriter writer = new StringWriter();
+    template.render(variables, writer);
+    assertEquals("1 A 2 A 3", writer.toString());
+    assertFalse(VariableTemplate.compile("\\${a}").hasVariables());
+  }
+
+  private static void assertSameAsPropertyParser(Properties variables) {
+    for (String text : TEXTS) {
+      assertEquals(text, PropertyParser.parse(text, variables), VariableTemplate.compile(text).render(variables));
+    }
+  }
+}